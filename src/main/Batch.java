@@ -0,0 +1,269 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import util.Printer;
+import util.Printer.DeferredPrinter;
+import util.values.Value;
+
+/**
+ * Evaluates a file of lines, each an entry, assignment, or command as it would be typed, on a pool of workers, printing what each line prints in the order of the lines.<br>
+ * Lines run as soon as the lines they depend on are done, a line referencing a variable waits for the latest assignment to it before the line, and one referencing {@code ans} waits for the last answer before it.
+ * Independent lines run in parallel, each worker has its own {@link Context}, whose variables and last answer are set to what the line would see if the lines ran in order.
+ * The results of expensive functions are shared by every worker.<br>
+ * What each line prints is recorded, see {@link DeferredPrinter}, and printed once every line before it was, so at most {@link #WINDOW} lines are held at once however long the file is.
+ * @author UFFR
+ *
+ */
+public class Batch implements AutoCloseable
+{
+	/**Most lines read ahead of the first line not printed yet.**/
+	public static final int WINDOW = 4096;
+	
+	/**Prints the output of every line, in order.**/
+	private final Printer printer;
+	/**Runs the lines.**/
+	private final ExecutorService workers;
+	/**The context of each worker.**/
+	private final ThreadLocal<Context> contexts;
+	/**The value of each variable after its latest assignment read so far, {@code null} if it is undefined.**/
+	private final Map<String, CompletableFuture<Value<?>>> variables = new HashMap<String, CompletableFuture<Value<?>>>();
+	/**The last answer after the latest line read so far.**/
+	private CompletableFuture<Value<?>> lastAnswer;
+	/**The default precision of the lines read next, changed by the {@code precision} command.**/
+	private MathContext mathContext;
+	
+	/**
+	 * Create a batch evaluating lines as if they were entered in a new session.
+	 * @param precision The default precision of the lines.
+	 * @param cacheSize The maximum amount of parsed entries each worker keeps.
+	 * @param fastDouble Whether or not each worker forces evaluation on {@code double}s.
+	 * @param functionCache The function cache shared by every worker.
+	 * @param printer The printer to print the output of every line to.
+	 * @param threads The amount of workers.
+	 */
+	public Batch(int precision, int cacheSize, boolean fastDouble, FunctionCache functionCache, Printer printer, int threads)
+	{
+		this.printer = printer;
+		contexts = ThreadLocal.withInitial(() -> new Context(precision, cacheSize, fastDouble, functionCache));
+		lastAnswer = CompletableFuture.completedFuture(null);
+		mathContext = new MathContext(precision);
+		final AtomicInteger workerCount = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(threads, runnable ->
+		{
+			final Thread thread = new Thread(runnable, "Batch-" + workerCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Evaluate every line until the end of the input or a line reading {@code exit}, then print the remaining output.
+	 * @param input The lines.
+	 * @throws IOException If the input could not be read.
+	 */
+	public void run(BufferedReader input) throws IOException
+	{
+		// Reorder buffer, the output of each line read, in order
+		final Deque<CompletableFuture<DeferredPrinter>> pending = new ArrayDeque<CompletableFuture<DeferredPrinter>>(WINDOW);
+		String line;
+		while ((line = input.readLine()) != null && !(line = line.trim()).equalsIgnoreCase("exit"))
+		{
+			if (line.isEmpty())
+				continue;
+			if (pending.size() >= WINDOW)
+				pending.poll().join().replay(printer);
+			pending.add(submit(line));
+			while (!pending.isEmpty() && pending.peek().isDone())
+				pending.poll().join().replay(printer);
+		}
+		while (!pending.isEmpty())
+			pending.poll().join().replay(printer);
+	}
+	
+	/**
+	 * Schedule a line once the lines it depends on are done.
+	 * @param line The trimmed line, not empty.
+	 * @return The output of the line, once it is done.
+	 */
+	private CompletableFuture<DeferredPrinter> submit(String line)
+	{
+		final String entry = Context.removePrecisionMark(line);
+		final String lowerCase = entry.toLowerCase();
+		// Dispatched the same as Main.processLine
+		final boolean assignment = entry.contains(":="), listVars = !assignment && lowerCase.startsWith("vars");
+		final boolean plainEntry = !assignment && !listVars && !lowerCase.startsWith("cache") && !lowerCase.startsWith("precision");
+		final Set<String> names = listVars ? new HashSet<String>(variables.keySet()) : findNames(entry);
+		final String assigned = assignment ? entry.substring(0, entry.indexOf(":=")).trim() : null;
+		if (assigned != null)
+			names.add(assigned);
+		
+		final Map<String, CompletableFuture<Value<?>>> visible = new HashMap<String, CompletableFuture<Value<?>>>();
+		final List<CompletableFuture<?>> dependencies = new ArrayList<CompletableFuture<?>>();
+		for (String name : names)
+		{
+			final CompletableFuture<Value<?>> value = variables.get(name);
+			if (value == null)
+				continue;
+			visible.put(name, value);
+			dependencies.add(value);
+		}
+		// Keywords are matched in any case, unlike variables
+		final CompletableFuture<Value<?>> answerBefore = names.stream().anyMatch("ans"::equalsIgnoreCase) ? lastAnswer : null;
+		if (answerBefore != null)
+			dependencies.add(answerBefore);
+		final MathContext mathContext = this.mathContext;
+		
+		final CompletableFuture<Result> result = CompletableFuture.allOf(dependencies.toArray(new CompletableFuture<?>[dependencies.size()]))
+				.thenApplyAsync(ignored -> evaluate(line, mathContext, names, visible, listVars, answerBefore, assigned), workers);
+		
+		if (assigned != null)
+			variables.put(assigned, result.thenApply(done -> done.assignedValue));
+		// Every plain entry sets the last answer, others only may
+		lastAnswer = plainEntry ? result.thenApply(done -> done.answer) : result.thenCombine(lastAnswer, (done, previous) -> done.answerChanged ? done.answer : previous);
+		if (!plainEntry && lowerCase.startsWith("precision"))
+			changePrecision(entry.substring("precision".length()).trim());
+		return result.thenApply(done -> done.output);
+	}
+	
+	/**
+	 * Evaluate a line on the current worker.
+	 * @param line The line.
+	 * @param mathContext The default {@code MathContext} of the line.
+	 * @param names The variables the line may reference.
+	 * @param visible The value of each of those variables defined before the line.
+	 * @param clearVars Whether or not to remove every other variable, for commands that use every variable.
+	 * @param answerBefore The last answer before the line, if it references it.
+	 * @param assigned The variable the line assigns, if any.
+	 * @return The output of the line and what it changed.
+	 */
+	// The worker is only made current so a failure is recorded as its last answer
+	@SuppressWarnings("try")
+	private Result evaluate(String line, MathContext mathContext, Set<String> names, Map<String, CompletableFuture<Value<?>>> visible, boolean clearVars,
+			CompletableFuture<Value<?>> answerBefore, String assigned)
+	{
+		final Context context = contexts.get();
+		final DeferredPrinter output = new DeferredPrinter();
+		final Value<?> before = answerBefore == null ? null : answerBefore.join();
+		context.setOutput(output);
+		try
+		{
+			context.setPrecision(mathContext.getPrecision());
+			if (clearVars)
+				context.clearVars();
+			for (String name : names)
+			{
+				final CompletableFuture<Value<?>> future = visible.get(name);
+				final Value<?> value = future == null ? null : future.join();
+				if (value == null)
+					context.delVar(name);
+				// Setting the same value again would needlessly invalidate parsed entries
+				else if (context.getVar(name) != value)
+					context.addVar(name, value);
+			}
+			context.setLastAnswer(before);
+			Main.processLine(context, line);
+		} catch (RuntimeException e)
+		{
+			// Any failure outside of the entry itself is still only the failure of this line
+			try (Evaluation evaluation = Evaluation.begin(context))
+			{
+				output.printException(line, e, Main.printStack);
+			}
+		} finally
+		{
+			context.setOutput(null);
+		}
+		final Value<?> after = context.getLastAnswer();
+		return new Result(output, after, after != before, assigned == null ? null : context.getVar(assigned));
+	}
+	
+	/**
+	 * Change the default precision of the lines read next, if the {@code precision} command is valid. The command itself prints the result once it runs.
+	 * @param argument The argument of the command.
+	 */
+	private void changePrecision(String argument)
+	{
+		if (argument.isEmpty())
+			return;
+		try
+		{
+			final int precision = Integer.parseInt(argument);
+			if (precision > 0)
+				mathContext = new MathContext(precision, mathContext.getRoundingMode());
+		} catch (NumberFormatException e)
+		{
+			// Reported by the command
+		}
+	}
+	
+	/**
+	 * Find every name a line may reference, the runs of letters tokenized as text, see {@link Tokenizer}.
+	 * May include names that are not variables, such as functions, which is harmless.
+	 * @param entry The entry.
+	 * @return The names.
+	 */
+	private static Set<String> findNames(String entry)
+	{
+		final Set<String> names = new HashSet<String>();
+		int start = -1;
+		for (int i = 0; i <= entry.length(); i++)
+		{
+			final boolean letter = i < entry.length() && Character.isLetter(entry.charAt(i));
+			if (letter && start < 0)
+				start = i;
+			else if (!letter && start >= 0)
+			{
+				names.add(entry.substring(start, i));
+				start = -1;
+			}
+		}
+		return names;
+	}
+	
+	/**
+	 * Stop the workers.
+	 */
+	@Override
+	public void close()
+	{
+		workers.shutdownNow();
+	}
+	
+	/**
+	 * What a line printed and changed.
+	 * @author UFFR
+	 *
+	 */
+	private static class Result
+	{
+		private final DeferredPrinter output;
+		/**The last answer after the line.**/
+		private final Value<?> answer;
+		/**Whether or not the line set the last answer.**/
+		private final boolean answerChanged;
+		/**The value of the assigned variable after the line, {@code null} if it is undefined.**/
+		private final Value<?> assignedValue;
+		public Result(DeferredPrinter output, Value<?> answer, boolean answerChanged, Value<?> assignedValue)
+		{
+			this.output = output;
+			this.answer = answer;
+			this.answerChanged = answerChanged;
+			this.assignedValue = assignedValue;
+		}
+	}
+}
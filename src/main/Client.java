@@ -0,0 +1,193 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Forwards entries to a {@link Server} running in the background, so scripts evaluating one entry per call do not start the whole calculator every time.
+ * The server is started on first use, as a daemon that closes itself once idle, see {@link Server#setIdleTimeout(int)}.<br>
+ * Responses are printed as they are received, exactly as the server printed them, which is what the interactive session would print.
+ * Each call is a session of its own, so variables and the last answer do not carry over between calls, but the constants and the results of expensive functions do.<br>
+ * The client authenticates with the tokens the server stored for the user, and refuses a server that cannot answer with them, see {@link Server}.
+ * @author UFFR
+ *
+ */
+public final class Client
+{
+	/**Seconds the started daemon waits without any session before closing itself.**/
+	public static final int DEFAULT_IDLE_TIMEOUT = 600;
+	/**Milliseconds to wait for a started daemon to accept connections.**/
+	private static final long START_TIMEOUT = 10000;
+	/**Milliseconds between attempts to connect to a starting daemon.**/
+	private static final long RETRY_INTERVAL = 20;
+	
+	private Client()
+	{
+	}
+	
+	/**
+	 * Evaluate lines on the daemon, starting it if none is listening.
+	 * @param address The address the daemon listens on.
+	 * @param port The port the daemon listens on.
+	 * @param input The lines to send, each an entry or command as it would be typed.
+	 * @param daemonArguments Command line arguments to start the daemon with, besides its port and idle timeout.
+	 * @throws IOException If the daemon could not be reached or started.
+	 */
+	public static void run(InetAddress address, int port, BufferedReader input, List<String> daemonArguments) throws IOException
+	{
+		try (Socket socket = connect(address, port, daemonArguments);
+				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), false))
+		{
+			final String[] tokens = awaitTokens(port);
+			writer.print(tokens[0]);
+			writer.print('\n');
+			writer.flush();
+			if (!Server.matches(reader.readLine(), tokens[1]))
+				throw new IOException("Server on port " + port + " did not answer with its token, another program may be listening there instead.");
+			// Greeting
+			readResponse(reader, false);
+			String line;
+			while ((line = input.readLine()) != null && !(line = line.trim()).equalsIgnoreCase("exit"))
+			{
+				if (line.isEmpty())
+					continue;
+				writer.print(line);
+				writer.print('\n');
+				writer.flush();
+				readResponse(reader, true);
+			}
+			writer.print("exit\n");
+			writer.flush();
+		}
+	}
+	
+	/**
+	 * Read a response of the daemon, up to the prompt that ends it.
+	 * @param reader Reads from the daemon.
+	 * @param print Whether or not to print the response.
+	 * @throws IOException If the connection was closed before the response ended.
+	 */
+	private static void readResponse(BufferedReader reader, boolean print) throws IOException
+	{
+		String line;
+		while ((line = reader.readLine()) != null)
+		{
+			if (line.equals(Server.PROMPT))
+				return;
+			if (print)
+				Main.getPrinter().println(line);
+		}
+		throw new IOException("Connection to the daemon was closed.");
+	}
+	
+	/**
+	 * Read the tokens of the daemon, waiting for them while it is starting.
+	 * @param port The port the daemon listens on.
+	 * @return The tokens, see {@link Server#readTokens(int)}.
+	 * @throws IOException If the daemon did not store its tokens in time, which it would have if it was started by this user.
+	 */
+	private static String[] awaitTokens(int port) throws IOException
+	{
+		final long deadline = System.currentTimeMillis() + START_TIMEOUT;
+		while (true)
+		{
+			try
+			{
+				return Server.readTokens(port);
+			} catch (NoSuchFileException e)
+			{
+				if (System.currentTimeMillis() > deadline)
+					throw new IOException("Server on port " + port + " has no tokens, it was not started by this user.", e);
+				sleep();
+			}
+		}
+	}
+	
+	/**
+	 * Connect to the daemon, starting it first if it is not listening.
+	 * @param address The address the daemon listens on.
+	 * @param port The port the daemon listens on.
+	 * @param daemonArguments Command line arguments to start the daemon with.
+	 * @return The connection.
+	 * @throws IOException If the daemon could not be started or did not listen in time.
+	 */
+	private static Socket connect(InetAddress address, int port, List<String> daemonArguments) throws IOException
+	{
+		try
+		{
+			return new Socket(address, port);
+		} catch (ConnectException e)
+		{
+			startDaemon(address, port, daemonArguments);
+		}
+		final long deadline = System.currentTimeMillis() + START_TIMEOUT;
+		while (true)
+		{
+			try
+			{
+				return new Socket(address, port);
+			} catch (ConnectException e)
+			{
+				if (System.currentTimeMillis() > deadline)
+					throw new IOException("Daemon did not listen on port " + port + " within " + START_TIMEOUT / 1000 + " seconds.", e);
+				sleep();
+			}
+		}
+	}
+	
+	/**
+	 * Wait before trying to reach a starting daemon again.
+	 * @throws IOException If interrupted.
+	 */
+	private static void sleep() throws IOException
+	{
+		try
+		{
+			Thread.sleep(RETRY_INTERVAL);
+		} catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the daemon.", e);
+		}
+	}
+	
+	/**
+	 * Start the daemon in its own process, on the same Java runtime and class path, which keeps running once this one exits.
+	 * If two clients start one at once, the second daemon fails to listen and exits, both clients then use the first.
+	 * @param address The address to listen on.
+	 * @param port The port to listen on.
+	 * @param daemonArguments Further command line arguments.
+	 * @throws IOException If the process could not be started.
+	 */
+	private static void startDaemon(InetAddress address, int port, List<String> daemonArguments) throws IOException
+	{
+		final List<String> command = new ArrayList<String>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Main.class.getName());
+		command.add("--server");
+		command.add(String.valueOf(port));
+		command.add("--bind");
+		command.add(address.getHostAddress());
+		command.add("--idle-timeout");
+		command.add(String.valueOf(DEFAULT_IDLE_TIMEOUT));
+		command.addAll(daemonArguments);
+		// Nothing reads the output of the daemon once this process exits
+		final File nowhere = new File(System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null");
+		new ProcessBuilder(command).redirectInput(nowhere).redirectOutput(nowhere).redirectErrorStream(true).start();
+	}
+}
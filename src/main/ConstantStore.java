@@ -0,0 +1,261 @@
+package main;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import util.Constant;
+import util.values.ConstantValue;
+
+/**
+ * Keeps the digits of each {@link Constant} at the highest precision calculated so far, in memory and in a file per constant under the user cache directory.
+ * Their values are also kept for each {@link MathContext} they were used under, so evaluations at several precisions may share them.<br>
+ * Lower precisions are rounded from the stored digits, so only a higher precision than ever before needs to calculate the constant again, which may take minutes at hundreds of thousands of digits.
+ * Constants are calculated and stored with {@link #GUARD_DIGITS} more digits than requested, so rounding them again yields the correctly rounded constant.<br>
+ * Files are memory-mapped to be read and replaced as a whole when written, so several running programs may share them. Any file that cannot be read or written is ignored, the constant is calculated instead.
+ * @author UFFR
+ *
+ */
+public final class ConstantStore
+{
+	/**Extra digits every constant is calculated with, beyond the precision requested.**/
+	public static final int GUARD_DIGITS = 16;
+	/**Lowest precision whose constants are written to files, lower ones are calculated faster than they are written.**/
+	public static final int MIN_STORED_PRECISION = 1000;
+	/**Identifies the format of the files.**/
+	private static final int MAGIC = 0x4A434301;
+	/**Size of the header of a file, the magic number, the precision, the scale, and the length of the digits.**/
+	private static final int HEADER_SIZE = 4 * Integer.BYTES;
+	
+	/**The directory the files are kept in, {@code null} keeps constants in memory only.**/
+	private static volatile Path directory = getDefaultDirectory();
+	/**Most constant values kept, each for a single {@code MathContext}.**/
+	private static final int MAX_VALUES = 64;
+	/**The highest precision copy of each constant loaded or calculated so far.**/
+	private static final Map<Constant, BigDecimal> STORED = new EnumMap<Constant, BigDecimal>(Constant.class);
+	/**Values of the constants by {@code MathContext}, shared by every context.**/
+	private static final LoadingCache<ValueKey, ConstantValue> VALUES = CacheBuilder.newBuilder().maximumSize(MAX_VALUES)
+			.build(CacheLoader.from(key -> new ConstantValue(get(key.constant, key.mathContext), key.constant.getSymbol())));
+	
+	private ConstantStore()
+	{
+	}
+	
+	/**
+	 * Retrieve the value of a constant under a {@code MathContext}, rounding or calculating it only the first time it is used under it, see {@link #get(Constant, MathContext)}.
+	 * If it is being calculated by another thread, waits for it instead.
+	 * @param constant The constant.
+	 * @param mathContext The {@code MathContext} to round the constant to.
+	 * @return The value of the constant.
+	 */
+	public static ConstantValue getValue(Constant constant, MathContext mathContext)
+	{
+		try
+		{
+			return VALUES.getUnchecked(new ValueKey(constant, mathContext));
+		} catch (UncheckedExecutionException e)
+		{
+			Throwables.throwIfUnchecked(e.getCause());
+			throw e;
+		}
+	}
+	
+	/**
+	 * Retrieve a constant, rounded from the stored digits if there are enough, otherwise calculated and stored.
+	 * @param constant The constant.
+	 * @param mathContext The {@code MathContext} to round the constant to.
+	 * @return The constant, rounded to the precision.
+	 */
+	public static BigDecimal get(Constant constant, MathContext mathContext)
+	{
+		final int digits = mathContext.getPrecision() + GUARD_DIGITS;
+		synchronized (STORED)
+		{
+			BigDecimal stored = STORED.get(constant);
+			if (stored == null || stored.precision() < digits)
+			{
+				final BigDecimal read = read(constant);
+				if (read != null && (stored == null || read.precision() > stored.precision()))
+					STORED.put(constant, stored = read);
+			}
+			if (stored != null && stored.precision() >= digits)
+				return stored.round(mathContext);
+		}
+		// Calculated outside of the lock, other constants need not wait for it
+		final BigDecimal calculated = constant.calculate(new MathContext(digits, mathContext.getRoundingMode()));
+		synchronized (STORED)
+		{
+			final BigDecimal stored = STORED.get(constant);
+			if (stored == null || stored.precision() < calculated.precision())
+				STORED.put(constant, calculated);
+		}
+		if (mathContext.getPrecision() >= MIN_STORED_PRECISION)
+			write(constant, calculated);
+		return calculated.round(mathContext);
+	}
+	
+	/**
+	 * Set the directory constants are stored in.
+	 * @param directory The directory, created if it does not exist, or {@code null} to keep constants in memory only.
+	 */
+	public static void setDirectory(Path directory)
+	{
+		ConstantStore.directory = directory;
+	}
+	
+	public static Path getDirectory()
+	{
+		return directory;
+	}
+	
+	/**
+	 * Find the default directory, under the cache directory of the program, see {@link Main#getCacheDirectory()}.
+	 * @return The directory, or {@code null} if the home directory of the user is unknown.
+	 */
+	public static Path getDefaultDirectory()
+	{
+		final Path cache = Main.getCacheDirectory();
+		return cache == null ? null : cache.resolve("constants");
+	}
+	
+	/**
+	 * Read the stored digits of a constant.
+	 * @param constant The constant.
+	 * @return The stored constant, or {@code null} if there is none or the file is not valid.
+	 */
+	private static BigDecimal read(Constant constant)
+	{
+		final Path directory = ConstantStore.directory;
+		if (directory == null)
+			return null;
+		try (FileChannel channel = FileChannel.open(getPath(directory, constant), StandardOpenOption.READ))
+		{
+			final long size = channel.size();
+			if (size < HEADER_SIZE || size > Integer.MAX_VALUE)
+				return null;
+			final MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+			final int magic = buffer.getInt(), precision = buffer.getInt(), scale = buffer.getInt(), length = buffer.getInt();
+			if (magic != MAGIC || length != size - HEADER_SIZE)
+				return null;
+			final byte[] unscaled = new byte[length];
+			buffer.get(unscaled);
+			final BigDecimal stored = new BigDecimal(new BigInteger(unscaled), scale);
+			// A file cut short by a crash has fewer digits than it claims
+			return stored.precision() == precision ? stored : null;
+		} catch (NoSuchFileException e)
+		{
+			return null;
+		} catch (IOException | RuntimeException e)
+		{
+			Main.getPrinter().println("Caught [" + e + "] trying to read the stored digits of " + constant + ", calculating them instead.");
+			return null;
+		}
+	}
+	
+	/**
+	 * Store the digits of a constant, unless the file already holds more.
+	 * The digits are written to a temporary file first, which then replaces the old one, so the file is never read while incomplete.
+	 * @param constant The constant.
+	 * @param value The digits to store.
+	 */
+	private static void write(Constant constant, BigDecimal value)
+	{
+		final Path directory = ConstantStore.directory;
+		if (directory == null)
+			return;
+		final BigDecimal existing = read(constant);
+		if (existing != null && existing.precision() >= value.precision())
+			return;
+		Path temporary = null;
+		try
+		{
+			Files.createDirectories(directory);
+			temporary = Files.createTempFile(directory, constant.toString(), ".tmp");
+			final byte[] unscaled = value.unscaledValue().toByteArray();
+			final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + unscaled.length);
+			buffer.putInt(MAGIC).putInt(value.precision()).putInt(value.scale()).putInt(unscaled.length).put(unscaled).flip();
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE))
+			{
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+			}
+			try
+			{
+				Files.move(temporary, getPath(directory, constant), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temporary, getPath(directory, constant), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException | RuntimeException e)
+		{
+			Main.getPrinter().println("Caught [" + e + "] trying to store the digits of " + constant + ", they will be calculated again next time.");
+			if (temporary != null)
+			{
+				try
+				{
+					Files.deleteIfExists(temporary);
+				} catch (IOException e1)
+				{
+					// Left for the next run to replace
+				}
+			}
+		}
+	}
+	
+	private static Path getPath(Path directory, Constant constant)
+	{
+		return directory.resolve(constant + ".bin");
+	}
+	
+	/**
+	 * Key for the values of constants, combining the constant and the {@code MathContext}.
+	 * @author UFFR
+	 *
+	 */
+	private static class ValueKey
+	{
+		private final Constant constant;
+		private final MathContext mathContext;
+		public ValueKey(Constant constant, MathContext mathContext)
+		{
+			this.constant = constant;
+			this.mathContext = mathContext;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return 31 * constant.hashCode() + mathContext.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (!(obj instanceof ValueKey))
+				return false;
+			final ValueKey other = (ValueKey) obj;
+			return constant == other.constant && mathContext.equals(other.mathContext);
+		}
+	}
+}
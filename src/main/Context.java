@@ -2,16 +2,15 @@ package main;
 
 import static main.Main.*;
 
-import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.HashMap;
 import java.util.Map;
 
 import com.google.common.collect.ImmutableMap;
 
-import ch.obermuhlner.math.big.DefaultBigDecimalMath;
 import exceptions.SyntaxException;
-import util.values.ConstantValue;
+import util.Constant;
+import util.Printer;
 import util.values.Value;
 
 /**
@@ -24,26 +23,152 @@ public class Context
 	/**A map that stores variables. Variables may be any {@link Value}, but the key must be valid.**/
 	protected final Map<String, Value<?>> varMap = new HashMap<>();
 	
-	/**The {@link MathContext} used by arithmetic operations, cannot be changed.**/
-	protected final MathContext context;
-
-	/**Constants calculated with the precision specified by the {@link #context} object.**/
-	public final Value<BigDecimal> PI, E, PHI;
+	/**Marks the precision an entry is evaluated at, instead of the default one, ie "1/3 @50".**/
+	public static final char PRECISION_MARK = '@';
+	
+	/**The default {@link MathContext} of evaluations, see {@link Evaluation#begin(Context)}. Each evaluation may use another one, see {@link #begin(String)}.**/
+	protected volatile MathContext context;
 	
 	/**The last value calculated. May also be stringified exceptions.**/
 	protected Value<?> lastAnswer = null;
 	
+	/**Cache of parsed entries, invalidated as variables change.**/
+	protected final ExpressionCache expressionCache;
+	
+	/**Evaluates parsed entries, compiling the ones that are evaluated often.**/
+	protected final TieredEvaluator tieredEvaluator = new TieredEvaluator(TieredEvaluator.DEFAULT_THRESHOLD);
+	
+	/**Remembers the results of expensive functions, may be shared with other contexts.**/
+	protected final FunctionCache functionCache;
+	
+	/**Where the entries and results of this context are printed, {@code null} for the printer of the program.**/
+	protected volatile Printer output;
+	
+	/**If entries are always evaluated on {@code double}s first, not only at a precision a {@code double} can hold, see {@link DoubleEvaluator}.**/
+	protected final boolean fastDouble;
+	
 	/**Create a context with the specified precision.**/
 	public Context(int precision)
+	{
+		this(precision, ExpressionCache.DEFAULT_SIZE);
+	}
+	
+	/**Create a context with the specified precision and maximum amount of cached entries.**/
+	public Context(int precision, int cacheSize)
+	{
+		this(precision, cacheSize, false);
+	}
+	
+	/**Create a context with the specified precision and maximum amount of cached entries, optionally forcing evaluation on {@code double}s. Precision that a {@code double} can hold always uses them.**/
+	public Context(int precision, int cacheSize, boolean fastDouble)
+	{
+		this(precision, cacheSize, fastDouble, new FunctionCache(FunctionCache.DEFAULT_SIZE));
+	}
+	
+	/**Create a context like {@link #Context(int, int, boolean)}, but sharing the results of expensive functions with other contexts, ie the sessions of a {@link Server}.**/
+	public Context(int precision, int cacheSize, boolean fastDouble, FunctionCache functionCache)
 	{
 		// Unlimited precision is usually not supported by operations.
 		if (precision < 1)
 			throw new IllegalArgumentException("Precision level " + precision + " is not supported.");
 		context = new MathContext(precision);
-		DefaultBigDecimalMath.setDefaultMathContext(context);
-		PI = new ConstantValue(DefaultBigDecimalMath.pi(), 'π');
-		E = new ConstantValue(DefaultBigDecimalMath.e(), 'e');
-		PHI = new ConstantValue(DefaultBigDecimalMath.sqrt(BigDecimal.valueOf(5)).add(BigDecimal.ONE).divide(BigDecimal.valueOf(2)), 'φ');
+		expressionCache = new ExpressionCache(cacheSize);
+		this.fastDouble = fastDouble;
+		this.functionCache = functionCache;
+	}
+	
+	/**
+	 * Calculate every constant at the default precision of this context on a background thread, so they are ready by the time they are used.
+	 * Constants used before then wait for the thread instead of being calculated twice, see {@link ConstantStore#getValue(Constant, MathContext)}.
+	 */
+	public void warmUpConstants()
+	{
+		final Thread thread = new Thread(() ->
+		{
+			for (Constant constant : Constant.values())
+			{
+				try
+				{
+					ConstantStore.getValue(constant, context);
+				} catch (RuntimeException e)
+				{
+					// Calculated again and reported once it is used
+				}
+			}
+		}, "Constant warm-up");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+	
+	/**
+	 * Begin the evaluation of an entry, at the precision it is marked with if any, otherwise at the default precision. See {@link #PRECISION_MARK}.<br>
+	 * Constants at another precision are rounded from the most precise copy available, see {@link ConstantStore}.
+	 * @param entry The raw entry.
+	 * @return The evaluation, to be closed once the entry is evaluated.
+	 * @throws SyntaxException If the precision is not supported.
+	 */
+	public Evaluation begin(String entry) throws SyntaxException
+	{
+		final int precision = getMarkedPrecision(entry);
+		return Evaluation.begin(this, precision == 0 ? context : new MathContext(precision, context.getRoundingMode()));
+	}
+	
+	/**
+	 * Find the precision an entry is marked with, a {@link #PRECISION_MARK} followed only by digits at the end of the entry.
+	 * @param entry The raw entry.
+	 * @return The precision, or 0 if the entry is not marked.
+	 * @throws SyntaxException If the precision is not supported.
+	 */
+	public static int getMarkedPrecision(String entry) throws SyntaxException
+	{
+		final int mark = findPrecisionMark(entry);
+		if (mark < 0)
+			return 0;
+		final String digits = entry.substring(mark + 1).trim();
+		try
+		{
+			final int precision = Integer.parseInt(digits);
+			if (precision < 1)
+				throw new SyntaxException("Precision level " + digits + " is not supported.");
+			return precision;
+		} catch (NumberFormatException e)
+		{
+			throw new SyntaxException("Precision level " + digits + " is not supported.");
+		}
+	}
+	
+	/**
+	 * Remove the precision an entry is marked with, if any.
+	 * @param entry The raw entry.
+	 * @return The entry without its {@link #PRECISION_MARK} and precision.
+	 */
+	public static String removePrecisionMark(String entry)
+	{
+		final int mark = findPrecisionMark(entry);
+		return mark < 0 ? entry : entry.substring(0, mark).trim();
+	}
+	
+	/**
+	 * Find the {@link #PRECISION_MARK} at the end of an entry, followed by at least one digit.
+	 * @param entry The raw entry.
+	 * @return The index of the mark, or -1 if the entry is not marked.
+	 */
+	private static int findPrecisionMark(String entry)
+	{
+		final int mark = entry.lastIndexOf(PRECISION_MARK);
+		if (mark < 0)
+			return -1;
+		boolean digits = false;
+		for (int i = mark + 1; i < entry.length(); i++)
+		{
+			final char c = entry.charAt(i);
+			if (Character.isDigit(c))
+				digits = true;
+			else if (!Character.isWhitespace(c))
+				return -1;
+		}
+		return digits ? mark : -1;
 	}
 	
 	/**
@@ -70,7 +195,7 @@ public class Context
 	static void attemptAssign(String varName, String toAssign, Context context)
 	{
 		if (isValidVarName(varName))
-			context.addVar(varName, printer.printEntry(toAssign));
+			context.addVar(varName, context.getOutput().printEntry(toAssign));
 		else
 			getPrinter().println("Variable name is not acceptable. First letter must not be a digit, must not contain whitespace or any character that may be an operator, or be a reserved keyword.");
 	}
@@ -87,7 +212,7 @@ public class Context
 			return false;
 		
 		for (char c : name.toCharArray())
-			if (Character.isWhitespace(c) || Tokenizer.POTENTIAL_OPERATORS.contains(c))
+			if (Character.isWhitespace(c) || Tokenizer.isPotentialOperator(c))
 				return false;
 		
 		return !Parser.RESERVED_SET.contains(name.toLowerCase());
@@ -128,6 +253,7 @@ public class Context
 	protected void addVar(String name, Value<?> value)
 	{
 		varMap.put(name, value);
+		expressionCache.invalidateVar(name);
 	}
 	
 	/**
@@ -156,7 +282,8 @@ public class Context
 	 */
 	protected void delVar(String name)
 	{
-		varMap.remove(name);
+		if (varMap.remove(name) != null)
+			expressionCache.invalidateVar(name);
 	}
 	
 	/**
@@ -165,6 +292,7 @@ public class Context
 	protected void clearVars()
 	{
 		varMap.clear();
+		expressionCache.invalidateVars();
 	}
 	
 	/**
@@ -191,6 +319,102 @@ public class Context
 		getPrinter().println(String.format("%128s", value));
 	}
 	
+	/**
+	 * Retrieve the parsed form of an entry under the {@code MathContext} of the current evaluation, reusing a cached one if available. See {@link ExpressionCache}.
+	 * @param entry The raw entry to tokenize and parse.
+	 * @return The {@link Parser} holding the parsed entry.
+	 */
+	public Parser parse(String entry)
+	{
+		return expressionCache.getParser(entry, Main.getMathContext());
+	}
+	
+	/**
+	 * Evaluate a parsed expression tree under the {@code MathContext} of the current evaluation. Tries {@code double}s first if {@link #isFastDouble()}, see {@link DoubleEvaluator} and {@link TieredEvaluator}.
+	 * @param root The root of the tree.
+	 * @return The final value after all operations are complete.
+	 */
+	public Value<?> evaluate(Value<?> root)
+	{
+		if (isFastDouble())
+		{
+			final Value<?> value = DoubleEvaluator.evaluate(root, Main.getMathContext());
+			if (value != null)
+				return value;
+		}
+		return tieredEvaluator.evaluate(root);
+	}
+	
+	/**
+	 * If entries are evaluated on {@code double}s first, which also stores lists and matrices of numbers as {@link util.values.DoubleListValue} and {@link util.values.DoubleMatrixValue}.
+	 * @return True, if the precision of the current evaluation is low enough or evaluation on {@code double}s was forced.
+	 */
+	public boolean isFastDouble()
+	{
+		return fastDouble || Main.getPrecision() <= DoubleEvaluator.DOUBLE_PRECISION;
+	}
+	
+	/**
+	 * Retrieve the default {@code MathContext} of evaluations in this context.
+	 * @return The {@link #context}.
+	 */
+	public MathContext getMathContext()
+	{
+		return context;
+	}
+	
+	/**
+	 * Change the default precision of evaluations in this context. Constants are rounded or calculated again once they are used, see {@link ConstantStore}.
+	 * @param precision The new precision.
+	 * @throws IllegalArgumentException If the precision is not supported.
+	 */
+	public void setPrecision(int precision)
+	{
+		if (precision < 1)
+			throw new IllegalArgumentException("Precision level " + precision + " is not supported.");
+		context = new MathContext(precision, context.getRoundingMode());
+	}
+	
+	/**
+	 * Set where the entries and results of this context are printed.
+	 * @param output The printer, or {@code null} for the printer of the program.
+	 */
+	public void setOutput(Printer output)
+	{
+		this.output = output;
+	}
+	
+	/**
+	 * Retrieve where the entries and results of this context are printed, see {@link Main#getPrinter()}.
+	 * @return The printer of this context, otherwise the printer of the program.
+	 */
+	public Printer getOutput()
+	{
+		final Printer output = this.output;
+		return output != null ? output : printer;
+	}
+	
+	/**
+	 * Retrieve the cache of function results.
+	 * @return The {@link FunctionCache} of this context.
+	 */
+	public FunctionCache getFunctionCache()
+	{
+		return functionCache;
+	}
+	
+	/**
+	 * Print the statistics of the parsed entry cache, the function cache, and the evaluator.
+	 */
+	public void printCacheStats()
+	{
+		expressionCache.printStats(getPrinter());
+		getPrinter().println();
+		functionCache.printStats(getPrinter());
+		getPrinter().println();
+		tieredEvaluator.printStats(getPrinter());
+	}
+	
 	/**
 	 * Retrieves the entire variable registry.
 	 * @return A {@link ImmutableMap} copy of the variable registry.
@@ -0,0 +1,214 @@
+package main;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import util.Function;
+import util.OperationType;
+import util.expressions.AbsoluteValueExpression;
+import util.expressions.ArithmeticExpression;
+import util.expressions.Expression;
+import util.expressions.FactorialExpression;
+import util.expressions.FunctionExpression;
+import util.expressions.NestedExpression;
+import util.expressions.PrefixExpression;
+import util.expressions.VariableExpression;
+import util.values.ConstantValue;
+import util.values.NumberValue;
+import util.values.Value;
+
+/**
+ * Evaluates purely numeric expression trees on primitive {@code double}s, for when the precision in use does not need more than a {@code double} holds.<br>
+ * Whenever a tree contains something a {@code double} cannot represent faithfully, such as an unsupported value type, a number with more than {@link #DOUBLE_PRECISION} digits, an overflow, or a result that is not a number,
+ * no result is given and the tree should be evaluated with {@code BigDecimal}s as usual.
+ * @author UFFR
+ *
+ */
+public class DoubleEvaluator
+{
+	/**Maximum amount of significant digits a {@code double} holds reliably.**/
+	public static final int DOUBLE_PRECISION = 15;
+	/**Largest integer that has a factorial within the range of a {@code double}.**/
+	private static final int MAX_FACTORIAL = 170;
+	
+	/**
+	 * Attempt to evaluate a tree on {@code double}s.
+	 * @param root The root of the tree.
+	 * @param mathContext The {@code MathContext} in use, the result is rounded to it, but never to more than {@link #DOUBLE_PRECISION} digits.
+	 * @return The result, or {@code null} if the tree must be evaluated with {@code BigDecimal}s instead, which includes plain values with no operation to speed up.
+	 */
+	public static Value<?> evaluate(Value<?> root, MathContext mathContext)
+	{
+		if (!(root instanceof Expression))
+			return null;
+		final double result = evaluate(root);
+		if (!Double.isFinite(result))
+			return null;
+		final MathContext doubleContext = mathContext.getPrecision() > DOUBLE_PRECISION ? new MathContext(DOUBLE_PRECISION, mathContext.getRoundingMode()) : mathContext;
+		return new NumberValue(BigDecimal.valueOf(result).round(doubleContext));
+	}
+	
+	/**
+	 * Attempt to evaluate a function on every number of a list or matrix of {@code double}s, see {@link Evaluator#evaluateFunctionList(Function, BigDecimal, util.values.ListValue)}.
+	 * @param function The function, which must be element-wise.
+	 * @param base The base of the function, may be {@code null}.
+	 * @param values The numbers to evaluate the function on.
+	 * @return The results, or {@code null} if any of them must be evaluated with {@code BigDecimal}s instead.
+	 */
+	static double[] evaluateFunction(Function function, BigDecimal base, double[] values)
+	{
+		final double baseValue = base == null ? Double.NaN : base.doubleValue();
+		if (base != null && (function.singleArg || !Double.isFinite(baseValue)))
+			return null;
+		final double[] result = new double[values.length];
+		for (int i = 0; i < values.length; i++)
+		{
+			result[i] = checkUnderflow(evaluateFunction(function, base != null, baseValue, values[i]), false);
+			if (!Double.isFinite(result[i]))
+				return null;
+		}
+		return result;
+	}
+	
+	/**
+	 * Evaluate a node on {@code double}s.
+	 * @param node The node to evaluate.
+	 * @return The result, which is {@code NaN} or infinite if the node cannot be evaluated on {@code double}s.
+	 */
+	private static double evaluate(Value<?> node)
+	{
+		if (node instanceof NumberValue)
+		{
+			// Numbers with more digits than a double holds would silently lose them, constants are approximations either way
+			if (!(node instanceof ConstantValue) && ((NumberValue) node).getValue().precision() > DOUBLE_PRECISION)
+				return Double.NaN;
+			final double value = ((NumberValue) node).doubleValue();
+			// Numbers too small for a double would silently turn into zero
+			return Math.abs(value) < Double.MIN_NORMAL && ((NumberValue) node).getValue().signum() != 0 ? Double.NaN : value;
+		}
+		if (node instanceof VariableExpression)
+			return evaluate(((VariableExpression) node).getVariableValue());
+		if (node instanceof AbsoluteValueExpression)
+			return Math.abs(evaluate(((NestedExpression) node).getInner()));
+		if (node instanceof NestedExpression)
+			return evaluate(((NestedExpression) node).getInner());
+		if (node instanceof ArithmeticExpression)
+		{
+			final ArithmeticExpression expression = (ArithmeticExpression) node;
+			final double left = evaluate(expression.getLeft());
+			if (!Double.isFinite(left))
+				return Double.NaN;
+			return evaluateArithmetic(expression.getOperationType(), left, evaluate(expression.getRight()));
+		}
+		if (node instanceof FunctionExpression)
+		{
+			final FunctionExpression expression = (FunctionExpression) node;
+			final double base = expression.getBase() == null ? Double.NaN : evaluate(expression.getBase());
+			if (expression.getBase() != null && !Double.isFinite(base))
+				return Double.NaN;
+			return evaluateFunction(expression.getFunction(), expression.getBase() != null, base, evaluate(expression.getInput()));
+		}
+		if (node instanceof PrefixExpression && ((PrefixExpression) node).getOperationType() == OperationType.SUBTRACTION)
+			return -evaluate(((PrefixExpression) node).getOperand());
+		if (node instanceof FactorialExpression)
+			return factorial(evaluate(((FactorialExpression) node).getOperand()));
+		return Double.NaN;
+	}
+	
+	/**
+	 * The {@code double} equivalent of {@link util.expressions.ArithmeticExpression#evaluate()}.
+	 * @param type The operation.
+	 * @param left The left operand.
+	 * @param right The right operand.
+	 * @return The result, {@code NaN} if not applicable.
+	 */
+	private static double evaluateArithmetic(OperationType type, double left, double right)
+	{
+		if (!Double.isFinite(right))
+			return Double.NaN;
+		switch (type)
+		{
+			case ADDITION: return checkUnderflow(left + right, false);
+			case SUBTRACTION: return checkUnderflow(left - right, false);
+			case MULTIPLICATION: return checkUnderflow(left * right, left != 0 && right != 0);
+			case DIVISION: return right == 0 ? Double.NaN : checkUnderflow(left / right, left != 0);
+			case MODULUS: return right == 0 ? Double.NaN : checkUnderflow(left % right, false);
+			// Only integer exponents are supported, anything else must fail the same way it usually would
+			case EXPONENTIATION: return right == Math.rint(right) && Math.abs(right) <= Integer.MAX_VALUE && (left != 0 || right >= 0) ? checkUnderflow(Math.pow(left, right), left != 0) : Double.NaN;
+			default: return Double.NaN;
+		}
+	}
+	
+	/**
+	 * Checks if a result lost digits to underflow, which {@code BigDecimal} would have kept.
+	 * @param result The result.
+	 * @param nonZero If the result should not be zero.
+	 * @return The result, or {@code NaN} if it underflowed.
+	 */
+	private static double checkUnderflow(double result, boolean nonZero)
+	{
+		return Math.abs(result) < Double.MIN_NORMAL && (result != 0 || nonZero) ? Double.NaN : result;
+	}
+	
+	/**
+	 * The {@code double} equivalent of {@link Evaluator#evaluateFunction(Function, BigDecimal, BigDecimal)}.
+	 * @param function The function.
+	 * @param hasBase If a base was given.
+	 * @param base The base, if given.
+	 * @param input The main input.
+	 * @return The result, {@code NaN} if not applicable.
+	 */
+	private static double evaluateFunction(Function function, boolean hasBase, double base, double input)
+	{
+		if (!Double.isFinite(input))
+			return Double.NaN;
+		switch (function)
+		{
+			case ABS: return Math.abs(input);
+			
+			case ROOT:
+				if (!hasBase || base == 2)
+					return Math.sqrt(input);
+				if (input < 0)
+					return Double.NaN;
+				return base == 3 ? Math.cbrt(input) : Math.pow(input, 1 / base);
+			case LN: return input <= 0 ? Double.NaN : Math.log(input);
+			case LOG: return input <= 0 ? Double.NaN : Math.log10(input);
+			
+			case SIN: return Math.sin(input);
+			case COS: return Math.cos(input);
+			case TAN: return Math.tan(input);
+			
+			case ARCSIN: return Math.asin(input);
+			case ARCCOS: return Math.acos(input);
+			case ARCTAN: return hasBase ? Math.atan2(input, base) : Math.atan(input);
+			case CSC: return 1 / Math.sin(input);
+			case SEC: return 1 / Math.cos(input);
+			case COT: return 1 / Math.tan(input);
+			
+			case ARCCSC: return Math.asin(1 / input);
+			case ARCSEC: return Math.acos(1 / input);
+			case ARCCOT: return Math.PI / 2 - Math.atan(input);
+			
+			// Results are rounded to the precision in use regardless
+			case ROUND: return input;
+			// Ceiling and floor round to the precision with a specific rounding mode, which only BigDecimal can do faithfully
+			default: return Double.NaN;
+		}
+	}
+	
+	/**
+	 * The factorial of a non-negative integer.
+	 * @param input The number.
+	 * @return The factorial, {@code NaN} if the number is not a small enough non-negative integer.
+	 */
+	private static double factorial(double input)
+	{
+		if (input < 0 || input > MAX_FACTORIAL || input != Math.rint(input))
+			return Double.NaN;
+		double result = 1;
+		for (int i = 2; i <= input; i++)
+			result *= i;
+		return result;
+	}
+}
@@ -0,0 +1,87 @@
+package main;
+
+import java.math.MathContext;
+
+import ch.obermuhlner.math.big.DefaultBigDecimalMath;
+import ch.obermuhlner.math.big.DefaultBigDecimalMath.LocalMathContext;
+
+/**
+ * The {@link Context} and {@link MathContext} of the evaluation running on the current thread, see {@link Main#getContext()} and {@link Main#getMathContext()}.<br>
+ * Precision is a property of each evaluation rather than of the program, so evaluations at different precisions, or of different contexts, may run at the same time on different threads.
+ * The {@code MathContext} of {@link DefaultBigDecimalMath} is set for the thread as well, so its functions use the same precision.<br>
+ * Evaluations are begun in a try-with-resources statement, closing one restores the evaluation it was begun in, if any. Operations split across threads resume the evaluation that started them on every thread, see {@link util.Parallel}.
+ * @author UFFR
+ *
+ */
+public final class Evaluation implements AutoCloseable
+{
+	/**The innermost evaluation of each thread.**/
+	private static final ThreadLocal<Evaluation> CURRENT = new ThreadLocal<Evaluation>();
+	private final Context context;
+	private final MathContext mathContext;
+	/**The evaluation this one was begun in, restored once this one is closed.**/
+	private final Evaluation previous;
+	/**The {@code MathContext} of {@code DefaultBigDecimalMath} for the duration of this evaluation.**/
+	private final LocalMathContext local;
+	private Evaluation(Context context, MathContext mathContext)
+	{
+		this.context = context;
+		this.mathContext = mathContext;
+		previous = CURRENT.get();
+		local = DefaultBigDecimalMath.createLocalMathContext(mathContext);
+		CURRENT.set(this);
+	}
+	
+	/**
+	 * Begin an evaluation at the default precision of a context.
+	 * @param context The context, which holds the variables and last answer.
+	 * @return The evaluation, to be closed once it is complete.
+	 */
+	public static Evaluation begin(Context context)
+	{
+		return begin(context, context.getMathContext());
+	}
+	
+	/**
+	 * Begin an evaluation at a specific precision.
+	 * @param context The context, which holds the variables and last answer.
+	 * @param mathContext The {@code MathContext} of every operation of the evaluation.
+	 * @return The evaluation, to be closed once it is complete.
+	 */
+	public static Evaluation begin(Context context, MathContext mathContext)
+	{
+		return new Evaluation(context, mathContext);
+	}
+	
+	/**
+	 * Retrieve the evaluation running on the current thread.
+	 * @return The innermost evaluation, or {@code null} if none is running.
+	 */
+	public static Evaluation current()
+	{
+		return CURRENT.get();
+	}
+	
+	/**
+	 * End this evaluation, restoring the one it was begun in. Must be closed on the same thread it was begun on.
+	 */
+	@Override
+	public void close()
+	{
+		local.close();
+		if (previous == null)
+			CURRENT.remove();
+		else
+			CURRENT.set(previous);
+	}
+	
+	public Context getContext()
+	{
+		return context;
+	}
+	
+	public MathContext getMathContext()
+	{
+		return mathContext;
+	}
+}
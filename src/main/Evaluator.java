@@ -5,15 +5,13 @@ import static main.Main.*;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.math.RoundingMode;
-import java.util.ArrayList;
-import java.util.Deque;
-import java.util.List;
 
 import ch.obermuhlner.math.big.DefaultBigDecimalMath;
+import exceptions.DimensionException;
 import exceptions.SyntaxException;
 import exceptions.TypeException;
 import util.Function;
-import util.Operation;
+import util.Parallel;
 import util.expressions.Expression;
 import util.values.*;
 
@@ -25,7 +23,7 @@ import util.values.*;
 public class Evaluator
 {
 	/**
-	 * Evaluate a {@link Parser} object.
+	 * Evaluate a {@link Parser} object. Goes through the current {@link Context}, so entries that are evaluated often get compiled.
 	 * @param parser The {@code Parser} to evaluate.
 	 * @return The final value after all operations are complete.
 	 * @throws TypeException If an operation between two values failed because one didn't support the other type.
@@ -34,32 +32,19 @@ public class Evaluator
 	 */
 	public static Value<?> evaluateParsedExpression(Parser parser) throws TypeException, UnsupportedOperationException, SyntaxException
 	{
-		return evaluateParsedExpression(parser.getValues(), parser.getOperators());
+		return getContext().evaluate(parser.getRoot());
 	}
 	
 	/**
-	 * Evaluate two {@link Deque} objects, presumably created by a {@link Parser}. Goes in order of left-to-right, not by precedence, order has to be done by the parser first.
-	 * @param values The value {@code Deque}, behaves as a {@code stack}.
-	 * @param operators The operator {@code Deque}, behaves as a {@code stack}.
+	 * Evaluate a node of an expression tree. Expressions are evaluated recursively, other values are returned as they are.
+	 * @param value The node to evaluate.
 	 * @return The final value after all operations are complete.
 	 * @throws TypeException If an operation between two values failed because one didn't support the other type.
 	 * @throws UnsupportedOperationException If a value didn't support a certain operation.
-	 * @throws SyntaxException If a malformed token or value slipped past the {@code Parser} and caused an error.
 	 */
-	public static Value<?> evaluateParsedExpression(Deque<Value<?>> values, Deque<Operation> operators) throws TypeException, UnsupportedOperationException, SyntaxException
+	public static Value<?> evaluateValue(Value<?> value) throws TypeException, UnsupportedOperationException
 	{
-		while (!operators.isEmpty())
-		{
-			if (operators.peek().singleArg())
-				values.offer(operators.poll().constructExpression(values.poll(), null).evaluate());
-			else
-				values.offer(operators.poll().constructExpression(values.poll(), values.poll()).evaluate());
-		}
-		
-		if (values.peek() instanceof Expression)
-			return ((Expression) values.poll()).evaluate();
-		
-		return values.poll();
+		return value instanceof Expression ? ((Expression) value).evaluate() : value;
 	}
 	
 	/**
@@ -79,7 +64,34 @@ public class Evaluator
 			throw new TypeException("Value " + input + " is not applicable in this context for the " + function + " function.");
 		if (function.singleArg && base != null)
 			throw new SyntaxException("Function " + function + " does not take any additional parameters.");
-		final BigDecimal numInput = (BigDecimal) input.getValue(), result;
+		return new NumberValue(evaluateFunction(function, base, ((NumberValue) input).getValue()));
+	}
+	
+	/**
+	 * Evaluate a {@link Function} directly on numbers, without wrapping them in {@link Value}s. Used by {@link #evaluateFunctionGeneric(Function, BigDecimal, Value)} and compiled expressions.<br>
+	 * Results of expensive functions are remembered by the current {@link Context}, see {@link FunctionCache}.
+	 * @param function The {@code Function} type to evaluate.
+	 * @param base The base of the function, if applicable, may be {@code null}.
+	 * @param numInput The main input of the function.
+	 * @return The result of the function.
+	 */
+	public static BigDecimal evaluateFunction(Function function, BigDecimal base, BigDecimal numInput)
+	{
+		if (FunctionCache.isCached(function))
+			return getContext().getFunctionCache().get(function, base, numInput, getMathContext(), () -> calculateFunction(function, base, numInput));
+		return calculateFunction(function, base, numInput);
+	}
+	
+	/**
+	 * Calculate a {@link Function} on numbers, see {@link #evaluateFunction(Function, BigDecimal, BigDecimal)}.
+	 * @param function The {@code Function} type to evaluate.
+	 * @param base The base of the function, if applicable, may be {@code null}.
+	 * @param numInput The main input of the function.
+	 * @return The result of the function.
+	 */
+	private static BigDecimal calculateFunction(Function function, BigDecimal base, BigDecimal numInput)
+	{
+		final BigDecimal result;
 		switch (function)
 		{
 			case ABS: result = numInput.abs(); break;
@@ -106,14 +118,16 @@ public class Evaluator
 			
 			case CEIL: result = numInput.round(new MathContext(getPrecision(), RoundingMode.CEILING)); break;
 			case FLOOR: result = numInput.round(new MathContext(getPrecision(), RoundingMode.FLOOR)); break;
-			case ROUND: result = (BigDecimal) input.round(); break;
+			case ROUND: result = DefaultBigDecimalMath.round(numInput); break;
 			default: throw new IllegalStateException("Could not interpret function type: " + function + '!');
 		}
-		return new NumberValue(result);
+		return result;
 	}
 	
 	/**
-	 * {@link #evaluateFunctionGeneric(Function, BigDecimal, Value)}, but specifically for {@link ListValue}. Used recursively in the aforementioned method.
+	 * {@link #evaluateFunctionGeneric(Function, BigDecimal, Value)}, but specifically for {@link ListValue}. Used recursively in the aforementioned method.<br>
+	 * Lists of {@code double}s are evaluated on them directly where possible, see {@link DoubleListValue}. Lazy lists are evaluated lazily, see {@link LazyListValue}.
+	 * Long lists, or shorter ones of expensive functions at a high precision, are evaluated on multiple threads, see {@link Parallel}.
 	 * @param function The {@link Function} type to evaluate.
 	 * @param base The base of the function, if applicable, may be {@code null}.
 	 * @param listValue The list to evaluate the function on.
@@ -121,14 +135,21 @@ public class Evaluator
 	 */
 	public static Value<?> evaluateFunctionList(Function function, BigDecimal base, ListValue listValue)
 	{
-		final List<Value<?>> newValues = new ArrayList<Value<?>>(listValue.size());
-		for (Value<?> value : listValue)
-			newValues.add(evaluateFunctionGeneric(function, base, value));
-		return new ListValue(newValues);
+		if (listValue instanceof LazyListValue)
+			return ((LazyListValue) listValue).map(value -> evaluateFunctionGeneric(function, base, value), function, base);
+		if (listValue instanceof DoubleListValue)
+		{
+			final double[] result = DoubleEvaluator.evaluateFunction(function, base, ((DoubleListValue) listValue).getDoubles());
+			if (result != null)
+				return new DoubleListValue(result);
+		}
+		return ListValue.build(listValue.size(), Parallel.functionCost(function, getPrecision()), index -> evaluateFunctionGeneric(function, base, listValue.get(index)));
 	}
 	
 	/**
-	 * {@link #evaluateFunctionGeneric(Function, BigDecimal, Value)}, but specifically for {@link MatrixValue}. Used recursively in the aforementioned method.
+	 * {@link #evaluateFunctionGeneric(Function, BigDecimal, Value)}, but specifically for {@link MatrixValue}. Used recursively in the aforementioned method.<br>
+	 * Matrices of {@code double}s are evaluated on them directly where possible, see {@link DoubleMatrixValue}, large ones of other values on multiple threads, see {@link Parallel}.
+	 * Sparse matrices only evaluate their non-zero numbers if the function maps zero to zero, see {@link SparseMatrixValue}.
 	 * @param function The {@link Function} type to evaluate.
 	 * @param base The base of the function, if applicable, may be {@code null}.
 	 * @param matrixValue The matrix to evaluate the function on.
@@ -136,10 +157,173 @@ public class Evaluator
 	 */
 	public static Value<?> evaluateFunctionMatrix(Function function, BigDecimal base, MatrixValue matrixValue)
 	{
-		final Value<?>[][] otherMatrix = matrixValue.getValue(), newMatrix = new Value[matrixValue.getRows()][matrixValue.getColumns()];
-		for (int row = 0; row < matrixValue.getRows(); row++)
-			for (int column = 0; column < matrixValue.getColumns(); column++)
-				newMatrix[row][column] = evaluateFunctionGeneric(function, base, otherMatrix[row][column]);
-		return new MatrixValue(newMatrix);
+		if (matrixValue instanceof DoubleMatrixValue)
+		{
+			final double[] result = DoubleEvaluator.evaluateFunction(function, base, ((DoubleMatrixValue) matrixValue).getDoubles());
+			if (result != null)
+				return new DoubleMatrixValue(matrixValue.getRows(), matrixValue.getColumns(), result);
+		}
+		// Functions that keep zeros as zeros only need the non-zero numbers of sparse matrices
+		if (matrixValue instanceof SparseMatrixValue && keepsZero(function, base))
+			return ((SparseMatrixValue) matrixValue).mapNonZeros(Parallel.functionCost(function, getPrecision()), value -> evaluateFunctionGeneric(function, base, value));
+		final Value<?>[][] otherMatrix = matrixValue.getValue();
+		return MatrixValue.build(matrixValue.getRows(), matrixValue.getColumns(), Parallel.functionCost(function, getPrecision()),
+				(row, column) -> evaluateFunctionGeneric(function, base, otherMatrix[row][column]));
+	}
+	
+	/**
+	 * Checks if a {@link Function} maps zero to zero, so it may skip the zeros of a {@link SparseMatrixValue}.
+	 * @param function The {@code Function} type to check.
+	 * @param base The base of the function, if applicable, may be {@code null}.
+	 * @return True, if the function is defined for zero and the result is zero.
+	 */
+	private static boolean keepsZero(Function function, BigDecimal base)
+	{
+		try
+		{
+			return evaluateFunction(function, base, BigDecimal.ZERO).signum() == 0;
+		} catch (ArithmeticException e)
+		{
+			return false;
+		}
+	}
+	
+	/**
+	 * Evaluate a {@link Function} that takes whole values as its arguments instead of applying to each number, such as the matrix product.
+	 * @param function The {@code Function} type to evaluate, which must not be {@link Function#elementWise}.
+	 * @param base The second argument of the function, if applicable, may be {@code null}.
+	 * @param input The main input of the function.
+	 * @param extra The third argument of the function, if applicable, may be {@code null}.
+	 * @return The result of the function.
+	 * @throws TypeException If the function does not apply to the types of the arguments.
+	 * @throws DimensionException If the dimensions of the arguments do not match.
+	 */
+	public static Value<?> evaluateFunctionValues(Function function, Value<?> base, Value<?> input, Value<?> extra) throws TypeException, DimensionException
+	{
+		switch (function)
+		{
+			case MATMUL:
+				if (base == null)
+					throw new SyntaxException("Function " + function + " requires two arguments.");
+				if (input instanceof MatrixValue && base instanceof MatrixValue)
+					return ((MatrixValue) input).matrixProduct((MatrixValue) base);
+				if (input instanceof MatrixValue && base instanceof ListValue)
+					return ((MatrixValue) input).vectorProduct((ListValue) base);
+				// A row vector times a matrix is the transposed matrix times the vector
+				if (input instanceof ListValue && base instanceof MatrixValue)
+					return ((MatrixValue) base).transpose().vectorProduct((ListValue) input);
+				throw new TypeException("Values " + input + " and " + base + " are not applicable in this context for the " + function + " function.");
+			case TRANSPOSE:
+				if (input instanceof MatrixValue)
+					return ((MatrixValue) input).transpose();
+				throw new TypeException("Value " + input + " is not applicable in this context for the " + function + " function.");
+			case DET: return requireMatrix(function, input).getDecomposition().determinant();
+			case INV: return requireMatrix(function, input).getDecomposition().inverse();
+			case SOLVE:
+				if (base instanceof ListValue)
+					return requireMatrix(function, input).getDecomposition().solve((ListValue) base);
+				if (base instanceof MatrixValue)
+					return requireMatrix(function, input).getDecomposition().solve((MatrixValue) base);
+				if (base == null)
+					throw new SyntaxException("Function " + function + " requires two arguments.");
+				throw new TypeException("Value " + base + " is not applicable in this context for the " + function + " function.");
+			case RANGE:
+			{
+				// range(end) counts from 1, the step defaults to 1 towards the end
+				final BigDecimal start = base == null ? BigDecimal.ONE : requireNumber(function, input);
+				final BigDecimal end = requireNumber(function, base == null ? input : base);
+				final BigDecimal step = extra == null ? (end.compareTo(start) < 0 ? BigDecimal.ONE.negate() : BigDecimal.ONE) : requireNumber(function, extra);
+				return RangeValue.of(start, end, step);
+			}
+			case SUM: return reduce(function, Reduction.SUM, input, base);
+			case PROD: return reduce(function, Reduction.PRODUCT, input, base);
+			case MIN: return reduce(function, Reduction.MIN, input, base);
+			case MAX: return reduce(function, Reduction.MAX, input, base);
+			case MEAN: return reduce(function, Reduction.MEAN, input, base);
+			case NORM: return reduce(function, Reduction.NORM, input, base);
+			case DOT:
+				if (base == null)
+					throw new SyntaxException("Function " + function + " requires two arguments.");
+				if (input instanceof ListValue && base instanceof ListValue)
+					return ((ListValue) input).dot((ListValue) base);
+				if (input instanceof MatrixValue && base instanceof MatrixValue)
+					return ((MatrixValue) input).dot((MatrixValue) base);
+				throw new TypeException("Values " + input + " and " + base + " are not applicable in this context for the " + function + " function.");
+			case COUNT:
+				if (input instanceof MatrixValue)
+					return new NumberValue(BigDecimal.valueOf((long) ((MatrixValue) input).getRows() * ((MatrixValue) input).getColumns()));
+				return new NumberValue(BigDecimal.valueOf(requireList(function, input).size()));
+			default: throw new IllegalStateException("Could not interpret function type: " + function + '!');
+		}
+	}
+	
+	/**
+	 * Evaluate a {@link Function} that reduces a list or matrix, see {@link Reduction}.
+	 * @param function The function, for the message.
+	 * @param reduction The reduction it performs.
+	 * @param input The list or matrix to reduce.
+	 * @param axis The axis to reduce a matrix along, see {@link MatrixValue#reduce(Reduction, int)}, may be {@code null} to reduce every cell.
+	 * @return The result of the reduction.
+	 * @throws TypeException If the input is neither a list nor a matrix, or the axis is not a number.
+	 * @throws DimensionException If the axis is not applicable to the input.
+	 */
+	private static Value<?> reduce(Function function, Reduction reduction, Value<?> input, Value<?> axis) throws TypeException, DimensionException
+	{
+		if (input instanceof MatrixValue)
+		{
+			if (axis == null)
+				return ((MatrixValue) input).reduce(reduction);
+			final BigDecimal number = requireNumber(function, axis);
+			if (number.compareTo(BigDecimal.ZERO) != 0 && number.compareTo(BigDecimal.ONE) != 0)
+				throw new DimensionException("Axis " + number.toPlainString() + " is not applicable for a matrix, only 0 (columns) or 1 (rows).");
+			return ((MatrixValue) input).reduce(reduction, number.intValue());
+		}
+		final ListValue list = requireList(function, input);
+		// A list only has a single axis
+		if (axis != null && requireNumber(function, axis).signum() != 0)
+			throw new DimensionException("Axis " + axis + " is not applicable for a list, only 0.");
+		return list.reduce(reduction);
+	}
+	
+	/**
+	 * Checks that the input of a function is a matrix.
+	 * @param function The function, for the message.
+	 * @param input The input of the function.
+	 * @return The input as a matrix.
+	 * @throws TypeException If the input is not a matrix.
+	 */
+	private static MatrixValue requireMatrix(Function function, Value<?> input) throws TypeException
+	{
+		if (!(input instanceof MatrixValue))
+			throw new TypeException("Value " + input + " is not applicable in this context for the " + function + " function.");
+		return (MatrixValue) input;
+	}
+	
+	/**
+	 * Checks that an argument of a function is a list.
+	 * @param function The function, for the message.
+	 * @param input The argument of the function.
+	 * @return The argument as a list.
+	 * @throws TypeException If the argument is not a list.
+	 */
+	private static ListValue requireList(Function function, Value<?> input) throws TypeException
+	{
+		if (!(input instanceof ListValue))
+			throw new TypeException("Value " + input + " is not applicable in this context for the " + function + " function.");
+		return (ListValue) input;
+	}
+	
+	/**
+	 * Checks that an argument of a function is a number.
+	 * @param function The function, for the message.
+	 * @param input The argument of the function.
+	 * @return The number.
+	 * @throws TypeException If the argument is not a number.
+	 */
+	private static BigDecimal requireNumber(Function function, Value<?> input) throws TypeException
+	{
+		if (!(input instanceof NumberValue))
+			throw new TypeException("Value " + input + " is not applicable in this context for the " + function + " function.");
+		return ((NumberValue) input).getValue();
 	}
 }
@@ -0,0 +1,189 @@
+package main;
+
+import java.math.MathContext;
+import java.util.Objects;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import util.IPrinter;
+
+/**
+ * A bounded, least recently used cache of parsed entries, so repeated entries skip tokenizing and parsing.<br>
+ * Entries are keyed by their normalized source and the {@link MathContext} they were parsed under.
+ * Since variables are substituted during parsing, entries must be invalidated whenever a variable they reference changes.<br>
+ * Entries that miss the cache are parsed incrementally against the previous miss, see {@link IncrementalParser}.
+ * @author UFFR
+ *
+ */
+public class ExpressionCache
+{
+	/**Default maximum amount of entries kept.**/
+	public static final int DEFAULT_SIZE = 512;
+	
+	/**The underlying cache.**/
+	private final Cache<CacheKey, Parser> cache;
+	/**Parses entries that missed the cache, reusing what is unchanged from the previous miss.**/
+	private final IncrementalParser incrementalParser = new IncrementalParser();
+	/**Amount of entries dropped because a variable they referenced changed.**/
+	private long invalidations;
+	
+	/**
+	 * Create a cache with the specified maximum size.
+	 * @param maximumSize The maximum amount of parsed entries to keep. A size of 0 disables caching.
+	 */
+	public ExpressionCache(int maximumSize)
+	{
+		if (maximumSize < 0)
+			throw new IllegalArgumentException("Cache size " + maximumSize + " is not supported.");
+		cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+	}
+	
+	/**
+	 * Retrieve the parsed form of an entry, parsing it only if it isn't cached already.<br>
+	 * Entries that reference the last answer are never cached, as it changes with nearly every entry.
+	 * @param entry The raw entry.
+	 * @param mathContext The {@code MathContext} the entry is parsed under.
+	 * @return The {@link Parser} holding the parsed entry.
+	 */
+	public Parser getParser(String entry, MathContext mathContext)
+	{
+		final CacheKey key = new CacheKey(normalize(entry), mathContext);
+		final Parser cached = cache.getIfPresent(key);
+		if (cached != null)
+			return cached;
+		final Parser parser = incrementalParser.parse(entry, mathContext);
+		if (!parser.getVariables().contains("ans"))
+			cache.put(key, parser);
+		return parser;
+	}
+	
+	/**
+	 * Drop all entries that referenced the specified variable.
+	 * @param name The name of the variable that changed.
+	 */
+	public synchronized void invalidateVar(String name)
+	{
+		final long size = cache.size();
+		cache.asMap().values().removeIf(parser -> parser.getVariables().contains(name));
+		invalidations += size - cache.size();
+	}
+	
+	/**
+	 * Drop all entries that referenced any variable.
+	 */
+	public synchronized void invalidateVars()
+	{
+		final long size = cache.size();
+		cache.asMap().values().removeIf(parser -> !parser.getVariables().isEmpty());
+		invalidations += size - cache.size();
+	}
+	
+	/**
+	 * Get the hit, miss, and eviction counters of the cache.
+	 * @return A snapshot of the cache's statistics.
+	 */
+	public CacheStats getStats()
+	{
+		return cache.stats();
+	}
+	
+	/**
+	 * Get how many entries were dropped because a variable changed.
+	 * @return The amount of invalidated entries.
+	 */
+	public synchronized long getInvalidations()
+	{
+		return invalidations;
+	}
+	
+	/**
+	 * Print the statistics of the cache.
+	 * @param printer The printer to print to.
+	 */
+	public void printStats(IPrinter printer)
+	{
+		final CacheStats stats = getStats();
+		printer.println("Expression cache statistics:\n");
+		printer.println("Entries:       " + cache.size());
+		printer.println("Hits:          " + stats.hitCount());
+		printer.println("Misses:        " + stats.missCount());
+		printer.printfln("Hit rate:      %.2f%%", stats.hitRate() * 100);
+		printer.println("Evictions:     " + stats.evictionCount());
+		printer.println("Invalidations: " + getInvalidations());
+	}
+	
+	/**
+	 * Normalizes an entry so insignificant differences do not create separate entries.<br>
+	 * Spaces outside of string literals are removed, unless removing them would join two tokens into one (ie "1 2" or "! =").
+	 * @param entry The raw entry.
+	 * @return The normalized entry.
+	 */
+	static String normalize(String entry)
+	{
+		final StringBuilder builder = new StringBuilder(entry.length());
+		boolean quoted = false, pendingSpace = false;
+		for (int i = 0; i < entry.length(); i++)
+		{
+			final char c = entry.charAt(i);
+			if (!quoted && c == ' ')
+			{
+				pendingSpace = builder.length() > 0;
+				continue;
+			}
+			if (pendingSpace && mayJoin(builder.charAt(builder.length() - 1), c))
+				builder.append(' ');
+			pendingSpace = false;
+			if (c == '"')
+				quoted = !quoted;
+			builder.append(c);
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Checks if two characters would be read as part of the same token if nothing separated them.
+	 * @param previous The first character.
+	 * @param next The second character.
+	 * @return True, if a space between them is significant.
+	 */
+	private static boolean mayJoin(char previous, char next)
+	{
+		final boolean previousWord = Character.isLetterOrDigit(previous) || previous == '.', nextWord = Character.isLetterOrDigit(next) || next == '.';
+		return (previousWord && nextWord) || (Tokenizer.isPotentialOperator(previous) && Tokenizer.isPotentialOperator(next));
+	}
+	
+	/**
+	 * Key for the cache, combining the normalized entry and the {@code MathContext}.
+	 * @author UFFR
+	 *
+	 */
+	private static class CacheKey
+	{
+		private final String source;
+		private final MathContext mathContext;
+		public CacheKey(String source, MathContext mathContext)
+		{
+			this.source = source;
+			this.mathContext = mathContext;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(mathContext, source);
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (!(obj instanceof CacheKey))
+				return false;
+			final CacheKey other = (CacheKey) obj;
+			return Objects.equals(mathContext, other.mathContext) && Objects.equals(source, other.source);
+		}
+	}
+}
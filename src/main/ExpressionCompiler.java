@@ -0,0 +1,212 @@
+package main;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+
+import ch.obermuhlner.math.big.DefaultBigDecimalMath;
+import exceptions.SyntaxException;
+import util.Function;
+import util.OperationType;
+import util.expressions.AbsoluteValueExpression;
+import util.expressions.ArithmeticExpression;
+import util.expressions.FactorialExpression;
+import util.expressions.FunctionExpression;
+import util.expressions.NestedExpression;
+import util.expressions.PrefixExpression;
+import util.expressions.VariableExpression;
+import util.values.NumberValue;
+import util.values.Value;
+
+/**
+ * Compiles purely numeric expression trees into {@link Kernel}s, which work directly on {@link BigDecimal}s.<br>
+ * Every number in the tree becomes a slot of the kernel, so a kernel compiled from one tree may be reused for any other tree of the same shape.
+ * @author UFFR
+ *
+ */
+public class ExpressionCompiler
+{
+	/**
+	 * A compiled expression. Calls {@code BigDecimal} and {@link DefaultBigDecimalMath} directly, without any {@link Value} in between.
+	 * @author UFFR
+	 *
+	 */
+	@FunctionalInterface
+	public interface Kernel
+	{
+		/**
+		 * Evaluate the compiled expression.
+		 * @param slots The numbers of the tree, in the order given by {@link ExpressionCompiler#describe(Value, StringBuilder, List)}.
+		 * @param mathContext The {@code MathContext} to evaluate under.
+		 * @return The result.
+		 */
+		public BigDecimal apply(BigDecimal[] slots, MathContext mathContext);
+	}
+	
+	/**
+	 * Describe the shape of a tree and collect its numbers, if it can be compiled.<br>
+	 * Trees can be compiled if they only consist of numbers (including variables holding them), arithmetic, negation, factorials, absolute values, and element-wise functions.
+	 * @param node The root of the tree.
+	 * @param shape Builder for the shape, the operations of the tree with every number left out.
+	 * @param slots Collects the numbers of the tree.
+	 * @return True, if the tree can be compiled, false if not, in which case the shape and slots are incomplete.
+	 */
+	public static boolean describe(Value<?> node, StringBuilder shape, List<BigDecimal> slots)
+	{
+		if (node instanceof NumberValue)
+		{
+			shape.append('#');
+			slots.add(((NumberValue) node).getValue());
+			return true;
+		}
+		if (node instanceof VariableExpression)
+			return describe(((VariableExpression) node).getVariableValue(), shape, slots);
+		if (node instanceof AbsoluteValueExpression)
+		{
+			shape.append('|');
+			final boolean compilable = describe(((NestedExpression) node).getInner(), shape, slots);
+			shape.append('|');
+			return compilable;
+		}
+		if (node instanceof NestedExpression)
+			return describe(((NestedExpression) node).getInner(), shape, slots);
+		if (node instanceof ArithmeticExpression)
+		{
+			final ArithmeticExpression expression = (ArithmeticExpression) node;
+			shape.append('(');
+			if (!describe(expression.getLeft(), shape, slots))
+				return false;
+			shape.append(expression.getOperationType().getSymbol());
+			final boolean compilable = describe(expression.getRight(), shape, slots);
+			shape.append(')');
+			return compilable;
+		}
+		if (node instanceof FunctionExpression)
+		{
+			final FunctionExpression expression = (FunctionExpression) node;
+			if (!expression.getFunction().elementWise)
+				return false;
+			shape.append(expression.getFunction()).append('(');
+			if (!describe(expression.getInput(), shape, slots))
+				return false;
+			if (expression.getBase() != null)
+			{
+				shape.append(',');
+				if (!describe(expression.getBase(), shape, slots))
+					return false;
+			}
+			shape.append(')');
+			return true;
+		}
+		if (node instanceof PrefixExpression)
+		{
+			final PrefixExpression expression = (PrefixExpression) node;
+			if (expression.getOperationType() != OperationType.SUBTRACTION)
+				return false;
+			shape.append('~');
+			return describe(expression.getOperand(), shape, slots);
+		}
+		if (node instanceof FactorialExpression)
+		{
+			final boolean compilable = describe(((FactorialExpression) node).getOperand(), shape, slots);
+			shape.append('!');
+			return compilable;
+		}
+		return false;
+	}
+	
+	/**
+	 * Compile a tree into a kernel. The tree must be compilable, see {@link #describe(Value, StringBuilder, List)}.
+	 * @param node The root of the tree.
+	 * @return The compiled kernel.
+	 * @throws IllegalArgumentException If the tree cannot be compiled.
+	 */
+	public static Kernel compile(Value<?> node) throws IllegalArgumentException
+	{
+		return compile(node, new int[1]);
+	}
+	
+	/**
+	 * Compile a node into a kernel, assigning slots to numbers in the same order as {@link #describe(Value, StringBuilder, List)}.
+	 * @param node The node to compile.
+	 * @param nextSlot Holds the next slot to assign.
+	 * @return The compiled kernel.
+	 * @throws IllegalArgumentException If the node cannot be compiled.
+	 */
+	private static Kernel compile(Value<?> node, int[] nextSlot) throws IllegalArgumentException
+	{
+		if (node instanceof NumberValue)
+		{
+			final int slot = nextSlot[0]++;
+			return (slots, mathContext) -> slots[slot];
+		}
+		if (node instanceof VariableExpression)
+			return compile(((VariableExpression) node).getVariableValue(), nextSlot);
+		if (node instanceof AbsoluteValueExpression)
+		{
+			final Kernel inner = compile(((NestedExpression) node).getInner(), nextSlot);
+			return (slots, mathContext) -> inner.apply(slots, mathContext).abs();
+		}
+		if (node instanceof NestedExpression)
+			return compile(((NestedExpression) node).getInner(), nextSlot);
+		if (node instanceof ArithmeticExpression)
+			return compileArithmetic((ArithmeticExpression) node, nextSlot);
+		if (node instanceof FunctionExpression)
+		{
+			final FunctionExpression expression = (FunctionExpression) node;
+			final Function function = expression.getFunction();
+			final Kernel input = compile(expression.getInput(), nextSlot);
+			if (expression.getBase() == null)
+				return (slots, mathContext) -> Evaluator.evaluateFunction(function, null, input.apply(slots, mathContext));
+			final Kernel base = compile(expression.getBase(), nextSlot);
+			return (slots, mathContext) ->
+			{
+				// The base is evaluated first, as it is when interpreted
+				final BigDecimal baseValue = base.apply(slots, mathContext);
+				return Evaluator.evaluateFunction(function, baseValue, input.apply(slots, mathContext));
+			};
+		}
+		if (node instanceof PrefixExpression && ((PrefixExpression) node).getOperationType() == OperationType.SUBTRACTION)
+		{
+			final Kernel operand = compile(((PrefixExpression) node).getOperand(), nextSlot);
+			return (slots, mathContext) -> operand.apply(slots, mathContext).negate();
+		}
+		if (node instanceof FactorialExpression)
+		{
+			final Kernel operand = compile(((FactorialExpression) node).getOperand(), nextSlot);
+			return (slots, mathContext) -> DefaultBigDecimalMath.factorial(operand.apply(slots, mathContext));
+		}
+		throw new IllegalArgumentException("Node [" + node + "] cannot be compiled.");
+	}
+	
+	/**
+	 * Compile an arithmetic node, resolving the operation once instead of on every evaluation.
+	 * @param expression The node to compile.
+	 * @param nextSlot Holds the next slot to assign.
+	 * @return The compiled kernel.
+	 */
+	private static Kernel compileArithmetic(ArithmeticExpression expression, int[] nextSlot)
+	{
+		final Kernel left = compile(expression.getLeft(), nextSlot), right = compile(expression.getRight(), nextSlot);
+		switch (expression.getOperationType())
+		{
+			case ADDITION: return (slots, mathContext) -> left.apply(slots, mathContext).add(right.apply(slots, mathContext), mathContext);
+			case SUBTRACTION: return (slots, mathContext) -> left.apply(slots, mathContext).subtract(right.apply(slots, mathContext), mathContext);
+			case MULTIPLICATION: return (slots, mathContext) -> left.apply(slots, mathContext).multiply(right.apply(slots, mathContext), mathContext);
+			case DIVISION: return (slots, mathContext) -> left.apply(slots, mathContext).divide(right.apply(slots, mathContext), mathContext);
+			case MODULUS: return (slots, mathContext) -> left.apply(slots, mathContext).remainder(right.apply(slots, mathContext), mathContext);
+			case EXPONENTIATION: return (slots, mathContext) ->
+			{
+				final BigDecimal base = left.apply(slots, mathContext), exponent = right.apply(slots, mathContext);
+				try
+				{
+					return base.pow(exponent.intValueExact(), mathContext);
+				} catch (ArithmeticException e)
+				{
+					throw new SyntaxException("Exponent could not be parsed as a 32-bit integer.", e);
+				}
+			};
+			default: throw new IllegalArgumentException("Operation [" + expression.getOperationType() + "] cannot be compiled.");
+		}
+	}
+}
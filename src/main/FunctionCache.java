@@ -0,0 +1,130 @@
+package main;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import util.Function;
+import util.IPrinter;
+
+/**
+ * A bounded, concurrent cache of the results of expensive functions, such as the trigonometric functions, logarithms, and roots.<br>
+ * Results are keyed by the function, its base, its input, and the {@link MathContext} they were calculated under.
+ * Numbers are stripped of trailing zeros first, so equal numbers with different scales (ie 0.5 and 0.50) share an entry.
+ * @author UFFR
+ *
+ */
+public class FunctionCache
+{
+	/**Default maximum amount of results kept.**/
+	public static final int DEFAULT_SIZE = 4096;
+	
+	/**The underlying cache.**/
+	private final Cache<FunctionKey, BigDecimal> cache;
+	
+	/**
+	 * Create a cache with the specified maximum size.
+	 * @param maximumSize The maximum amount of results to keep. A size of 0 disables caching.
+	 */
+	public FunctionCache(int maximumSize)
+	{
+		if (maximumSize < 0)
+			throw new IllegalArgumentException("Cache size " + maximumSize + " is not supported.");
+		cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+	}
+	
+	/**
+	 * Checks if the results of a function are worth caching. Functions that only round or change the sign are cheaper to calculate than to look up.
+	 * @param function The function to check.
+	 * @return True, if the results should be cached.
+	 */
+	public static boolean isCached(Function function)
+	{
+		return function.isExpensive();
+	}
+	
+	/**
+	 * Retrieve the result of a function, calculating it only if it isn't cached already. Failed calculations are not cached.
+	 * @param function The function.
+	 * @param base The base of the function, may be {@code null}.
+	 * @param input The main input of the function.
+	 * @param mathContext The {@code MathContext} the result is calculated under.
+	 * @param calculation Calculates the result if it isn't cached.
+	 * @return The result.
+	 */
+	public BigDecimal get(Function function, BigDecimal base, BigDecimal input, MathContext mathContext, Supplier<BigDecimal> calculation)
+	{
+		final FunctionKey key = new FunctionKey(function, base, input, mathContext);
+		final BigDecimal cached = cache.getIfPresent(key);
+		if (cached != null)
+			return cached;
+		final BigDecimal result = calculation.get();
+		cache.put(key, result);
+		return result;
+	}
+	
+	/**
+	 * Get the hit, miss, and eviction counters of the cache.
+	 * @return A snapshot of the cache's statistics.
+	 */
+	public CacheStats getStats()
+	{
+		return cache.stats();
+	}
+	
+	/**
+	 * Print the statistics of the cache.
+	 * @param printer The printer to print to.
+	 */
+	public void printStats(IPrinter printer)
+	{
+		final CacheStats stats = getStats();
+		printer.println("Function cache statistics:\n");
+		printer.println("Entries:       " + cache.size());
+		printer.println("Hits:          " + stats.hitCount());
+		printer.println("Misses:        " + stats.missCount());
+		printer.printfln("Hit rate:      %.2f%%", stats.hitRate() * 100);
+		printer.println("Evictions:     " + stats.evictionCount());
+	}
+	
+	/**
+	 * Key for the cache, with the numbers normalized so their scale does not matter.
+	 * @author UFFR
+	 *
+	 */
+	private static class FunctionKey
+	{
+		private final Function function;
+		private final BigDecimal base, input;
+		private final MathContext mathContext;
+		public FunctionKey(Function function, BigDecimal base, BigDecimal input, MathContext mathContext)
+		{
+			this.function = function;
+			this.base = base == null ? null : base.stripTrailingZeros();
+			this.input = input.stripTrailingZeros();
+			this.mathContext = mathContext;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash(function, base, input, mathContext);
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+				return true;
+			if (!(obj instanceof FunctionKey))
+				return false;
+			final FunctionKey other = (FunctionKey) obj;
+			return function == other.function && Objects.equals(base, other.base) && Objects.equals(input, other.input) && Objects.equals(mathContext, other.mathContext);
+		}
+	}
+}
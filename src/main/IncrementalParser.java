@@ -0,0 +1,107 @@
+package main;
+
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import exceptions.SyntaxException;
+import util.tokens.Token;
+
+/**
+ * Parses entries that are edited versions of the previous one, by only tokenizing and parsing again what was changed.<br>
+ * The characters before and after the edit are matched against the previous entry, and every token that lies entirely outside of the edit is kept as it was.
+ * Tokenizing resumes right before the edit and stops as soon as it lines up with a token of the previous entry again.
+ * The {@link Parser} then reuses the bracketed subtrees, and their evaluated values, that lie in the unchanged tokens. See {@link Parser#Parser(List, Parser)}.
+ * @author UFFR
+ *
+ */
+public class IncrementalParser
+{
+	/**The previous entry.**/
+	private String source;
+	/**The {@code MathContext} the previous entry was parsed under. Nothing is reused under a different one.**/
+	private MathContext mathContext;
+	/**The tokens of the previous entry, as given by the {@link Tokenizer}.**/
+	private List<Token> tokens;
+	/**The start (inclusive) and end (exclusive) index of each of the previous {@link #tokens} in the {@link #source}.**/
+	private int[] starts, ends;
+	/**The parser of the previous entry.**/
+	private Parser parser;
+	
+	/**
+	 * Tokenize and parse an entry, reusing as much of the previous entry as possible.
+	 * @param entry The raw entry.
+	 * @param mathContext The {@code MathContext} the entry is parsed under.
+	 * @return The {@link Parser} holding the parsed entry.
+	 * @throws SyntaxException If the entry could not be tokenized or parsed.
+	 */
+	public synchronized Parser parse(String entry, MathContext mathContext) throws SyntaxException
+	{
+		final boolean incremental = parser != null && mathContext.equals(this.mathContext);
+		final List<Token> newTokens = new ArrayList<Token>();
+		int[] newStarts = new int[16], newEnds = new int[16];
+		int count = 0, resume = 0, suffixStart = Integer.MAX_VALUE, delta = 0;
+		
+		if (incremental)
+		{
+			final int limit = Math.min(source.length(), entry.length());
+			int prefix = 0, suffix = 0;
+			while (prefix < limit && source.charAt(prefix) == entry.charAt(prefix))
+				prefix++;
+			while (suffix < limit - prefix && source.charAt(source.length() - suffix - 1) == entry.charAt(entry.length() - suffix - 1))
+				suffix++;
+			
+			// Keep tokens that end before the edit, the character right after them must be unchanged as well, since it decided where they ended
+			while (count < tokens.size() && ends[count] < prefix)
+				count++;
+			newTokens.addAll(tokens.subList(0, count));
+			newStarts = Arrays.copyOf(starts, Math.max(16, count * 2));
+			newEnds = Arrays.copyOf(ends, newStarts.length);
+			resume = count == 0 ? 0 : ends[count - 1];
+			suffixStart = entry.length() - suffix;
+			delta = entry.length() - source.length();
+		}
+		
+		final Tokenizer tokenizer = new Tokenizer(entry, resume);
+		final int kept = count;
+		Token token;
+		while ((token = tokenizer.nextToken()) != null)
+		{
+			final int start = tokenizer.getTokenStart();
+			// Once a token starts in the unchanged characters at the same place a previous one did, the rest is identical
+			final int previous = start >= suffixStart ? Arrays.binarySearch(starts, kept, tokens.size(), start - delta) : -1;
+			if (previous >= 0)
+			{
+				final int remaining = tokens.size() - previous;
+				newTokens.addAll(tokens.subList(previous, tokens.size()));
+				newStarts = Arrays.copyOf(newStarts, count + remaining);
+				newEnds = Arrays.copyOf(newEnds, count + remaining);
+				for (int i = 0; i < remaining; i++, count++)
+				{
+					newStarts[count] = starts[previous + i] + delta;
+					newEnds[count] = ends[previous + i] + delta;
+				}
+				break;
+			}
+			if (count == newStarts.length)
+			{
+				newStarts = Arrays.copyOf(newStarts, count * 2);
+				newEnds = Arrays.copyOf(newEnds, count * 2);
+			}
+			newTokens.add(token);
+			newStarts[count] = start;
+			newEnds[count] = tokenizer.getIndex();
+			count++;
+		}
+		
+		final Parser newParser = new Parser(newTokens, incremental ? parser : null);
+		source = entry;
+		this.mathContext = mathContext;
+		tokens = newTokens;
+		starts = Arrays.copyOf(newStarts, count);
+		ends = Arrays.copyOf(newEnds, count);
+		parser = newParser;
+		return newParser;
+	}
+}
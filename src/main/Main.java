@@ -1,6 +1,18 @@
 package main;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.math.MathContext;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.List;
 import java.util.Scanner;
@@ -16,17 +28,21 @@ import org.apache.commons.cli.ParseException;
 import com.google.common.collect.ImmutableSet;
 
 import util.IPrinter;
+import util.Parallel;
 import util.Printer;
 import util.tokens.Token;
+import util.values.SparseMatrixValue;
 
 public class Main
 {
 	/**Strings reserved for commands.**/
-	public static final Set<String> COMMAND_STRINGS = ImmutableSet.of("exit", "del", "vars");
+	public static final Set<String> COMMAND_STRINGS = ImmutableSet.of("exit", "del", "vars", "cache", "precision");
 	/**A supplier type to create a {@link Parser} given tokens.**/
 	public static final Function<List<Token>, Parser> PARSER = Parser::new;
 	/**A supplier type to create a {@link Deque} of tokens for a {@link Parser} to take.**/
 	public static final Function<String, List<Token>> TOKENIZER = Tokenizer::tokenize;
+	/**Options handled by the client itself, rather than passed on to the daemon it starts.**/
+	private static final Set<String> CLIENT_OPTIONS = ImmutableSet.of("client", "client-port", "precision", "input", "export", "batch", "server", "bind", "idle-timeout");
 	/**Scanner to read user input.**/
 	private static final Scanner SCANNER = new Scanner(System.in);
 	/**Command line options.**/
@@ -37,20 +53,41 @@ public class Main
 		// TODO Proper options
 		OPTIONS.addOption(Option.builder("p").longOpt("precision").desc("Digits of precision to set the program to. Higher precision will result in longer calculating time for irrational numbers, but also supports very large numbers as well. Default is 128.").required(false).hasArg(true).optionalArg(false).argName("digits").build());
 		OPTIONS.addOption(Option.builder("e").longOpt("export").desc("For printing options that export to a file, set the output path.").required(false).hasArg(true).optionalArg(false).argName("path").build());
+		OPTIONS.addOption(Option.builder("i").longOpt("input").desc("Evaluate an entire file as a single entry, then exit. The file is streamed rather than loaded, so very large literals such as matrices may be used.").required(false).hasArg(true).optionalArg(false).argName("path").build());
+		OPTIONS.addOption(Option.builder().longOpt("cache-size").desc("Maximum amount of parsed entries to keep for reuse when the same entry is given again. Default is " + ExpressionCache.DEFAULT_SIZE + ", 0 disables the cache.").required(false).hasArg(true).optionalArg(false).argName("entries").build());
+		OPTIONS.addOption(Option.builder().longOpt("fast-double").desc("Evaluate entries on double precision floating point numbers whenever possible, falling back to full precision on overflow or unsupported values. Always enabled for a precision of " + DoubleEvaluator.DOUBLE_PRECISION + " or lower.").required(false).hasArg(false).build());
+		OPTIONS.addOption(Option.builder().longOpt("parallel-threshold").desc("Estimated cost, in operations on numbers of 16 digits, above which matrix operations are split across all processors. Default is " + Parallel.DEFAULT_THRESHOLD + ", 0 always splits.").required(false).hasArg(true).optionalArg(false).argName("cost").build());
+		OPTIONS.addOption(Option.builder().longOpt("sparse-density").desc("Fraction of non-zero cells up to which matrices are stored sparsely, keeping only their non-zero numbers. Default is " + SparseMatrixValue.DEFAULT_DENSITY_THRESHOLD + ", 0 only stores matrices of zeros sparsely.").required(false).hasArg(true).optionalArg(false).argName("fraction").build());
+		OPTIONS.addOption(Option.builder().longOpt("constant-cache").desc("Directory to store the digits of constants in, so high precisions only calculate them once. Default is " + ConstantStore.getDefaultDirectory() + ", \"none\" disables storing them.").required(false).hasArg(true).optionalArg(false).argName("directory").build());
+		OPTIONS.addOption(Option.builder().longOpt("no-warm-up").desc("Do not calculate constants in the background while the first entry is typed, only once they are used.").required(false).hasArg(false).build());
+		OPTIONS.addOption(Option.builder().longOpt("batch").desc("Evaluate each line of a file as it would be typed, then exit. Lines that do not depend on each other, through variables or the last answer, are evaluated in parallel, but printed in order.").required(false).hasArg(true).optionalArg(false).argName("path").build());
+		OPTIONS.addOption(Option.builder().longOpt("server").desc("Serve sessions over TCP instead of reading from the console, each with its own variables, last answer, and precision. Clients send entries and commands one per line, as they would be typed, after the token the server stores under " + getCacheDirectory() + ".").required(false).hasArg(true).optionalArg(false).argName("port").build());
+		OPTIONS.addOption(Option.builder().longOpt("bind").desc("For the server, the address to listen on. Default is the loopback address, so only local clients may connect.").required(false).hasArg(true).optionalArg(false).argName("address").build());
+		OPTIONS.addOption(Option.builder().longOpt("idle-timeout").desc("For the server, seconds without any session after which it closes itself. Default is 0, which never closes it.").required(false).hasArg(true).optionalArg(false).argName("seconds").build());
+		OPTIONS.addOption(Option.builder().longOpt("client").desc("Evaluate the remaining arguments as a single entry, or each line of the standard input if there are none, on a server running in the background, starting one if none is listening. The server closes itself after " + Client.DEFAULT_IDLE_TIMEOUT + " idle seconds.").required(false).hasArg(false).build());
+		OPTIONS.addOption(Option.builder().longOpt("client-port").desc("For the client, the port of the server. Default is " + Server.DEFAULT_PORT + '.').required(false).hasArg(true).optionalArg(false).argName("port").build());
 		OPTIONS.addOption(Option.builder().longOpt("print-stack-trace").desc("Print the full stack trace of exceptions, possibly useful for debugging, but usually not required for most non-developers.").required(false).hasArg(false).build());
 	}
 	
-	/**The current program's {@link Context}.**/
+	/**The {@link Context} of the interactive session, used when no {@link Evaluation} is running.**/
 	static Context context;
 	/**An abstract class to print the outputs. May be to {@code System.out} only or also include a file.**/
 	static Printer printer;
 	/**Whether or not the print the entire stack during exceptions. Good for debugging, but superfluous for general syntax errors.**/
 	static boolean printStack;
+	/**Whether or not to calculate constants in the background while waiting for input, see {@link Context#warmUpConstants()}.**/
+	static boolean warmUp;
+	// The evaluation of -i is only begun to make the session current on the thread
+	@SuppressWarnings("try")
 	public static void main(String[] args)
 	{
 		// TODO Proper switch
 		printer = Printer.SIMPLE_PRINTER.get();
-		int precision;
+		int precision, cacheSize;
+		final boolean fastDouble;
+		final String inputPath, batchPath;
+		int port = -1, idleTimeout = 0;
+		InetAddress address = InetAddress.getLoopbackAddress();
 		try
 		{
 			final CommandLine commandLine = new DefaultParser().parse(OPTIONS, args);
@@ -62,7 +99,86 @@ public class Main
 				printer.println("Caught [" + e + "] trying to parse argument '-p', defaulting to precision of 128.");
 				precision = 128;
 			}
+			try
+			{
+				cacheSize = Integer.parseInt(commandLine.getOptionValue("cache-size", String.valueOf(ExpressionCache.DEFAULT_SIZE)));
+			} catch (NumberFormatException e)
+			{
+				printer.println("Caught [" + e + "] trying to parse argument '--cache-size', defaulting to " + ExpressionCache.DEFAULT_SIZE + '.');
+				cacheSize = ExpressionCache.DEFAULT_SIZE;
+			}
+			try
+			{
+				Parallel.setThreshold(Long.parseLong(commandLine.getOptionValue("parallel-threshold", String.valueOf(Parallel.DEFAULT_THRESHOLD))));
+			} catch (IllegalArgumentException e)
+			{
+				printer.println("Caught [" + e + "] trying to parse argument '--parallel-threshold', defaulting to " + Parallel.DEFAULT_THRESHOLD + '.');
+			}
+			try
+			{
+				SparseMatrixValue.setDensityThreshold(Double.parseDouble(commandLine.getOptionValue("sparse-density", String.valueOf(SparseMatrixValue.DEFAULT_DENSITY_THRESHOLD))));
+			} catch (IllegalArgumentException e)
+			{
+				printer.println("Caught [" + e + "] trying to parse argument '--sparse-density', defaulting to " + SparseMatrixValue.DEFAULT_DENSITY_THRESHOLD + '.');
+			}
+			if (commandLine.hasOption("constant-cache"))
+			{
+				final String directory = commandLine.getOptionValue("constant-cache");
+				try
+				{
+					ConstantStore.setDirectory(directory.equalsIgnoreCase("none") ? null : Paths.get(directory));
+				} catch (InvalidPathException e)
+				{
+					printer.println("Caught [" + e + "] trying to parse argument '--constant-cache', defaulting to " + ConstantStore.getDirectory() + '.');
+				}
+			}
 			printStack = commandLine.hasOption("print-stack-trace");
+			fastDouble = commandLine.hasOption("fast-double");
+			warmUp = !commandLine.hasOption("no-warm-up");
+			inputPath = commandLine.getOptionValue('i');
+			batchPath = commandLine.getOptionValue("batch");
+			if (commandLine.hasOption("server"))
+			{
+				try
+				{
+					port = Integer.parseInt(commandLine.getOptionValue("server"));
+				} catch (NumberFormatException e)
+				{
+					printer.println("Caught [" + e + "] trying to parse argument '--server', defaulting to port " + Server.DEFAULT_PORT + '.');
+					port = Server.DEFAULT_PORT;
+				}
+			}
+			if (commandLine.hasOption("idle-timeout"))
+			{
+				try
+				{
+					idleTimeout = Integer.parseInt(commandLine.getOptionValue("idle-timeout"));
+				} catch (NumberFormatException e)
+				{
+					printer.println("Caught [" + e + "] trying to parse argument '--idle-timeout', defaulting to never closing.");
+				}
+			}
+			if (commandLine.hasOption("bind"))
+			{
+				try
+				{
+					address = InetAddress.getByName(commandLine.getOptionValue("bind"));
+				} catch (UnknownHostException e)
+				{
+					printer.println("Caught [" + e + "] trying to parse argument '--bind', defaulting to " + address.getHostAddress() + '.');
+				}
+			}
+			if (commandLine.hasOption("client"))
+			{
+				if (batchPath != null)
+				{
+					printer.println("Cannot evaluate a batch as a client, '--batch' evaluates in this process instead.");
+					System.exit(10);
+					return;
+				}
+				runClient(commandLine, address, precision);
+				return;
+			}
 		} catch (ParseException e)
 		{
 			printer.println(e);
@@ -70,66 +186,225 @@ public class Main
 			return;
 		}
 		
-		context = new Context(precision);
+		context = new Context(precision, cacheSize, fastDouble);
 		printer.println("Loaded with a precision of " + precision + '.');
+		if (inputPath != null)
+		{
+			try (Evaluation evaluation = Evaluation.begin(context))
+			{
+				context.setLastAnswer(printer.printEntry(Paths.get(inputPath)));
+			} catch (Exception e)
+			{
+				printer.printException(inputPath, e, printStack);
+				System.exit(1);
+			}
+			return;
+		}
+		if (batchPath != null)
+		{
+			try (Batch batch = new Batch(precision, cacheSize, fastDouble, context.getFunctionCache(), printer, Runtime.getRuntime().availableProcessors());
+					BufferedReader reader = Files.newBufferedReader(Paths.get(batchPath), StandardCharsets.UTF_8))
+			{
+				batch.run(reader);
+				printer.flush();
+			} catch (IOException | InvalidPathException e)
+			{
+				printer.printException(batchPath, e, printStack);
+				System.exit(1);
+			}
+			return;
+		}
+		if (port >= 0)
+		{
+			try (Server server = new Server(address, port, precision, cacheSize, fastDouble, context.getFunctionCache()))
+			{
+				server.setIdleTimeout(idleTimeout);
+				// Removes the tokens when terminated as well
+				Runtime.getRuntime().addShutdownHook(new Thread(server::close, "Server shutdown"));
+				if (warmUp)
+					context.warmUpConstants();
+				server.run();
+			} catch (IOException | RuntimeException e)
+			{
+				printer.printException("--server " + port, e, printStack);
+				System.exit(1);
+			}
+			return;
+		}
+		// Constants are only worth calculating ahead of time while waiting for input
+		if (warmUp)
+			context.warmUpConstants();
 		String lastInput = "";
 		// Main execution loop
 		do
 		{
 			if (!lastInput.isEmpty())
-			{
-				try
-				{
-					// TODO Add more special command functionality
-					if (lastInput.contains(":="))
-						Context.attemptAssign(lastInput, getContext());
-					else if (lastInput.toLowerCase().startsWith("vars"))
-						context.printVars();
-					else
-						context.setLastAnswer(printer.printEntry(lastInput));
-				} catch (Exception e)
-				{
-					printer.printException(lastInput, e, printStack);
-				}
-			}
+				processLine(context, lastInput);
 			printer.print("> ");
 		} while (!(lastInput = SCANNER.nextLine().trim()).equalsIgnoreCase("exit"));
 	}
 	
 	/**
-	 * Shorthand to get the precision of {@link MathContext}'s precision.
+	 * Forward the entries of the command line or standard input to a daemon, see {@link Client}, then exit.
+	 * A precision given on the command line is applied to each entry with {@link Context#PRECISION_MARK}, as a running daemon may have been started with another one.
+	 * The other options are passed on to the daemon if it has to be started.
+	 * @param commandLine The parsed command line.
+	 * @param address The address of the daemon.
+	 * @param precision The precision of each entry.
+	 */
+	private static void runClient(CommandLine commandLine, InetAddress address, int precision)
+	{
+		int port;
+		try
+		{
+			port = Integer.parseInt(commandLine.getOptionValue("client-port", String.valueOf(Server.DEFAULT_PORT)));
+		} catch (NumberFormatException e)
+		{
+			printer.println("Caught [" + e + "] trying to parse argument '--client-port', defaulting to port " + Server.DEFAULT_PORT + '.');
+			port = Server.DEFAULT_PORT;
+		}
+		final List<String> daemonArguments = new ArrayList<String>();
+		for (Option option : commandLine.getOptions())
+		{
+			if (CLIENT_OPTIONS.contains(option.getLongOpt()))
+				continue;
+			daemonArguments.add("--" + option.getLongOpt());
+			if (option.hasArg())
+				daemonArguments.add(option.getValue());
+		}
+		final boolean markPrecision = commandLine.hasOption('p');
+		final String arguments = String.join(" ", commandLine.getArgList());
+		final BufferedReader input = new BufferedReader(arguments.isEmpty() ? new InputStreamReader(System.in, StandardCharsets.UTF_8) : new StringReader(arguments))
+		{
+			@Override
+			public String readLine() throws IOException
+			{
+				final String line = super.readLine();
+				return line == null || !markPrecision || line.indexOf(Context.PRECISION_MARK) >= 0 || line.trim().equalsIgnoreCase("exit") ? line : line + Context.PRECISION_MARK + precision;
+			}
+		};
+		try
+		{
+			Client.run(address, port, input, daemonArguments);
+		} catch (IOException e)
+		{
+			// No context to record the exception as the last answer of
+			printer.println("Caught [" + e + "] trying to reach the daemon on port " + port + '.');
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Evaluate a line of input, either an entry or a command, and print the result to the output of the context.
+	 * Used by the interactive session as well as every session of a {@link Server}.
+	 * @param context The context of the session, which holds the variables and last answer.
+	 * @param line The trimmed line, not empty.
+	 */
+	// Both evaluations are only begun to make the session and precision current on the thread
+	@SuppressWarnings("try")
+	static void processLine(Context context, String line)
+	{
+		// The outer evaluation only makes the session current, so exceptions are recorded as its last answer
+		try (Evaluation session = Evaluation.begin(context))
+		{
+			try (Evaluation evaluation = context.begin(line))
+			{
+				final String entry = Context.removePrecisionMark(line);
+				// TODO Add more special command functionality
+				if (entry.contains(":="))
+					Context.attemptAssign(entry, context);
+				else if (entry.toLowerCase().startsWith("vars"))
+					context.printVars();
+				else if (entry.toLowerCase().startsWith("cache"))
+					context.printCacheStats();
+				else if (entry.toLowerCase().startsWith("precision"))
+					setPrecision(context, entry.substring("precision".length()).trim());
+				else
+					context.setLastAnswer(context.getOutput().printEntry(entry));
+			} catch (Exception e)
+			{
+				context.getOutput().printException(line, e, printStack);
+			}
+		}
+	}
+	
+	/**
+	 * Handle the {@code precision} command, which prints the default precision of the session or changes it for all later entries.
+	 * Single entries may be evaluated at another precision instead, see {@link Context#PRECISION_MARK}.
+	 * @param context The context of the session.
+	 * @param argument The new precision, or an empty string to print the current one.
+	 */
+	private static void setPrecision(Context context, String argument)
+	{
+		final Printer output = context.getOutput();
+		if (!argument.isEmpty())
+		{
+			try
+			{
+				context.setPrecision(Integer.parseInt(argument));
+			} catch (IllegalArgumentException e)
+			{
+				output.println("Caught [" + e + "] trying to set the precision, keeping a precision of " + context.getMathContext().getPrecision() + '.');
+				return;
+			}
+			if (warmUp)
+				context.warmUpConstants();
+		}
+		output.println("Precision is " + context.getMathContext().getPrecision() + '.');
+	}
+	
+	/**
+	 * Find the directory the program keeps its files in, under the cache directory of the user as per the platform.
+	 * @return The directory, or {@code null} if the home directory of the user is unknown.
+	 */
+	public static Path getCacheDirectory()
+	{
+		String cache = System.getenv("XDG_CACHE_HOME");
+		if (cache == null || cache.isEmpty())
+			cache = System.getenv("LOCALAPPDATA");
+		if (cache != null && !cache.isEmpty())
+			return Paths.get(cache, "jcalculator");
+		final String home = System.getProperty("user.home");
+		return home == null || home.isEmpty() ? null : Paths.get(home, ".cache", "jcalculator");
+	}
+	
+	/**
+	 * Shorthand to get the precision of the {@link MathContext} of the current evaluation.
 	 * @return
 	 */
 	public static int getPrecision()
 	{
-		return context.context.getPrecision();
+		return getMathContext().getPrecision();
 	}
 	
 	/**
-	 * Get the current program's {@link Context}.
-	 * @return
+	 * Get the {@link Context} of the current evaluation, see {@link Evaluation}.
+	 * @return The context of the evaluation running on this thread, otherwise that of the interactive session.
 	 */
 	public static Context getContext()
 	{
-		return context;
+		final Evaluation evaluation = Evaluation.current();
+		return evaluation != null ? evaluation.getContext() : context;
 	}
 	
 	/**
-	 * Shorthand to get the {@link MathContext} of the current program.
-	 * @return
+	 * Get the {@link MathContext} of the current evaluation, see {@link Evaluation}.
+	 * @return The {@code MathContext} of the evaluation running on this thread, otherwise the default one of the interactive session.
 	 */
 	public static MathContext getMathContext()
 	{
-		return context.context;
+		final Evaluation evaluation = Evaluation.current();
+		return evaluation != null ? evaluation.getMathContext() : context.getMathContext();
 	}
 	
 	/**
-	 * Get the printer, but passed through its interface, to remove resource leak warnings.
-	 * @return The program's {@link Printer}, abstracted to {@link IPrinter}.
+	 * Get the printer of the current context, but passed through its interface, to remove resource leak warnings.
+	 * @return The {@link Printer} of the current context, otherwise the program's, abstracted to {@link IPrinter}.
 	 */
 	public static IPrinter getPrinter()
 	{
-		return printer;
+		final Context context = getContext();
+		return context != null ? context.getOutput() : printer;
 	}
 
 	/**
@@ -2,17 +2,19 @@ package main;
 
 import static main.Main.*;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Set;
 
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.collect.ImmutableMap.Builder;
@@ -22,39 +24,63 @@ import exceptions.SyntaxException;
 import util.Function;
 import util.Operation;
 import util.OperationType;
-import util.PeekableIterator;
 import util.TextType;
+import util.expressions.AbsoluteValueExpression;
+import util.expressions.ArithmeticExpression;
+import util.expressions.Expression;
 import util.expressions.FactorialExpression;
+import util.expressions.FunctionExpression;
 import util.expressions.NestedExpression;
+import util.expressions.PrefixExpression;
+import util.expressions.VariableExpression;
+import util.tokens.TextToken;
 import util.tokens.Token;
 import util.tokens.Token.TokenType;
 import util.values.*;
 
 /**
- * Primary class to parse tokens and structure them properly for evaluation.
+ * Primary class to parse tokens and structure them properly for evaluation.<br>
+ * Uses a Pratt (precedence climbing) algorithm to build a single expression tree in one pass over the tokens.
  * @author UFFR
  *
  */
 public class Parser
 {
 	/**{@code Map} that directs strings to functions.**/
-	private static final Map<String, Operation> FUNCTION_MAP;
+	static final Map<String, Operation> FUNCTION_MAP;
 	/**Types of tokens that allow implicit multiplication, depending on position.**/
 	private static final Set<TokenType> LEFT_IMPLICIT_TOKEN_TYPES = Sets.immutableEnumSet(TokenType.VALUE, TokenType.CLOSING_BRACE, TokenType.CLOSING_BRACKET, TokenType.CLOSING_PARENTHESIS, TokenType.EXPRESSION),
 										RIGHT_IMPLICIT_TOKEN_TYPES = Sets.immutableEnumSet(TokenType.VALUE, TokenType.OPEN_BRACE, TokenType.OPEN_BRACKET, TokenType.OPEN_PARENTHESIS, TokenType.EXPRESSION);
 	/**All strings that are reserved and cannot be variable names.**/
 	public static final Set<String> RESERVED_SET;
+	/**Precedence of comparison operators, lower than any arithmetic operator.**/
+	private static final byte COMPARISON_PRECEDENCE = 0;
+	/**Precedence of prefix negation. Binds tighter than multiplication, but looser than exponentiation (ie -2^2 = -4).**/
+	private static final byte PREFIX_PRECEDENCE = OperationType.EXPONENTIATION.getPrecedence();
 	
-	/**Token list for printing. Has only minor alterations from what was given to the parser.**/
+	/**Token list for printing. Has only minor alterations from what was given to the parser. Empty if the tokens were streamed.**/
 	private final List<Token> originalTokens;
-	/**Main {@code List} where parsing operations take place.**/
-	private final List<Token> tokens;
+	/**If the tokens were streamed, in which case they are not kept after being parsed.**/
+	private final boolean streamed;
 	/**An iterator that supports peeking for ease of traversing the tokens.**/
-	private final PeekableIterator<Token> iterator;
-	/**The {@code Deque} where parsed values will go.**/
-	private final Deque<Value<?>> values = new ArrayDeque<Value<?>>();
-	/**The {@code Deque} where parsed operators will go.**/
-	private final Deque<Operation> operators = new ArrayDeque<Operation>();
+	private final TokenCursor iterator;
+	/**The root of the parsed expression tree. May be a plain value if no operations were present.**/
+	private final Value<?> root;
+	/**Names of the variables substituted during parsing, including "ans" if the last answer was used.**/
+	private final Set<String> variables;
+	/**Bracketed subtrees (nested expressions, absolute values, function calls, lists, and matrices) by the index of their first token. Empty if the tokens were streamed.**/
+	private final Map<Integer, Subtree> subtrees;
+	
+	/**The parser of a previous entry whose subtrees may be reused, only set while parsing.**/
+	private Parser previous;
+	/**Amount of leading tokens that are identical to the {@link #previous} parser's.**/
+	private int unchangedPrefix;
+	/**Index of the first of the trailing tokens that are identical to the {@link #previous} parser's.**/
+	private int unchangedSuffix;
+	/**Difference in token count to the {@link #previous} parser, to map trailing indices to it.**/
+	private int shift;
+	/**Arithmetic and function subtrees built so far, to share structurally equal ones. Only set while parsing.**/
+	private Map<Value<?>, Value<?>> interned = new HashMap<Value<?>, Value<?>>();
 	
 	static
 	{
@@ -74,10 +100,46 @@ public class Parser
 	
 	public Parser(List<Token> tokens)
 	{
-		this.tokens = preevaluate(tokens);
-		originalTokens = ImmutableList.copyOf(this.tokens);
-		iterator = PeekableIterator.getIterator(this.tokens);
-		parse();
+		this(tokens, null);
+	}
+	
+	/**
+	 * Parse the tokens of an entry that may be an edited version of a previous one.<br>
+	 * Bracketed subtrees of the previous entry that lie entirely in its unchanged leading or trailing tokens are reused as they are, along with their evaluated values, instead of being parsed again.
+	 * As variables are substituted before comparing, a subtree that referenced a changed variable is never reused.
+	 * @param tokens The tokens to parse.
+	 * @param previous The parser of the previous entry, may be {@code null}.
+	 */
+	public Parser(List<Token> tokens, Parser previous)
+	{
+		final ImmutableSet.Builder<String> variables = ImmutableSet.builder();
+		originalTokens = ImmutableList.copyOf(new Preevaluator(tokens.iterator(), variables));
+		streamed = false;
+		subtrees = new HashMap<Integer, Subtree>();
+		iterator = new TokenCursor(originalTokens.iterator());
+		if (previous != null && !previous.streamed)
+			matchTokens(previous);
+		root = parse();
+		this.previous = null;
+		interned = null;
+		this.variables = variables.build();
+	}
+	
+	/**
+	 * Parse tokens as they are pulled from the iterator, such as from {@link Tokenizer#stream(java.io.Reader)}.<br>
+	 * The tokens are not kept, so {@link #getTokens()} will be empty.
+	 * @param tokens The iterator to pull tokens from.
+	 */
+	public Parser(Iterator<Token> tokens)
+	{
+		final ImmutableSet.Builder<String> variables = ImmutableSet.builder();
+		originalTokens = ImmutableList.of();
+		streamed = true;
+		subtrees = ImmutableMap.of();
+		iterator = new TokenCursor(new Preevaluator(tokens, variables));
+		root = parse();
+		interned = null;
+		this.variables = variables.build();
 	}
 	
 	public Parser(String input)
@@ -95,75 +157,160 @@ public class Parser
 	}
 	
 	/**
-	 * Retrieve the finished {@code Deque} of {@link #values}.
-	 * @return A brand new {@code Deque} containing the parsed values.
+	 * Retrieve the names of every variable that was substituted into the tokens. Includes "ans" if the last answer was used.
+	 * @return An {@link ImmutableSet} of the variable names.
 	 */
-	public Deque<Value<?>> getValues()
+	public Set<String> getVariables()
 	{
-		return new ArrayDeque<Value<?>>(values);
+		return variables;
 	}
 	
 	/**
-	 * Retrieve the finished {@code Deque} of {@link #operators}
-	 * @return A brand new {@code Deque} containing the parsed operators.
+	 * Retrieve the finished expression tree.
+	 * @return The root {@link Value} of the tree, usually an {@link Expression}.
 	 */
-	public Deque<Operation> getOperators()
+	public Value<?> getRoot()
 	{
-		return new ArrayDeque<Operation>(operators);
+		return root;
 	}
 
 	/**
-	 * Performs initial evaluation and parsing before the main method.<br>
+	 * Performs initial evaluation before the main method, one token at a time.<br>
 	 * Primarily used to swap variable names for the actual values and apply implicit multiplication.
-	 * @param tokensIn The tokens provided by the {@link Tokenizer}.
-	 * @return A new {@code List} for the main parsing sequence.
+	 * @author UFFR
+	 *
 	 */
-	private static List<Token> preevaluate(List<Token> tokensIn)
+	private static class Preevaluator extends AbstractIterator<Token>
 	{
-		// Copy list for safety.
-		final List<Token> tokens = new ArrayList<Token>(tokensIn);
-		for (int i = 0; i < tokens.size(); i++)
+		/**The tokens provided by the {@link Tokenizer}.**/
+		private final Iterator<Token> tokens;
+		/**Builder to collect the names of substituted variables.**/
+		private final ImmutableSet.Builder<String> variables;
+		/**A token held back while an implicit multiplication is given out first.**/
+		private Token deferred;
+		private TokenType lastType = TokenType.NULL;
+		public Preevaluator(Iterator<Token> tokens, ImmutableSet.Builder<String> variables)
 		{
-			final Token token = tokens.get(i);
-			// Check if variable or "Ans"
-			if (token.getType() == TokenType.TEXT)
+			this.tokens = tokens;
+			this.variables = variables;
+		}
+		
+		@Override
+		protected Token computeNext()
+		{
+			Token token = deferred;
+			deferred = null;
+			if (token == null)
 			{
-				final String text = token.toString();
-				if ("ans".equalsIgnoreCase(text))
+				// New lines only separate values, such as rows of a matrix, so they are dropped after preventing implicit multiplication
+				do
 				{
-					if (getContext().hasLastAnswer())
-					{
-						tokens.remove(i);
-						tokens.add(i, getContext().getLastAnswer());
-					} else
-						throw new SyntaxException("No last answer available.");
-					continue;
-				}
-				// Is not a variable
-				if (RESERVED_SET.contains(text.toLowerCase()))
-					continue;
-				// Might be a variable
-				if (getContext().hasVar(text))
+					if (!tokens.hasNext())
+						return endOfData();
+					token = substitute(tokens.next());
+					if (token.getType() == TokenType.NEW_LINE)
+						lastType = TokenType.NEW_LINE;
+				} while (token.getType() == TokenType.NEW_LINE);
+				// Apply implicit multiplication
+				if (implicitMultiplication(lastType, token.getType()))
 				{
-					tokens.remove(i);
-					tokens.add(i, getContext().getVar(text));
-				} else
-					throw new SyntaxException("Undefined variable: [" + text + ']');
+					deferred = token;
+					token = OperationType.MULTIPLICATION;
+				}
 			}
+			lastType = token.getType();
+			return token;
 		}
 		
-		// Apply implicit multiplication
-		TokenType lastType = TokenType.NULL;
-		for (int i = 0; i < tokens.size(); i++)
+		/**
+		 * Swap a variable name or "Ans" for the actual value.
+		 * @param token The token to check.
+		 * @return The value if the token was a variable, otherwise the token itself.
+		 * @throws SyntaxException If the token is neither a keyword nor a stored variable.
+		 */
+		private Token substitute(Token token) throws SyntaxException
 		{
-			final Token token = tokens.get(i);
-			if (implicitMultiplication(lastType, token.getType()))
-				tokens.add(i, OperationType.MULTIPLICATION);
-			
-			lastType = tokens.get(i).getType();
+			if (!(token instanceof TextToken))
+				return token;
+			final TextToken textToken = (TextToken) token;
+			final String text = textToken.toString();
+			if (textToken.isReserved())
+			{
+				if (!"ans".equals(text))
+					return token;
+				if (!getContext().hasLastAnswer())
+					throw new SyntaxException("No last answer available.");
+				variables.add("ans");
+				return new VariableExpression(text, getContext().getLastAnswer());
+			}
+			// Might be a variable
+			if (!getContext().hasVar(text))
+				throw new SyntaxException("Undefined variable: [" + text + ']');
+			variables.add(text);
+			return new VariableExpression(text, getContext().getVar(text));
 		}
-		
-		return tokens;
+	}
+	
+	/**
+	 * Compare the tokens to the ones of a previous parser, finding how many leading and trailing tokens are unchanged.
+	 * @param previous The previous parser.
+	 */
+	private void matchTokens(Parser previous)
+	{
+		final List<Token> oldTokens = previous.originalTokens;
+		final int oldSize = oldTokens.size(), newSize = originalTokens.size(), limit = Math.min(oldSize, newSize);
+		int prefix = 0, suffix = 0;
+		while (prefix < limit && Objects.equals(oldTokens.get(prefix), originalTokens.get(prefix)))
+			prefix++;
+		while (suffix < limit - prefix && Objects.equals(oldTokens.get(oldSize - suffix - 1), originalTokens.get(newSize - suffix - 1)))
+			suffix++;
+		this.previous = previous;
+		unchangedPrefix = prefix;
+		unchangedSuffix = newSize - suffix;
+		shift = newSize - oldSize;
+	}
+	
+	/**
+	 * Attempt to reuse a subtree of the {@link #previous} parser that begins at the specified index, skipping its tokens if so.<br>
+	 * Only subtrees whose every token is unchanged can be reused.
+	 * @param start The index of the first token of the subtree.
+	 * @return The reused subtree, or {@code null} if none could be reused.
+	 */
+	private Value<?> reuseSubtree(int start)
+	{
+		if (previous == null)
+			return null;
+		final Subtree subtree;
+		final int offset;
+		if (start < unchangedPrefix)
+		{
+			subtree = previous.subtrees.get(start);
+			offset = 0;
+			if (subtree == null || subtree.end > unchangedPrefix)
+				return null;
+		} else if (start >= unchangedSuffix)
+		{
+			subtree = previous.subtrees.get(start - shift);
+			offset = shift;
+			if (subtree == null)
+				return null;
+		} else
+			return null;
+		iterator.skip(subtree.end + offset - start);
+		return addSubtree(start, subtree.node);
+	}
+	
+	/**
+	 * Record a bracketed subtree that ends at the current index, so a later parser may reuse it.
+	 * @param start The index of the first token of the subtree.
+	 * @param node The subtree.
+	 * @return The subtree, for convenience.
+	 */
+	private Value<?> addSubtree(int start, Value<?> node)
+	{
+		if (!streamed)
+			subtrees.put(start, new Subtree(iterator.nextIndex(), node));
+		return node;
 	}
 	
 	/**
@@ -177,204 +324,353 @@ public class Parser
 		return LEFT_IMPLICIT_TOKEN_TYPES.contains(previous) && RIGHT_IMPLICIT_TOKEN_TYPES.contains(current);
 	}
 	
-	// TODO Finish
 	/**
-	 * The primary parsing method. Contains most of the controlling logic.
+	 * The primary parsing method. Parses the entire token list as a single expression.
+	 * @return The root of the expression tree.
 	 * @throws SyntaxException If any malformed tokens or values are detected during the process.
 	 */
-	private void parse() throws SyntaxException
+	private Value<?> parse() throws SyntaxException
+	{
+		if (!iterator.hasNext())
+			throw new SyntaxException("Nothing to parse!");
+		final Value<?> value = parseExpression(COMPARISON_PRECEDENCE);
+		if (iterator.hasNext())
+			throw new SyntaxException("Unknown or unexpected token: " + iterator.peekNext());
+		return value;
+	}
+	
+	/**
+	 * Parses an expression, consuming infix and suffix operators as long as they bind at least as tightly as the given precedence.
+	 * @param minPrecedence The lowest precedence an operator may have to be consumed by this call.
+	 * @return The parsed expression, or a plain value if no operators were consumed.
+	 * @throws SyntaxException If any malformed tokens or values are detected during the process.
+	 */
+	private Value<?> parseExpression(int minPrecedence) throws SyntaxException
+	{
+		return parseInfix(parsePrefix(), minPrecedence);
+	}
+	
+	/**
+	 * Continues parsing an expression from an already parsed left operand, consuming every infix operator binding at least as tightly as specified.
+	 * @param left The left-most operand.
+	 * @param minPrecedence The minimum precedence an operator must have to be consumed.
+	 * @return The parsed expression, or the operand itself if no operator follows.
+	 * @throws SyntaxException If the tokens do not form a valid expression.
+	 */
+	private Value<?> parseInfix(Value<?> left, int minPrecedence) throws SyntaxException
 	{
-		// TODO Change to something prettier
-		if ((iterator.peekFirst().getType() == TokenType.OPERATOR && ((OperationType) iterator.peekFirst()) != OperationType.SUBTRACTION) || (iterator.peekLast().getType() == TokenType.OPERATOR && ((OperationType) iterator.peekLast()) != OperationType.FACTORIAL))
-			throw new SyntaxException("Unmatched infix operator!");
-		boolean negateLast = false;
 		while (iterator.hasNext())
 		{
-			final Token token = iterator.next();
-			switch (token.getType())
-			{
-				case VALUE: values.offer((Value<?>) token); break;
-				case ECPHONEME:
-					iterator.next();
-					if (values.isEmpty())
-						throw new SyntaxException("Suffix operator '!' has no associated value!");
-					else
-						values.offer(new FactorialExpression(values.pollLast()));
-					break;
-				case OPERATOR:
-					// TODO Negation and precedence
-					if (((iterator.hasPrevious() && iterator.peekPrevious().getType() == TokenType.OPERATOR) || (!iterator.hasPrevious() && iterator.peekNext().getType() == TokenType.VALUE)) && ((OperationType) token) == OperationType.SUBTRACTION)
-					{
-						negateLast = true;
-						continue;
-					} else
-						operators.offer((Operation) token);
-					break;
-				case TEXT:
-					final String text = token.toString();
-					if (FUNCTION_MAP.containsKey(text.toLowerCase()))
-					{
-						if (tokens.get(iterator.nextIndex()).getType() != TokenType.OPEN_PARENTHESIS)
-							throw new SyntaxException("Function [" + text + "] has no body!");
-						final Operation operation = getFunction(text);
-						final List<List<Token>> body = parseCSV(iterator, '(', ')');
-						switch (body.size())
-						{
-							case 1: values.offer(operation.constructExpression(Evaluator.evaluateParsedExpression(PARSER.apply(body.get(0))), null)); break;
-							case 2: values.offer(operation.constructExpression(Evaluator.evaluateParsedExpression(PARSER.apply(body.get(0))), Evaluator.evaluateParsedExpression(PARSER.apply(body.get(1))))); break;
-							default: throw new SyntaxException("Function body contains an unexpected amount of values! (" + body.size() + ')');
-						}
-					} else if ("true".equalsIgnoreCase(text) || "false".equalsIgnoreCase(text))
-						values.offer(new BooleanValue(Boolean.parseBoolean(text)));
-					else if (COMMAND_STRINGS.contains(text))
-						throw new SyntaxException("Command must be first value.");
-					else
-						throw new SyntaxException("Text is no known function name or saved variable.");
-					break;
-				case OPEN_BRACKET: values.offer(parseList(iterator)); break;
-				case OPEN_BRACE: values.offer(parseMatrix(iterator)); break;
-				case OPEN_PARENTHESIS: values.offer(parseNested(iterator)); break;
-				default: throw new SyntaxException("Unknown or unexpected token: " + iterator.peekNext());
-			}
-			
-			// If a negation operation was detected
-			if (negateLast)
+			final Token token = iterator.peekNext();
+			final int precedence = getInfixPrecedence(token);
+			if (precedence < minPrecedence)
+				break;
+			iterator.next();
+			if (token.getType() == TokenType.ECPHONEME || token == OperationType.FACTORIAL)
+				left = optimize(new FactorialExpression(left), left, null);
+			else
 			{
-				values.offer(values.pollLast().negate());
-				negateLast = false;
+				// Exponentiation is right-associative, the rest are left-associative
+				final Value<?> right = parseExpression(token == OperationType.EXPONENTIATION ? precedence : precedence + 1);
+				left = optimize(((Operation) token).constructExpression(left, right), left, right);
 			}
 		}
+		return left;
 	}
 	
 	/**
-	 * Skip so many iterations on the given iterator. Concludes prematurely if the limit of the iterator is met first.
-	 * @param iterator The iterator to skip ahead with.
-	 * @param count The amount of skips.
+	 * Optimize a freshly built node. If every operand is a plain number (a literal or a constant, but never a variable), the node is folded into its result right away.<br>
+	 * Otherwise, arithmetic and function nodes are interned, so structurally equal subtrees are shared and, as they remember their result, evaluated only once.
+	 * This includes subtrees with their operands swapped, see {@link ArithmeticExpression#isCommutative()}.
+	 * @param node The node to optimize.
+	 * @param left The first operand of the node.
+	 * @param right The second operand of the node, may be {@code null}.
+	 * @return The result, the shared equal node, or the node itself.
 	 */
-	private static void skipIteration(PeekableIterator<Token> iterator, int count)
+	private Value<?> optimize(Expression node, Value<?> left, Value<?> right)
 	{
-		for (int i = 0; iterator.hasNext() && i < count; i++)
-			iterator.next();
+		return optimize(node, left, right, null);
 	}
 	
 	/**
-	 * Parses nested tokens given the opening and closing characters.
-	 * @param tokens The token {@code PeekableIterator}, in case it is also nested.
-	 * @param opening The opening {@code char}. Must be valid in {@link TokenType.CHAR_MAP}.
-	 * @param closing The closing {@code char}. Must be valid in {@link TokenType.CHAR_MAP}.
-	 * @return A sub-list of tokens representing what was nested.
-	 * @throws SyntaxException If no valid closing token is found.
+	 * {@link #optimize(Expression, Value, Value)} for nodes with a third operand.
+	 * @param node The node to optimize.
+	 * @param left The first operand of the node.
+	 * @param right The second operand of the node, may be {@code null}.
+	 * @param extra The third operand of the node, may be {@code null}.
+	 * @return The result, the shared equal node, or the node itself.
 	 */
-	private static List<Token> parseGenericNested(PeekableIterator<Token> tokens, char opening, char closing) throws SyntaxException
+	private Value<?> optimize(Expression node, Value<?> left, Value<?> right, Value<?> extra)
 	{
-		final TokenType openingToken = TokenType.CHAR_MAP.inverse().get(opening), closingToken = TokenType.CHAR_MAP.inverse().get(closing);
-		if (tokens.next().getType() != openingToken)
-			throw new SyntaxException("No opening token '" + opening + "' found!");
-		
-		final List<Token> sublist = new ArrayList<Token>();
-		int skip = 0;
-		while (tokens.hasNext())
+		if (left instanceof NumberValue && (right == null || right instanceof NumberValue) && (extra == null || extra instanceof NumberValue))
 		{
-			final Token token = tokens.next();
-			if (token.getType() == openingToken)
-				skip++;
-			else if (token.getType() == closingToken)
+			try
 			{
-				if (skip > 0)
-					skip--;
-				else
-					return sublist;
-			} else
-				sublist.add(token);
+				return node.evaluate();
+			} catch (RuntimeException e)
+			{
+				// Kept as it is, so the error is reported when the entry is evaluated
+			}
 		}
-		throw new SyntaxException("No closing token '" + closing + "' found!");
+		if (node instanceof ArithmeticExpression || node instanceof FunctionExpression)
+		{
+			final Value<?> interned = this.interned.putIfAbsent(node, node);
+			if (interned != null)
+				return interned;
+		}
+		return node;
 	}
 	
 	/**
-	 * Attempts to parse comma separated tokens, considering nested tokens. See {@link #parseGenericNested(PeekableIterator, char, char)}.
-	 * @param tokens The token {@code PeekableIterator}, in case it is also nested.
-	 * @param opening The opening {@code char}. Must be valid in {@link TokenType.CHAR_MAP}.
-	 * @param closing The closing {@code char}. Must be valid in {@link TokenType.CHAR_MAP}.
-	 * @return A {@code List} of lists of tokens, each entry ideally being a comma separated value.
-	 * @throws SyntaxException In case a nested value was detected and it didn't have a closing token.
+	 * Parses a single operand, including any prefix operators, function calls, and nested values.
+	 * @return The parsed operand.
+	 * @throws SyntaxException If the next token cannot begin an operand.
 	 */
-	private static List<List<Token>> parseCSV(PeekableIterator<Token> tokens, char opening, char closing)
+	private Value<?> parsePrefix() throws SyntaxException
 	{
-		final List<List<Token>> lists = new ArrayList<List<Token>>();
-		final PeekableIterator<Token> subIterator = PeekableIterator.getIterator(parseGenericNested(tokens, opening, closing));
-		final List<Token> list = new ArrayList<Token>();
-		while (subIterator.hasNext())
+		if (!iterator.hasNext())
+			throw new SyntaxException("Unmatched infix operator!");
+		final int start = iterator.nextIndex();
+		final Value<?> reused = reuseSubtree(start);
+		if (reused != null)
+			return reused;
+		final Token token = iterator.next();
+		switch (token.getType())
 		{
-			final Token token = subIterator.next();
-			switch (token.getType())
+			case VALUE:
+			case EXPRESSION: return (Value<?>) token;
+			case OPERATOR:
+				if (token != OperationType.SUBTRACTION)
+					throw new SyntaxException("Unmatched infix operator!");
+				final Value<?> operand = parseExpression(PREFIX_PRECEDENCE);
+				// Plain values may be negated immediately
+				return operand instanceof Expression ? new PrefixExpression(operand, OperationType.SUBTRACTION) : operand.negate();
+			case TEXT:
+			{
+				final Value<?> value = parseText(token);
+				return value instanceof Expression ? addSubtree(start, value) : value;
+			}
+			case OPEN_PARENTHESIS:
 			{
-				case COMMA: lists.add(new ArrayList<Token>(list)); list.clear(); break;
-				case OPEN_BRACE: list.add(parseMatrix(subIterator)); break;
-				case OPEN_BRACKET: list.add(parseList(subIterator)); break;
-				case OPEN_PARENTHESIS: list.add(parseNested(subIterator)); break;
-				default: list.add(token); break;
+				final Value<?> inner = parseExpression(COMPARISON_PRECEDENCE);
+				expect(TokenType.CLOSING_PARENTHESIS);
+				return addSubtree(start, inner instanceof Expression ? new NestedExpression(getSpan(start + 1, iterator.previousIndex()), inner) : inner);
 			}
+			case PIPE:
+			{
+				final Value<?> inner = parseExpression(COMPARISON_PRECEDENCE);
+				expect(TokenType.PIPE);
+				return addSubtree(start, optimize(new AbsoluteValueExpression(getSpan(start + 1, iterator.previousIndex()), inner), inner, null));
+			}
+			case OPEN_BRACKET: return addSubtree(start, parseList());
+			case OPEN_BRACE: return addSubtree(start, parseMatrix());
+			default: throw new SyntaxException("Unknown or unexpected token: " + token);
 		}
-		lists.add(list);
-		return lists;
 	}
 	
 	/**
-	 * Parse the standard nested form in mathematics, separated by parenthesis.
-	 * @param tokens The token iterator used by the parser.
-	 * @return The parsed nested value.
-	 * @throws SyntaxException If no valid closing token is found.
+	 * Parses a text token, which may be a function, boolean, or a value that reports itself as text.
+	 * @param token The text token already consumed.
+	 * @return The parsed value.
+	 * @throws SyntaxException If the text is not a known function or is a misplaced command.
+	 */
+	private Value<?> parseText(Token token) throws SyntaxException
+	{
+		if (token instanceof Value)
+			return (Value<?>) token;
+		final String text = token.toString();
+		final String lowText = text.toLowerCase();
+		final Operation function = token instanceof TextToken ? ((TextToken) token).getFunction() : FUNCTION_MAP.get(lowText);
+		if (function != null)
+		{
+			if (!iterator.hasNext() || iterator.peekNext().getType() != TokenType.OPEN_PARENTHESIS)
+				throw new SyntaxException("Function [" + text + "] has no body!");
+			iterator.next();
+			final Value<?> input = parseExpression(COMPARISON_PRECEDENCE);
+			final Value<?> base = accept(TokenType.COMMA) ? parseExpression(COMPARISON_PRECEDENCE) : null;
+			// Only few functions take a third argument, such as the step of a range
+			final Value<?> extra = base != null && function instanceof Function && ((Function) function).getMaxArguments() > 2 && accept(TokenType.COMMA) ? parseExpression(COMPARISON_PRECEDENCE) : null;
+			if (accept(TokenType.COMMA))
+				throw new SyntaxException("Function body contains an unexpected amount of values!");
+			expect(TokenType.CLOSING_PARENTHESIS);
+			if (extra != null)
+				return optimize(((Function) function).constructExpression(input, base, extra), input, base, extra);
+			return optimize(function.constructExpression(input, base), input, base);
+		} else if ("true".equals(lowText) || "false".equals(lowText))
+			return new BooleanValue(Boolean.parseBoolean(lowText));
+		else if (COMMAND_STRINGS.contains(lowText))
+			throw new SyntaxException("Command must be first value.");
+		else
+			throw new SyntaxException("Text is no known function name or saved variable.");
+	}
+	
+	/**
+	 * Get the tokens between the specified indices, for nested expressions to keep.
+	 * @param start The index of the first token, inclusive.
+	 * @param end The index of the last token, exclusive.
+	 * @return The tokens, or an empty {@code List} if the tokens were streamed.
+	 */
+	private List<Token> getSpan(int start, int end)
+	{
+		return streamed ? ImmutableList.of() : originalTokens.subList(start, end);
+	}
+	
+	/**
+	 * Consumes the next token, ensuring it is of the specified type.
+	 * @param type The type of token that must come next.
+	 * @throws SyntaxException If the next token is missing or of a different type.
+	 */
+	private void expect(TokenType type) throws SyntaxException
+	{
+		if (!iterator.hasNext())
+			throw new SyntaxException("No closing token '" + type + "' found!");
+		final Token token = iterator.next();
+		if (token.getType() != type)
+			throw new SyntaxException("Expected '" + type + "' but found: " + token);
+	}
+	
+	/**
+	 * Consumes the next token only if it is of the specified type.
+	 * @param type The type of token to check for.
+	 * @return True, if the token was present and consumed, false if not.
 	 */
-	private static Value<?> parseNested(PeekableIterator<Token> tokens)
+	private boolean accept(TokenType type)
 	{
-		return new NestedExpression(parseGenericNested(tokens, '(', ')'));
+		if (iterator.hasNext() && iterator.peekNext().getType() == type)
+		{
+			iterator.next();
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Get the precedence of a token if it were used as an infix or suffix operator.
+	 * @param token The token to check.
+	 * @return The precedence of the operator, or {@code -1} if the token does not continue an expression.
+	 */
+	private static int getInfixPrecedence(Token token)
+	{
+		switch (token.getType())
+		{
+			case OPERATOR: return ((OperationType) token).getPrecedence();
+			case COMPARATOR: return COMPARISON_PRECEDENCE;
+			case ECPHONEME: return OperationType.FACTORIAL.getPrecedence();
+			default: return -1;
+		}
 	}
 	
 	/**
-	 * Attempt to parse a list of values, similar to {@link #parseCSV(PeekableIterator, char, char)}, separated by brackets.
-	 * @param tokens The token iterator used by the parser.
+	 * Parses a single element of a list or matrix and evaluates it.<br>
+	 * Plain literals, which are followed directly by a comma or the closing token, are taken as they are without going through the operator loop,
+	 * so large literal lists and matrices cost a single pass over their tokens.
+	 * @return The evaluated element.
+	 * @throws SyntaxException If the element is not a valid expression.
+	 */
+	private Value<?> parseElement() throws SyntaxException
+	{
+		final Value<?> operand = parsePrefix();
+		if (iterator.hasNext() && getInfixPrecedence(iterator.peekNext()) >= COMPARISON_PRECEDENCE)
+			return Evaluator.evaluateValue(parseInfix(operand, COMPARISON_PRECEDENCE));
+		return Evaluator.evaluateValue(operand);
+	}
+	
+	/**
+	 * Attempt to parse a list of values, separated by commas and enclosed by brackets.
 	 * @return The list of values.
 	 * @throws SyntaxException If no valid closing token is found.
 	 */
-	private static Value<List<Value<?>>> parseList(PeekableIterator<Token> tokens)
+	private Value<List<Value<?>>> parseList() throws SyntaxException
 	{
-		final List<List<Token>> lists = parseCSV(tokens, '{', '}');
-		final List<Value<?>> values = new ArrayList<Value<?>>(lists.size());
-		for (List<Token> list : lists)
-			values.add(Evaluator.evaluateParsedExpression(PARSER.apply(list)));
-		return new ListValue(values);
+		// Built directly into the immutable storage the list keeps
+		final ImmutableList.Builder<Value<?>> values = ImmutableList.builder();
+		if (!accept(TokenType.CLOSING_BRACKET))
+		{
+			do
+			{
+				values.add(parseElement());
+			} while (accept(TokenType.COMMA));
+			expect(TokenType.CLOSING_BRACKET);
+		}
+		final ImmutableList<Value<?>> list = values.build();
+		// Lists of plain numbers are kept as doubles if entries are evaluated on them anyway
+		final DoubleListValue doubles = getContext().isFastDouble() ? DoubleListValue.fromValues(list) : null;
+		return doubles == null ? new ListValue(list) : doubles;
 	}
 	
 	/**
-	 * Attempt to parse a matrix, similar to a {@link #parseList(PeekableIterator)}, separated by braces. 
-	 * @param tokens The token iterator used by the parser.
+	 * Attempt to parse a matrix, enclosed by braces. Rows are enclosed by their own braces and separated by commas or new lines (which never make it past preevaluation).<br>
+	 * A matrix with a single row may omit the inner braces.
 	 * @return The parsed matrix.
 	 * @throws SyntaxException If no valid closing token is found.
 	 * @throws DimensionException If the matrix has invalid dimensions.
 	 */
-	private static Value<Value<?>[][]> parseMatrix(PeekableIterator<Token> tokens)
+	private Value<Value<?>[][]> parseMatrix() throws SyntaxException, DimensionException
+	{
+		final List<Value<?>[]> rows = new ArrayList<Value<?>[]>();
+		if (iterator.hasNext() && iterator.peekNext().getType() == TokenType.OPEN_BRACE)
+		{
+			do
+			{
+				expect(TokenType.OPEN_BRACE);
+				rows.add(parseRow(rows.isEmpty() ? -1 : rows.get(0).length));
+				accept(TokenType.COMMA);
+			} while (iterator.hasNext() && iterator.peekNext().getType() == TokenType.OPEN_BRACE);
+			expect(TokenType.CLOSING_BRACE);
+		} else
+			rows.add(parseRow(-1));
+		
+		final Value<?>[][] matrix = rows.toArray(new Value<?>[rows.size()][]);
+		// Matrices of mostly zeros only keep their other numbers
+		final SparseMatrixValue sparse = SparseMatrixValue.fromValues(matrix);
+		if (sparse != null)
+			return sparse;
+		// Matrices of plain numbers are kept as doubles if entries are evaluated on them anyway
+		final DoubleMatrixValue doubles = getContext().isFastDouble() ? DoubleMatrixValue.fromValues(matrix) : null;
+		return doubles == null ? new MatrixValue(matrix) : doubles;
+	}
+	
+	/**
+	 * Parses a single row of a matrix until its closing brace. The opening brace must already be consumed.<br>
+	 * Once the width of the matrix is known from the first row, every following row is parsed directly into an array of that width.
+	 * @param columns The width of the matrix, or a negative number if this is the first row.
+	 * @return The evaluated cells of the row.
+	 * @throws SyntaxException If no valid closing token is found.
+	 * @throws DimensionException If the row is empty or its width does not match the matrix.
+	 */
+	private Value<?>[] parseRow(int columns) throws SyntaxException, DimensionException
 	{
-		final PeekableIterator<Token> subIterator = PeekableIterator.getIterator(parseGenericNested(tokens, '[', ']'));
-		final List<List<Value<?>>> intermediary = new ArrayList<List<Value<?>>>();
-		final Value<?>[][] matrix;
-		do
+		if (columns < 0)
 		{
-			final List<List<Token>> lists = parseCSV(subIterator, '[', ']');
-			final List<Value<?>> values = new ArrayList<Value<?>>(lists.size());
-			for (List<Token> list : lists)
-				values.add(Evaluator.evaluateParsedExpression(PARSER.apply(list)));
-			intermediary.add(values);
-		} while (subIterator.hasNext() && subIterator.peekNext().getType() == TokenType.NEW_LINE);
-		final int rows = intermediary.size(), columns = intermediary.get(0).size();
-		matrix = new Value<?>[rows][columns];
-		for (int r = 0; r < rows; r++)
+			final List<Value<?>> first = new ArrayList<Value<?>>();
+			if (!accept(TokenType.CLOSING_BRACE))
+			{
+				do
+				{
+					first.add(parseElement());
+				} while (accept(TokenType.COMMA));
+				expect(TokenType.CLOSING_BRACE);
+			}
+			if (first.isEmpty())
+				throw new DimensionException("Matrix cannot be empty.");
+			return first.toArray(new Value<?>[first.size()]);
+		}
+		
+		final Value<?>[] row = new Value<?>[columns];
+		int column = 0;
+		if (!accept(TokenType.CLOSING_BRACE))
 		{
-			if (intermediary.get(r).size() != columns)
-				throw new DimensionException("Dimension mismatch on matrix construction.");
-			for (int c = 0; c < columns; c++)
-				matrix[r][c] = intermediary.get(r).get(c);
+			do
+			{
+				if (column == columns)
+					throw new DimensionException("Dimension mismatch on matrix construction.");
+				row[column++] = parseElement();
+			} while (accept(TokenType.COMMA));
+			expect(TokenType.CLOSING_BRACE);
 		}
-		return new MatrixValue(matrix);
+		if (column != columns)
+			throw new DimensionException("Dimension mismatch on matrix construction.");
+		return row;
 	}
 	
 	/**
@@ -408,7 +704,7 @@ public class Parser
 	@Override
 	public int hashCode()
 	{
-		return Objects.hash(operators, originalTokens, tokens, values);
+		return Objects.hash(originalTokens, root);
 	}
 
 	@Override
@@ -419,8 +715,7 @@ public class Parser
 		if (!(obj instanceof Parser))
 			return false;
 		final Parser other = (Parser) obj;
-		return Objects.equals(operators, other.operators) && Objects.equals(originalTokens, other.originalTokens)
-				&& Objects.equals(tokens, other.tokens) && Objects.equals(values, other.values);
+		return Objects.equals(originalTokens, other.originalTokens) && Objects.equals(root, other.root);
 	}
 
 	@Override
@@ -429,10 +724,8 @@ public class Parser
 		final byte maxLen = 10;
 		StringBuilder builder = new StringBuilder();
 		builder.append("Parser [originalTokens=")
-				.append(originalTokens != null ? toString(originalTokens, maxLen) : null).append(", tokens=")
-				.append(tokens != null ? toString(tokens, maxLen) : null).append(", values=")
-				.append(values != null ? toString(values, maxLen) : null).append(", operators=")
-				.append(operators != null ? toString(operators, maxLen) : null).append(']');
+				.append(originalTokens != null ? toString(originalTokens, maxLen) : null).append(", root=")
+				.append(root).append(']');
 		return builder.toString();
 	}
 
@@ -451,4 +744,77 @@ public class Parser
 		return builder.toString();
 	}
 	
+	/**
+	 * A forward-only cursor over tokens that allows peeking the next token and tracks the index.
+	 * @author UFFR
+	 *
+	 */
+	private static class TokenCursor
+	{
+		private final Iterator<Token> tokens;
+		private Token next;
+		private int index;
+		public TokenCursor(Iterator<Token> tokens)
+		{
+			this.tokens = tokens;
+			next = tokens.hasNext() ? tokens.next() : null;
+		}
+		
+		public boolean hasNext()
+		{
+			return next != null;
+		}
+		
+		public Token peekNext()
+		{
+			if (next == null)
+				throw new NoSuchElementException();
+			return next;
+		}
+		
+		public Token next()
+		{
+			final Token token = peekNext();
+			next = tokens.hasNext() ? tokens.next() : null;
+			index++;
+			return token;
+		}
+		
+		public int nextIndex()
+		{
+			return index;
+		}
+		
+		public int previousIndex()
+		{
+			return index - 1;
+		}
+		
+		/**
+		 * Move past tokens without looking at them.
+		 * @param count The amount of tokens to skip.
+		 */
+		public void skip(int count)
+		{
+			for (int i = 0; i < count; i++)
+				next();
+		}
+	}
+	
+	/**
+	 * A bracketed subtree, along with the index right after its last token.
+	 * @author UFFR
+	 *
+	 */
+	private static class Subtree
+	{
+		private final int end;
+		private final Value<?> node;
+		public Subtree(int end, Value<?> node)
+		{
+			this.end = end;
+			this.node = node;
+		}
+	}
+	
 }
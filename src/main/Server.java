@@ -0,0 +1,313 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import util.Printer;
+
+/**
+ * Serves sessions of the calculator over TCP, each on its own thread with its own {@link Context}, so each has its own variables, last answer, and precision.
+ * The results of expensive functions are shared by every session, as are the constants, see {@link ConstantStore}.<br>
+ * The protocol mirrors the interactive session, clients send entries and commands one per line, encoded as UTF-8, as they would be typed.<br>
+ * Only clients of the user that started the server are served. The server writes two random tokens to a file only that user may read, see {@link #getTokenPath(int)}.
+ * A client must send the first token as its first line, otherwise it is disconnected, and the server answers with the second, so the client knows it is not talking to another program that took the port.<br>
+ * The server then greets each client and answers each line with what the interactive session would print, followed by the prompt {@link #PROMPT} on its own line, which marks the end of the response.
+ * Sending {@code exit} or closing the connection ends the session.<br>
+ * With an idle timeout, the server closes itself once no session has been running for that long, so it may be left running in the background, see {@link Client}.
+ * @author UFFR
+ *
+ */
+public class Server implements Closeable, Runnable
+{
+	/**Seconds a client has to send its token.**/
+	private static final int AUTHENTICATION_TIMEOUT = 10;
+	/**Random bytes of each token.**/
+	private static final int TOKEN_BYTES = 32;
+	/**Port used if the one given cannot be parsed.**/
+	public static final int DEFAULT_PORT = 4646;
+	/**Sent after every response, a client may send the next line once it is received.**/
+	public static final String PROMPT = "> ";
+	
+	private final ServerSocket serverSocket;
+	/**Runs each session, on as many threads as there are sessions.**/
+	private final ExecutorService sessions;
+	/**Amount of sessions started so far, to name their threads.**/
+	private final AtomicInteger sessionCount = new AtomicInteger();
+	/**Settings of the {@link Context} of each session.**/
+	private final int precision, cacheSize;
+	private final boolean fastDouble;
+	/**Remembers the results of expensive functions for every session.**/
+	private final FunctionCache functionCache;
+	/**The token clients send, and the token the server answers with.**/
+	private final String clientToken, serverToken;
+	/**The file holding the tokens, deleted once the server is closed.**/
+	private final Path tokenPath;
+	/**Milliseconds without any session after which the server closes itself, 0 to never close.**/
+	private int idleTimeout;
+	/**Amount of sessions currently running.**/
+	private final AtomicInteger activeSessions = new AtomicInteger();
+	/**When the last session ended, or the server started.**/
+	private volatile long lastActive = System.currentTimeMillis();
+	
+	/**
+	 * Create a server listening on the specified address.
+	 * @param address The address to listen on, usually the loopback address.
+	 * @param port The port to listen on, 0 picks any free one.
+	 * @param precision The default precision of each session.
+	 * @param cacheSize The maximum amount of parsed entries each session keeps.
+	 * @param fastDouble Whether or not each session forces evaluation on {@code double}s.
+	 * @param functionCache The function cache shared by every session.
+	 * @throws IOException If the server could not listen on the address, or could not store its tokens.
+	 */
+	public Server(InetAddress address, int port, int precision, int cacheSize, boolean fastDouble, FunctionCache functionCache) throws IOException
+	{
+		serverSocket = new ServerSocket();
+		serverSocket.bind(new InetSocketAddress(address, port));
+		final SecureRandom random = new SecureRandom();
+		clientToken = newToken(random);
+		serverToken = newToken(random);
+		// Written once the port is taken, so a server that failed to listen never replaces the tokens of the one listening
+		tokenPath = getTokenPath(serverSocket.getLocalPort());
+		try
+		{
+			if (tokenPath == null)
+				throw new IOException("Home directory of the user is unknown, there is nowhere private to store the tokens of the server.");
+			writeTokens(tokenPath, clientToken, serverToken);
+		} catch (IOException e)
+		{
+			serverSocket.close();
+			throw e;
+		}
+		this.precision = precision;
+		this.cacheSize = cacheSize;
+		this.fastDouble = fastDouble;
+		this.functionCache = functionCache;
+		sessions = Executors.newCachedThreadPool(runnable ->
+		{
+			final Thread thread = new Thread(runnable, "Session-" + sessionCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	/**
+	 * Accept clients until the server is closed, starting a session for each.
+	 */
+	@Override
+	public void run()
+	{
+		Main.getPrinter().println("Listening on " + serverSocket.getInetAddress().getHostAddress() + ':' + serverSocket.getLocalPort() + '.');
+		while (!serverSocket.isClosed())
+		{
+			try
+			{
+				final Socket socket = serverSocket.accept();
+				activeSessions.incrementAndGet();
+				sessions.execute(() -> serve(socket));
+			} catch (SocketTimeoutException e)
+			{
+				if (activeSessions.get() == 0 && System.currentTimeMillis() - lastActive >= idleTimeout)
+				{
+					Main.getPrinter().println("No sessions for " + idleTimeout / 1000 + " seconds, closing.");
+					close();
+				}
+			} catch (IOException e)
+			{
+				if (!serverSocket.isClosed())
+					Main.getPrinter().println("Caught [" + e + "] trying to accept a client, continuing.");
+			}
+		}
+	}
+	
+	/**
+	 * Run the session of a client until it exits or disconnects.
+	 * @param socket The connection to the client.
+	 */
+	private void serve(Socket socket)
+	{
+		try (Socket client = socket;
+				BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+				Printer output = Printer.STREAM_PRINTER.apply(client.getOutputStream()))
+		{
+			client.setSoTimeout(AUTHENTICATION_TIMEOUT * 1000);
+			if (!matches(reader.readLine(), clientToken))
+				return;
+			client.setSoTimeout(0);
+			output.println(serverToken);
+			final Context context = new Context(precision, cacheSize, fastDouble, functionCache);
+			context.setOutput(output);
+			output.println("Loaded with a precision of " + precision + '.');
+			output.println(PROMPT);
+			output.flush();
+			String line;
+			while ((line = reader.readLine()) != null && !(line = line.trim()).equalsIgnoreCase("exit"))
+			{
+				if (!line.isEmpty())
+					Main.processLine(context, line);
+				output.println(PROMPT);
+				output.flush();
+			}
+		} catch (SocketException e)
+		{
+			// The client disconnected
+		} catch (IOException | RuntimeException e)
+		{
+			Main.getPrinter().println("Caught [" + e + "] in the session of " + socket.getRemoteSocketAddress() + ", closing it.");
+		} finally
+		{
+			lastActive = System.currentTimeMillis();
+			activeSessions.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * Set how long the server waits without any session before closing itself.
+	 * @param seconds The timeout in seconds, 0 to never close.
+	 * @throws IOException If the timeout could not be applied.
+	 */
+	public void setIdleTimeout(int seconds) throws IOException
+	{
+		if (seconds < 0 || seconds > Integer.MAX_VALUE / 1000)
+			throw new IllegalArgumentException("Idle timeout of " + seconds + " seconds is not supported.");
+		idleTimeout = seconds * 1000;
+		// Wakes the accepting thread up to check for idleness
+		serverSocket.setSoTimeout(idleTimeout);
+	}
+	
+	public int getPort()
+	{
+		return serverSocket.getLocalPort();
+	}
+	
+	/**
+	 * Find the file holding the tokens of the server on a port, under the cache directory of the program, see {@link Main#getCacheDirectory()}.
+	 * @param port The port of the server.
+	 * @return The file, or {@code null} if the home directory of the user is unknown.
+	 */
+	public static Path getTokenPath(int port)
+	{
+		final Path cache = Main.getCacheDirectory();
+		return cache == null ? null : cache.resolve("server-" + port + ".token");
+	}
+	
+	/**
+	 * Read the tokens of the server on a port, see {@link #getTokenPath(int)}.
+	 * @param port The port of the server.
+	 * @return The token clients send, then the token the server answers with.
+	 * @throws NoSuchFileException If no server of this user listens on the port, or it is still starting.
+	 * @throws IOException If the tokens could not be read.
+	 */
+	static String[] readTokens(int port) throws IOException
+	{
+		final Path path = getTokenPath(port);
+		if (path == null)
+			throw new IOException("Home directory of the user is unknown, the tokens of the server cannot be read.");
+		final List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+		if (lines.size() < 2)
+			throw new IOException("Tokens of the server on port " + port + " are not valid.");
+		return new String[] {lines.get(0), lines.get(1)};
+	}
+	
+	/**
+	 * Check a token received, taking the same time wherever it differs.
+	 * @param received The token received, may be {@code null} if the connection was closed.
+	 * @param token The expected token.
+	 * @return True, if the tokens are equal.
+	 */
+	static boolean matches(String received, String token)
+	{
+		return received != null && MessageDigest.isEqual(received.trim().getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	private static String newToken(SecureRandom random)
+	{
+		final byte[] bytes = new byte[TOKEN_BYTES];
+		random.nextBytes(bytes);
+		final StringBuilder builder = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return builder.toString();
+	}
+	
+	/**
+	 * Store the tokens in a file only the user may read or write, replacing it as a whole so clients never read it while incomplete.
+	 * @param path The file.
+	 * @param clientToken The token clients send.
+	 * @param serverToken The token the server answers with.
+	 * @throws IOException If the file could not be written.
+	 */
+	private static void writeTokens(Path path, String clientToken, String serverToken) throws IOException
+	{
+		final Path directory = path.getParent();
+		final Path temporary;
+		if (directory.getFileSystem().supportedFileAttributeViews().contains("posix"))
+		{
+			Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			temporary = Files.createTempFile(directory, "server", ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} else
+		{
+			// Elsewhere the cache directory of the user is private already
+			Files.createDirectories(directory);
+			temporary = Files.createTempFile(directory, "server", ".tmp");
+		}
+		try
+		{
+			Files.write(temporary, Arrays.asList(clientToken, serverToken), StandardCharsets.UTF_8);
+			try
+			{
+				Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally
+		{
+			Files.deleteIfExists(temporary);
+		}
+	}
+	
+	/**
+	 * Stop accepting clients and end every session.
+	 */
+	@Override
+	public void close()
+	{
+		try
+		{
+			serverSocket.close();
+		} catch (IOException e)
+		{
+			// Closed either way
+		}
+		sessions.shutdownNow();
+		try
+		{
+			Files.deleteIfExists(tokenPath);
+		} catch (IOException e)
+		{
+			// Useless without the server, the next one replaces it
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package main;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import main.ExpressionCompiler.Kernel;
+import util.IPrinter;
+import util.expressions.EvaluationMemo;
+import util.expressions.Expression;
+import util.values.NumberValue;
+import util.values.Value;
+
+/**
+ * Evaluates expression trees in tiers. Trees are interpreted at first, while every shape of tree counts how often it was evaluated.
+ * Once a shape gets hot, it is compiled with the {@link ExpressionCompiler}, and every later tree of that shape runs through the compiled {@link Kernel} instead.<br>
+ * As the numbers of a tree are left out of its shape, the same formula with different numbers or variables shares a single kernel.<br>
+ * Trees are immutable, so each is only described once, and its shape, numbers, and tier are kept for as long as the tree is, such as while it is in the {@link ExpressionCache}.
+ * Trees that remember their result, see {@link Expression#getMemoized()}, return it without being described or run at all, and results of kernels are remembered the same way.
+ * @author UFFR
+ *
+ */
+public class TieredEvaluator
+{
+	/**Default amount of evaluations before a shape is compiled.**/
+	public static final int DEFAULT_THRESHOLD = 16;
+	/**Maximum amount of shapes kept track of.**/
+	private static final int MAX_SHAPES = 1024;
+	
+	/**Counters and kernels by the shape of the tree.**/
+	private final Cache<String, Tier> tiers = CacheBuilder.newBuilder().maximumSize(MAX_SHAPES).build();
+	/**Description of each tree evaluated, by identity, dropped once the tree is no longer used.**/
+	private final Cache<Value<?>, Description> descriptions = CacheBuilder.newBuilder().weakKeys().build();
+	/**Amount of evaluations before a shape is compiled.**/
+	private final int threshold;
+	/**Statistics, for printing.**/
+	private final AtomicLong interpreted = new AtomicLong(), compiled = new AtomicLong(), compilations = new AtomicLong();
+	
+	/**
+	 * Create an evaluator that compiles shapes after the specified amount of evaluations.
+	 * @param threshold The amount of evaluations before a shape is compiled. A threshold of 0 compiles shapes immediately.
+	 */
+	public TieredEvaluator(int threshold)
+	{
+		if (threshold < 0)
+			throw new IllegalArgumentException("Compile threshold " + threshold + " is not supported.");
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * Evaluate a tree, through its compiled kernel if its shape is hot.
+	 * @param root The root of the tree.
+	 * @return The final value after all operations are complete.
+	 */
+	public Value<?> evaluate(Value<?> root)
+	{
+		if (!(root instanceof Expression))
+			return root;
+		final Value<?> memoized = ((Expression) root).getMemoized();
+		if (memoized != null)
+			return memoized;
+		final Description description = descriptions.asMap().computeIfAbsent(root, this::describe);
+		if (description.tier == null)
+			return interpret(root);
+		final Value<?> remembered = EvaluationMemo.get(description.memo);
+		if (remembered != null)
+			return remembered;
+		
+		final Tier tier = description.tier;
+		Kernel kernel = tier.kernel;
+		if (kernel == null)
+		{
+			if (tier.evaluations.incrementAndGet() <= threshold)
+				return interpret(root);
+			synchronized (tier)
+			{
+				if (tier.kernel == null)
+				{
+					tier.kernel = ExpressionCompiler.compile(root);
+					compilations.incrementAndGet();
+				}
+				kernel = tier.kernel;
+			}
+		}
+		compiled.incrementAndGet();
+		final Value<?> value = new NumberValue(kernel.apply(description.slots, Main.getMathContext()));
+		description.memo = EvaluationMemo.of(value);
+		return value;
+	}
+	
+	/**
+	 * Describe a tree, finding the tier of its shape.
+	 * @param root The root of the tree.
+	 * @return The description, without a tier if the tree cannot be compiled.
+	 */
+	private Description describe(Value<?> root)
+	{
+		final StringBuilder shape = new StringBuilder();
+		final List<BigDecimal> slots = new ArrayList<BigDecimal>();
+		if (!ExpressionCompiler.describe(root, shape, slots))
+			return new Description(null, null);
+		return new Description(tiers.asMap().computeIfAbsent(shape.toString(), key -> new Tier()), slots.toArray(new BigDecimal[slots.size()]));
+	}
+	
+	/**
+	 * Evaluate a tree through the interpreter.
+	 * @param root The root of the tree.
+	 * @return The final value after all operations are complete.
+	 */
+	private Value<?> interpret(Value<?> root)
+	{
+		interpreted.incrementAndGet();
+		return Evaluator.evaluateValue(root);
+	}
+	
+	/**
+	 * Print the statistics of the evaluator.
+	 * @param printer The printer to print to.
+	 */
+	public void printStats(IPrinter printer)
+	{
+		printer.println("Evaluation statistics:\n");
+		printer.println("Interpreted:   " + interpreted.get());
+		printer.println("Compiled:      " + compiled.get());
+		printer.println("Compilations:  " + compilations.get());
+	}
+	
+	/**
+	 * The invocation counter and the kernel, once compiled, of a single shape.
+	 * @author UFFR
+	 *
+	 */
+	private static class Tier
+	{
+		private final AtomicInteger evaluations = new AtomicInteger();
+		private volatile Kernel kernel;
+	}
+	
+	/**
+	 * The tier and the numbers of a single tree, along with the last result of its kernel.
+	 * @author UFFR
+	 *
+	 */
+	private static class Description
+	{
+		/**The tier of the shape of the tree, {@code null} if the tree cannot be compiled.**/
+		private final Tier tier;
+		/**The numbers of the tree, in the order of the slots of its kernel.**/
+		private final BigDecimal[] slots;
+		/**The last result of running the kernel on the tree.**/
+		private volatile EvaluationMemo memo;
+		public Description(Tier tier, BigDecimal[] slots)
+		{
+			this.tier = tier;
+			this.slots = slots;
+		}
+	}
+}
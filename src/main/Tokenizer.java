@@ -1,30 +1,44 @@
 package main;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.ImmutableSet;
 
 import ch.obermuhlner.math.big.BigDecimalMath;
 import exceptions.SyntaxException;
 import util.CompareType;
+import util.Constant;
+import util.KeywordTable;
 import util.Operation;
 import util.OperationType;
 import util.tokens.SymbolToken;
 import util.tokens.TextToken;
 import util.tokens.Token;
 import util.tokens.Token.TokenType;
+import util.values.BooleanValue;
 import util.values.NumberValue;
 import util.values.StringValue;
-import util.values.Value;
 
 /**
- * Main class that converts a string/chars into {@link Token}s to be parsed by the {@link Parser}.
+ * Main class that converts a string/chars into {@link Token}s to be parsed by the {@link Parser}.<br>
+ * Scans the source directly by offset. Symbols, keywords, and short numbers are produced without intermediate strings or builders.
  * @author UFFR
  */
 public class Tokenizer
@@ -33,8 +47,14 @@ public class Tokenizer
 	public static final Map<String, Operation> OPERATOR_MAP;
 	/**{@code Set} of chars that may be an operator.**/
 	public static final Set<Character> POTENTIAL_OPERATORS = ImmutableSet.of('+', '-', '*', '/', '%', '^', '!', '=', '<', '>', ':');
-	/**{@code Map} that directs certain strings to constants, similar to how variables are handled.**/
-	public static final Map<String, Value<BigDecimal>> CONSTANT_MAP;
+	/**Perfect hash table of every keyword, directing them to the shared token that represents them.**/
+	private static final KeywordTable<Token> KEYWORD_TABLE;
+	/**Perfect hash table of the names of constants, resolved to their values under the {@code MathContext} of the current evaluation, see {@link ConstantStore#getValue(Constant, java.math.MathContext)}.**/
+	private static final KeywordTable<Constant> CONSTANT_TABLE;
+	/**Maximum amount of digits that always fit in a {@code long}.**/
+	private static final int MAX_LONG_DIGITS = 18;
+	/**Initial size of the character buffer when streaming.**/
+	private static final int STREAM_BUFFER_SIZE = 8192;
 	
 	static
 	{
@@ -45,35 +65,74 @@ public class Tokenizer
 			builder.put(type.toString(), type);
 		OPERATOR_MAP = builder.buildOrThrow();
 		
-		CONSTANT_MAP = ImmutableMap.of(
-				"pi", Main.getContext().PI,
-				"e", Main.getContext().E,
-				"phi", Main.getContext().PHI);
+		final Map<String, Token> keywords = new HashMap<String, Token>();
+		for (String keyword : Parser.RESERVED_SET)
+			keywords.put(keyword, new TextToken(keyword, true, Parser.FUNCTION_MAP.get(keyword)));
+		keywords.put("true", new BooleanValue(true));
+		keywords.put("false", new BooleanValue(false));
+		KEYWORD_TABLE = new KeywordTable<Token>(keywords);
+		
+		final Map<String, Constant> constants = new HashMap<String, Constant>();
+		for (Constant constant : Constant.values())
+			constants.put(constant.toString(), constant);
+		CONSTANT_TABLE = new KeywordTable<Constant>(constants);
 	}
 	
 	/**The {@code List} where the detected tokens will go to.**/
 	private final List<Token> tokens = new ArrayList<Token>();
-	/**The original string.**/
-	private final String source;
-	/**The array of characters created by the {@link #source} string.**/
-	private final char[] chars;
+	/**The characters currently available. For streamed input, a window over {@link #buffer}.**/
+	private CharSequence source;
+	/**Amount of characters currently available in the {@link #source}.**/
+	private int length;
+	/**The reader to pull more characters from, {@code null} if all characters are available from the start.**/
+	private final Reader reader;
+	/**Buffer for characters pulled from the {@link #reader}. Only grows if a single token doesn't fit.**/
+	private char[] buffer;
 	
 	/**The current read index. Available for all methods to increment as needed.**/
 	private int index = 0;
+	/**The index where the current token began. Characters before it may be discarded when streaming.**/
+	private int tokenStart = 0;
 	
 	/**
 	 * Construct a tokenizer to turn the string input into a list of tokens.
-	 * @param source The string to tokenize.
+	 * @param source The characters to tokenize.
 	 * @throws SyntaxException If any internal method catches invalid characters.
 	 */
-	public Tokenizer(String source) throws SyntaxException
+	public Tokenizer(CharSequence source) throws SyntaxException
 	{
 		this.source = source;
-		chars = source.toCharArray();
+		length = source.length();
+		reader = null;
 		tokenize();
 	}
 	
-	public String getSource()
+	/**
+	 * Construct a tokenizer that pulls characters from a reader as tokens are requested.
+	 * @param reader The reader to pull characters from.
+	 */
+	private Tokenizer(Reader reader)
+	{
+		this.reader = reader;
+		buffer = new char[STREAM_BUFFER_SIZE];
+		source = CharBuffer.wrap(buffer, 0, 0);
+	}
+	
+	/**
+	 * Construct a tokenizer that scans the characters on demand, starting from the specified index. See {@link #nextToken()}.
+	 * @param source The characters to tokenize.
+	 * @param start The index to start scanning from.
+	 */
+	Tokenizer(CharSequence source, int start)
+	{
+		this.source = source;
+		length = source.length();
+		reader = null;
+		index = start;
+		tokenStart = start;
+	}
+	
+	public CharSequence getSource()
 	{
 		return source;
 	}
@@ -83,112 +142,264 @@ public class Tokenizer
 	 */
 	private void tokenize()
 	{
-		for (index = 0; index < chars.length; index++)
+		Token token;
+		while ((token = nextToken()) != null)
+			tokens.add(token);
+	}
+	
+	/**
+	 * Scan the next token.
+	 * @return The next token, or {@code null} if there are no more characters.
+	 * @throws SyntaxException If an invalid character or malformed token is encountered.
+	 */
+	Token nextToken() throws SyntaxException
+	{
+		tokenStart = index;
+		while (available(0) && source.charAt(index) == ' ')
+			tokenStart = ++index;
+		if (!available(0))
+			return null;
+		final char c = source.charAt(index);
+		switch (c)
 		{
-			final char c = chars[index];
-			switch (c)
-			{
-				case ' ': continue;
-				case '(': tokens.add(new SymbolToken(TokenType.OPEN_PARENTHESIS)); break;
-				case ')': tokens.add(new SymbolToken(TokenType.CLOSING_PARENTHESIS)); break;
-				case '[': tokens.add(new SymbolToken(TokenType.OPEN_BRACE)); break;
-				case ']': tokens.add(new SymbolToken(TokenType.CLOSING_BRACE)); break;
-				case '{': tokens.add(new SymbolToken(TokenType.OPEN_BRACKET)); break;
-				case '}': tokens.add(new SymbolToken(TokenType.CLOSING_BRACKET)); break;
-				case '!': tokens.add(new SymbolToken(TokenType.ECPHONEME)); break;
-				case ',': tokens.add(new SymbolToken(TokenType.COMMA)); break;
-				case '|': tokens.add(new SymbolToken(TokenType.PIPE)); break;
-				case '\n': tokens.add(new SymbolToken(TokenType.NEW_LINE)); break;
-				case '"': parseString(); break;
-				// Logic that can't be put into a switch
-				default:
-					if (Character.isDigit(c) || c == '.' || (c == '-' && (index == 0 || "+-*/^(".contains(String.valueOf(chars[index - 1])))))
-						parseNumber();
-					else if (Character.isLetter(c))
-						parseText();
-					else if (POTENTIAL_OPERATORS.contains(c))
-						parseOperator();
-					else
-						throw new SyntaxException("Unknown or unexpected character: " + c);
-					break;
-			}
+			case '(': return symbol(TokenType.OPEN_PARENTHESIS);
+			case ')': return symbol(TokenType.CLOSING_PARENTHESIS);
+			case '[': return symbol(TokenType.OPEN_BRACE);
+			case ']': return symbol(TokenType.CLOSING_BRACE);
+			case '{': return symbol(TokenType.OPEN_BRACKET);
+			case '}': return symbol(TokenType.CLOSING_BRACKET);
+			case ',': return symbol(TokenType.COMMA);
+			case '|': return symbol(TokenType.PIPE);
+			case '\n': return symbol(TokenType.NEW_LINE);
+			case '\r':
+				// Treat "\r\n" and "\r" as new lines as well
+				if (peek(1) == '\n')
+					index++;
+				return symbol(TokenType.NEW_LINE);
+			case '"': return parseString();
+			// Might be the start of "!="
+			case '!': return peek(1) == '=' ? parseOperator() : symbol(TokenType.ECPHONEME);
+			// Logic that can't be put into a switch
+			default:
+				if (Character.isDigit(c) || c == '.')
+					return parseNumber();
+				else if (Character.isLetter(c))
+					return parseText();
+				else if (isPotentialOperator(c))
+					return parseOperator();
+				else
+					throw new SyntaxException("Unknown or unexpected character: " + c);
+		}
+	}
+	
+	/**
+	 * Get the index where the last scanned token began, after any leading spaces.
+	 * @return The start index of the token, inclusive.
+	 */
+	int getTokenStart()
+	{
+		return tokenStart;
+	}
+	
+	/**
+	 * Get the index right after the last scanned token.
+	 * @return The end index of the token, exclusive.
+	 */
+	int getIndex()
+	{
+		return index;
+	}
+	
+	/**
+	 * Get the shared token for the symbol and move past it.
+	 * @param type The type of symbol.
+	 * @return The shared symbol token.
+	 */
+	private Token symbol(TokenType type)
+	{
+		index++;
+		return SymbolToken.of(type);
+	}
+	
+	/**
+	 * Checks if a character is available relative to the current index, pulling more from the {@link #reader} if needed.
+	 * @param offset The offset from the current index.
+	 * @return True, if the character is available, false if the input has ended before it.
+	 */
+	private boolean available(int offset)
+	{
+		while (index + offset >= length)
+			if (!fill())
+				return false;
+		return true;
+	}
+	
+	/**
+	 * Peek a character relative to the current index without moving.
+	 * @param offset The offset from the current index.
+	 * @return The character, or {@code '\u0000'} if out of bounds.
+	 */
+	private char peek(int offset)
+	{
+		return available(offset) ? source.charAt(index + offset) : '\u0000';
+	}
+	
+	/**
+	 * Pull more characters from the {@link #reader}. Characters before the current token are discarded first, and the buffer only grows if the current token fills it.
+	 * @return True, if more characters were read, false if there are none left.
+	 * @throws UncheckedIOException If the reader fails.
+	 */
+	private boolean fill() throws UncheckedIOException
+	{
+		if (reader == null)
+			return false;
+		if (tokenStart > 0)
+		{
+			System.arraycopy(buffer, tokenStart, buffer, 0, length - tokenStart);
+			length -= tokenStart;
+			index -= tokenStart;
+			tokenStart = 0;
+		}
+		if (length == buffer.length)
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		try
+		{
+			final int read = reader.read(buffer, length, buffer.length - length);
+			if (read < 0)
+				return false;
+			length += read;
+			source = CharBuffer.wrap(buffer, 0, length);
+			return true;
+		} catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
 		}
 	}
 	
+	/**
+	 * The text of the current token, from {@link #tokenStart} to the current index.
+	 * @return The text as a new {@code String}.
+	 */
+	private String tokenText()
+	{
+		return source.subSequence(tokenStart, index).toString();
+	}
+	
 	/**
 	 * If a quotation mark is detected, assume it's a string and build one until another quotation is detected and assume it's a closing.
+	 * @return The token for the string.
+	 * @throws SyntaxException If no closing quotation is found.
+	 */
+	private Token parseString() throws SyntaxException
+	{
+		// Skip the first quotation, the token still starts at it
+		index++;
+		while (available(0) && source.charAt(index) != '"')
+			index++;
+		if (!available(0))
+			throw new SyntaxException("Unmatched quotation mark!");
+		final String text = source.subSequence(tokenStart + 1, index).toString();
+		index++;
+		return new StringValue(text);
+	}
+	
+	/**
+	 * If a digit or decimal point is detected, begin to check for digits and build a BigDecimal from them.<br>
+	 * Numbers with few enough digits are accumulated directly, without creating a string.
+	 * @return The token for the number.
+	 * @throws SyntaxException If the number contains more than one decimal point or no digits.
 	 */
-	private void parseString()
+	private Token parseNumber() throws SyntaxException
 	{
-		final StringBuilder builder = new StringBuilder();
-		// Initial ++ is to skip the first quotation
-		for (++index; index < chars.length; index++)
+		long unscaled = 0;
+		int digits = 0, scale = -1;
+		boolean simple = true;
+		for (; available(0); index++)
 		{
-			final char c = chars[index];
-			if (c == '"')
+			final char c = source.charAt(index);
+			if (c == '.')
+			{
+				if (scale >= 0)
+					throw new SyntaxException("Number cannot contain more than one decimal place.");
+				scale = 0;
+			} else if (Character.isDigit(c))
+			{
+				if (c > '9' || ++digits > MAX_LONG_DIGITS)
+					simple = false;
+				else
+					unscaled = unscaled * 10 + (c - '0');
+				if (scale >= 0)
+					scale++;
+			} else
 				break;
-			else
-				builder.append(c);
 		}
-		if (chars[chars.length - 1] != '"')
-			throw new SyntaxException("Unmatched closing parenthesis!");
-		tokens.add(new StringValue(builder.toString()));
+		if (digits == 0 && simple)
+			throw new SyntaxException("Number has no digits: " + tokenText());
+		return new NumberValue(simple ? BigDecimal.valueOf(unscaled, Math.max(scale, 0)) : BigDecimalMath.toBigDecimal(tokenText()));
 	}
 	
 	/**
-	 * If a digit or basic operator is detected, begin to check for digits and build a BigDecimal from them.
+	 * If the char is a symbol found in {@link #POTENTIAL_OPERATORS}, assume is an operator.<br>
+	 * Takes two characters if they form a comparison operator, otherwise one.
+	 * @return The operator.
+	 * @throws SyntaxException If the character does not correlate to any valid operator.
 	 */
-	private void parseNumber()
+	private Token parseOperator() throws SyntaxException
 	{
-		final StringBuilder builder = new StringBuilder();
-		int last = index;
-		boolean isDecimal = false;
-		while (last < chars.length && (Character.isDigit(chars[last]) || chars[last] == '.'))
+		final char c = source.charAt(index), next = peek(1);
+		if (next == '=' && (c == '!' || c == '<' || c == '>'))
 		{
-			builder.append(chars[last]);
-			if (chars[last] == '.' && !isDecimal)
-				isDecimal = true;
-			else if (chars[last] == '.' && isDecimal)
-				throw new SyntaxException("Number cannot contain more than one decimal place.");
-			last++;
+			index += 2;
+			return c == '!' ? CompareType.NOT_EQUALS : c == '<' ? CompareType.LESS_THAN_OR_EQUAL : CompareType.GREATER_THAN_OR_EQUAL;
 		}
-		// Special negation case
-		if (builder.length() == 0 && chars[last] == '-')
+		index++;
+		switch (c)
 		{
-			tokens.add(OperationType.SUBTRACTION);
-			return;
+			case '=': return CompareType.EQUALS;
+			case '<': return CompareType.LESS_THAN;
+			case '>': return CompareType.GREATER_THAN;
+			default: return OperationType.getOperation(c);
 		}
-		final BigDecimal decimal = BigDecimalMath.toBigDecimal(builder.toString());
-		index = last - 1;
-		tokens.add(new NumberValue(decimal));
 	}
 	
 	/**
-	 * If the char is a symbol found in {@link #POTENTIAL_OPERATORS}, assume is an operator.
-	 * @throws SyntaxException If the parsed string does not correlate to any valid operator.
+	 * Text not wrapped in quotes, may refer to variables, constants, functions, etc.<br>
+	 * Keywords are resolved with {@link #KEYWORD_TABLE} to shared tokens and constants with {@link #CONSTANT_TABLE} to their values, only other text creates a new token.
+	 * @return The token for the text.
 	 */
-	private void parseOperator() throws SyntaxException
+	private Token parseText()
 	{
-		final StringBuilder builder = new StringBuilder(2);
-		int last = index;
-		while (last < chars.length && POTENTIAL_OPERATORS.contains(chars[last]))
-			builder.append(chars[last++]);
-		index = last - 1;
-		tokens.add(getOperation(builder.toString()));
+		while (available(0) && Character.isLetter(source.charAt(index)))
+			index++;
+		final Token keyword = KEYWORD_TABLE.get(source, tokenStart, index);
+		if (keyword != null)
+			return keyword;
+		final Constant constant = CONSTANT_TABLE.get(source, tokenStart, index);
+		return constant != null ? ConstantStore.getValue(constant, Main.getMathContext()) : new TextToken(tokenText());
 	}
 	
 	/**
-	 * Text not wrapped in quotes, may refer to variables, constants, functions, etc.
+	 * Checks if the char is one of {@link #POTENTIAL_OPERATORS}, without boxing it.
+	 * @param c The char to check.
+	 * @return True, if the char may be an operator, false if not.
 	 */
-	private void parseText()
+	public static boolean isPotentialOperator(char c)
 	{
-		final StringBuilder builder = new StringBuilder();
-		int last = index;
-		while (last < chars.length && Character.isLetter(chars[last]))
-			builder.append(chars[last++]);
-		index = last - 1;
-		final String text = builder.toString();
-		tokens.add(CONSTANT_MAP.containsKey(text.toLowerCase()) ? CONSTANT_MAP.get(text.toLowerCase()) : new TextToken(text));
+		switch (c)
+		{
+			case '+':
+			case '-':
+			case '*':
+			case '/':
+			case '%':
+			case '^':
+			case '!':
+			case '=':
+			case '<':
+			case '>':
+			case ':': return true;
+			default: return false;
+		}
 	}
 	
 	/**
@@ -214,13 +425,97 @@ public class Tokenizer
 		return new ArrayList<Token>(tokens);
 	}
 	
+	/**
+	 * Tokenize characters from a reader lazily. Tokens are only scanned as they are requested, and only the characters of the current token are kept in memory.
+	 * @param reader The reader to pull characters from. Not closed by the tokenizer.
+	 * @return An {@code Iterator} over the tokens.
+	 * @throws SyntaxException When iterating, if an invalid character or malformed token is encountered.
+	 * @throws UncheckedIOException When iterating, if the reader fails.
+	 */
+	public static Iterator<Token> stream(Reader reader)
+	{
+		final Tokenizer tokenizer = new Tokenizer(reader);
+		return new AbstractIterator<Token>()
+		{
+			@Override
+			protected Token computeNext()
+			{
+				final Token token = tokenizer.nextToken();
+				return token == null ? endOfData() : token;
+			}
+		};
+	}
+	
+	/**
+	 * Tokenize characters from a channel lazily, see {@link #stream(Reader)}.
+	 * @param channel The channel to pull bytes from.
+	 * @param charset The charset to decode the bytes with.
+	 * @return An {@code Iterator} over the tokens.
+	 */
+	public static Iterator<Token> stream(ReadableByteChannel channel, Charset charset)
+	{
+		return stream(Channels.newReader(channel, charset.newDecoder(), -1));
+	}
+	
+	/**
+	 * Tokenize characters from a buffer, such as a memory-mapped file, lazily, see {@link #stream(Reader)}.<br>
+	 * Bytes are decoded as they are requested, so the buffer is never copied as a whole.
+	 * @param buffer The buffer to read bytes from. Its position will be advanced.
+	 * @param charset The charset to decode the bytes with.
+	 * @return An {@code Iterator} over the tokens.
+	 */
+	public static Iterator<Token> stream(ByteBuffer buffer, Charset charset)
+	{
+		return stream(new ByteBufferChannel(buffer), charset);
+	}
+	
 	/**
 	 * Shorthand way to tokenize text and retrieve the tokens.
-	 * @param input The string input to go to the constructor {@link #Tokenizer(String)}.
-	 * @return The finished token list as specified by {@link #getTokens()}.
+	 * @param input The characters to go to the constructor {@link #Tokenizer(CharSequence)}.
+	 * @return The finished token list. Unlike {@link #getTokens()}, it is not copied.
 	 */
-	public static List<Token> tokenize(String input)
+	public static List<Token> tokenize(CharSequence input)
 	{
-		return new Tokenizer(input).getTokens();
+		return new Tokenizer(input).tokens;
+	}
+	
+	/**
+	 * A minimal channel that reads from a {@link ByteBuffer}.
+	 * @author UFFR
+	 *
+	 */
+	private static class ByteBufferChannel implements ReadableByteChannel
+	{
+		private final ByteBuffer buffer;
+		private boolean open = true;
+		public ByteBufferChannel(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+		
+		@Override
+		public int read(ByteBuffer dst)
+		{
+			if (!buffer.hasRemaining())
+				return -1;
+			final int count = Math.min(dst.remaining(), buffer.remaining());
+			final ByteBuffer slice = buffer.duplicate();
+			slice.limit(slice.position() + count);
+			dst.put(slice);
+			buffer.position(buffer.position() + count);
+			return count;
+		}
+		
+		@Override
+		public boolean isOpen()
+		{
+			return open;
+		}
+		
+		@Override
+		public void close()
+		{
+			open = false;
+		}
 	}
 }
@@ -0,0 +1,58 @@
+package util;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import ch.obermuhlner.math.big.BigDecimalMath;
+
+/**
+ * Enumeration for the mathematical constants, each with a single character symbol ({@link #getSymbol()}).
+ * @author UFFR
+ *
+ */
+public enum Constant
+{
+	PI('π'),
+	E('e'),
+	PHI('φ');
+	private final char symbol;
+	private Constant(char symbol)
+	{
+		this.symbol = symbol;
+	}
+	
+	/**
+	 * Calculate the digits of this constant. Expensive at a high precision, see {@link main.ConstantStore} to reuse them.
+	 * @param mathContext The {@code MathContext} to calculate the constant under.
+	 * @return The constant, rounded to the precision.
+	 */
+	public BigDecimal calculate(MathContext mathContext)
+	{
+		switch (this)
+		{
+			case PI: return BigDecimalMath.pi(mathContext);
+			case E: return BigDecimalMath.e(mathContext);
+			// (1 + √5) / 2
+			case PHI: return BigDecimalMath.sqrt(BigDecimal.valueOf(5), mathContext).add(BigDecimal.ONE).divide(BigDecimal.valueOf(2), mathContext);
+			default: throw new IllegalStateException("Could not interpret constant: " + this + '!');
+		}
+	}
+	
+	/**
+	 * Get the symbol that represents this constant.
+	 * @return The symbol.
+	 */
+	public char getSymbol()
+	{
+		return symbol;
+	}
+	
+	/**
+	 * The name of this constant as it is entered, ie "pi".
+	 */
+	@Override
+	public String toString()
+	{
+		return name().toLowerCase();
+	}
+}
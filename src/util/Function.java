@@ -3,7 +3,6 @@ package util;
 import exceptions.SyntaxException;
 import util.expressions.Expression;
 import util.expressions.FunctionExpression;
-import util.values.NumberValue;
 import util.values.Value;
 
 /**
@@ -37,11 +36,35 @@ public enum Function implements Operation
 	
 	CEIL(true),
 	FLOOR(true),
-	ROUND(true);
+	ROUND(true),
+	
+	MATMUL(false, false),
+	TRANSPOSE(true, false),
+	DET(true, false),
+	INV(true, false),
+	SOLVE(false, false),
+	
+	RANGE(false, false),
+	SUM(false, false),
+	PROD(false, false),
+	MIN(false, false),
+	MAX(false, false),
+	MEAN(false, false),
+	NORM(false, false),
+	DOT(false, false),
+	COUNT(true, false);
 	public final boolean singleArg;
+	/**If the function applies to each number of a list or matrix, otherwise it takes whole values as its arguments (ie matrices).**/
+	public final boolean elementWise;
 	private Function(boolean singleArg)
+	{
+		this(singleArg, true);
+	}
+	
+	private Function(boolean singleArg, boolean elementWise)
 	{
 		this.singleArg = singleArg;
+		this.elementWise = elementWise;
 	}
 	
 	@Override
@@ -53,13 +76,51 @@ public enum Function implements Operation
 	@Override
 	public Expression constructExpression(Value<?> left, Value<?> right)
 	{
-		// Functions typically only take one value and if there is a second, it is always a NumberValue.
-		try
-		{
-			return new FunctionExpression(left, right == null ? null : ((NumberValue) right).getValue(), this);
-		} catch (ClassCastException e)
+		// Functions typically only take one value and if there is a second, it must evaluate to a NumberValue.
+		if (singleArg && right != null)
+			throw new SyntaxException("Function " + this + " does not take any additional parameters.");
+		return new FunctionExpression(left, right, this);
+	}
+	
+	/**
+	 * Construct the expression of a function that takes a third argument, see {@link #getMaxArguments()}.
+	 * @param input The main input of the function.
+	 * @param base The second argument.
+	 * @param extra The third argument, may be {@code null}.
+	 * @return The {@link Expression} object made as a result.
+	 */
+	public Expression constructExpression(Value<?> input, Value<?> base, Value<?> extra)
+	{
+		if (extra != null && getMaxArguments() < 3)
+			throw new SyntaxException("Function " + this + " does not take a third parameter.");
+		return extra == null ? constructExpression(input, base) : new FunctionExpression(input, base, extra, this);
+	}
+	
+	/**
+	 * Get the most arguments the function takes.
+	 * @return 1 for single argument functions, 3 for ranges (start, end, and step), otherwise 2.
+	 */
+	public int getMaxArguments()
+	{
+		return singleArg ? 1 : this == RANGE ? 3 : 2;
+	}
+	
+	/**
+	 * Checks if the function is expensive to calculate, unlike functions that only round or change the sign.
+	 * @return True, if the function is calculated by series expansions or similar.
+	 */
+	public boolean isExpensive()
+	{
+		switch (this)
 		{
-			throw new SyntaxException("Second value isn't a NumberValue!", e);
+			case ABS:
+			case CEIL:
+			case FLOOR:
+			case ROUND:
+			case TRANSPOSE:
+			case RANGE:
+			case COUNT: return false;
+			default: return true;
 		}
 	}
 	
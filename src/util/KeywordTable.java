@@ -0,0 +1,139 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * An immutable, case-insensitive lookup table from keywords to values, using a perfect hash computed on construction.<br>
+ * Lookups are done directly on a region of a {@link CharSequence}, so no {@code String} has to be created for them.
+ * @author UFFR
+ *
+ * @param <V> The type of the values.
+ */
+public class KeywordTable<V>
+{
+	/**Maximum amount of multipliers to try for a given table size before growing the table.**/
+	private static final int MAX_ATTEMPTS = 1 << 16;
+	
+	/**Keywords by slot, all lower case. Empty slots are {@code null}.**/
+	private final String[] keys;
+	/**Values by slot.**/
+	private final Object[] values;
+	/**The multiplier that spreads the keyword hashes without collisions.**/
+	private final int multiplier;
+	/**Shift to reduce a multiplied hash to a slot.**/
+	private final int shift;
+	
+	/**
+	 * Construct the table, searching for a perfect hash over the keywords.
+	 * @param map The keywords and their values. Keywords are matched case-insensitively.
+	 * @throws IllegalArgumentException If two keywords are identical ignoring case.
+	 */
+	public KeywordTable(Map<String, V> map) throws IllegalArgumentException
+	{
+		final int size = map.size();
+		final String[] keywords = new String[size];
+		final int[] hashes = new int[size];
+		int i = 0;
+		for (String keyword : map.keySet())
+		{
+			keywords[i] = keyword.toLowerCase();
+			hashes[i] = hash(keywords[i], 0, keywords[i].length());
+			for (int j = 0; j < i; j++)
+				if (hashes[j] == hashes[i])
+					throw new IllegalArgumentException("Keywords [" + keywords[j] + "] and [" + keywords[i] + "] cannot be told apart.");
+			i++;
+		}
+		
+		// Search for a multiplier that places every keyword in its own slot, growing the table if none is found.
+		int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(1, size) * 4 - 1));
+		int found;
+		while ((found = findMultiplier(hashes, bits)) == 0)
+			bits++;
+		
+		multiplier = found;
+		shift = 32 - bits;
+		keys = new String[1 << bits];
+		values = new Object[1 << bits];
+		i = 0;
+		for (Entry<String, V> entry : map.entrySet())
+		{
+			final int slot = (hashes[i] * multiplier) >>> shift;
+			keys[slot] = keywords[i];
+			values[slot] = entry.getValue();
+			i++;
+		}
+	}
+	
+	/**
+	 * Look up the value of the keyword in the specified region.
+	 * @param sequence The characters to check.
+	 * @param start The index of the first character, inclusive.
+	 * @param end The index of the last character, exclusive.
+	 * @return The value of the keyword, or {@code null} if the region is not a keyword.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(CharSequence sequence, int start, int end)
+	{
+		final int slot = (hash(sequence, start, end) * multiplier) >>> shift;
+		final String key = keys[slot];
+		if (key == null || key.length() != end - start)
+			return null;
+		for (int i = 0; i < key.length(); i++)
+			if (Character.toLowerCase(sequence.charAt(start + i)) != key.charAt(i))
+				return null;
+		return (V) values[slot];
+	}
+	
+	/**
+	 * Look up the value of a keyword.
+	 * @param keyword The keyword to check.
+	 * @return The value of the keyword, or {@code null} if it is not a keyword.
+	 */
+	public V get(CharSequence keyword)
+	{
+		return get(keyword, 0, keyword.length());
+	}
+	
+	/**
+	 * Attempt to find a multiplier that spreads the hashes without collision for the given table size.
+	 * @param hashes The hashes of every keyword.
+	 * @param bits The table size, as a power of two.
+	 * @return The multiplier found, or 0 if none was found.
+	 */
+	private static int findMultiplier(int[] hashes, int bits)
+	{
+		final boolean[] used = new boolean[1 << bits];
+		final int shift = 32 - bits;
+		int multiplier = 0x9E3779B1;
+		search: for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++, multiplier += 2)
+		{
+			Arrays.fill(used, false);
+			for (int hash : hashes)
+			{
+				final int slot = (hash * multiplier) >>> shift;
+				if (used[slot])
+					continue search;
+				used[slot] = true;
+			}
+			return multiplier;
+		}
+		return 0;
+	}
+	
+	/**
+	 * The case-insensitive hash of a region of characters.
+	 * @param sequence The characters to hash.
+	 * @param start The index of the first character, inclusive.
+	 * @param end The index of the last character, exclusive.
+	 * @return The hash.
+	 */
+	private static int hash(CharSequence sequence, int start, int end)
+	{
+		int hash = end - start;
+		for (int i = start; i < end; i++)
+			hash = hash * 31 + Character.toLowerCase(sequence.charAt(i));
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -14,12 +14,12 @@ import util.values.Value;
 public enum OperationType implements Operation
 {
 	ADDITION('+', 1),
-	SUBTRACTION('-', 0),
-	MULTIPLICATION('*', 3),
+	SUBTRACTION('-', 1),
+	MULTIPLICATION('*', 2),
 	DIVISION('/', 2),
-	EXPONENTIATION('^', 4),
+	EXPONENTIATION('^', 3),
 	MODULUS('%', 2),
-	FACTORIAL('!', 5);
+	FACTORIAL('!', 4);
 	private final char symbol;
 	private final byte precedence;
 	private OperationType(char symbol, int precedence)
@@ -0,0 +1,329 @@
+package util;
+
+import java.math.MathContext;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+import main.Context;
+import main.Evaluation;
+import main.Main;
+
+/**
+ * Splits large operations into blocks of rows, which run on the shared {@link ForkJoinPool#commonPool()}.<br>
+ * Work is only split once its estimated cost exceeds the {@link #getThreshold() threshold}. Costs are measured in units of roughly a single arithmetic operation between two
+ * {@code BigDecimal}s of 16 digits, see {@link #arithmeticCost(int)}.<br>
+ * Each row is processed entirely by a single thread in the same order as it would be sequentially, so results are identical regardless of how the work was split.
+ * If any row fails, the exception of the first failing row is thrown, as it would be sequentially.<br>
+ * Every thread working on an operation resumes the {@link Evaluation} of the thread that started it, so they share its {@code Context} and {@code MathContext}.<br>
+ * Reductions are combined along a tree of a fixed shape, see {@link #reduce(int, long, IntFunction, BinaryOperator)}, so they are reproducible as well.
+ * @author UFFR
+ *
+ */
+public final class Parallel
+{
+	/**Default estimated cost an operation must exceed before it is split.**/
+	public static final long DEFAULT_THRESHOLD = 1 << 15;
+	/**Amount of blocks per thread an operation is split into, so threads that finish early can take over the blocks of others.**/
+	private static final int BLOCKS_PER_THREAD = 4;
+	/**Most elements a reduction combines one after another, before splitting them in halves.**/
+	private static final int REDUCTION_LEAF = 1024;
+	
+	/**Estimated cost an operation must exceed before it is split.**/
+	private static volatile long threshold = DEFAULT_THRESHOLD;
+	
+	private Parallel()
+	{
+	}
+	
+	/**
+	 * Set the estimated cost an operation must exceed before it is split.
+	 * @param threshold The threshold, 0 splits every operation with more than one row, {@link Long#MAX_VALUE} never splits.
+	 */
+	public static void setThreshold(long threshold)
+	{
+		if (threshold < 0)
+			throw new IllegalArgumentException("Parallel threshold " + threshold + " is not supported.");
+		Parallel.threshold = threshold;
+	}
+	
+	public static long getThreshold()
+	{
+		return threshold;
+	}
+	
+	/**
+	 * Estimate the cost of a single arithmetic operation, which grows with the precision.
+	 * @param precision The precision the operation is performed at.
+	 * @return The estimated cost.
+	 */
+	public static long arithmeticCost(int precision)
+	{
+		return 1 + precision / 16;
+	}
+	
+	/**
+	 * Estimate the cost of a series expansion, such as a trigonometric function or the factorial of a fraction, which needs more terms as the precision grows.
+	 * @param precision The precision the series is evaluated at.
+	 * @return The estimated cost.
+	 */
+	public static long seriesCost(int precision)
+	{
+		return arithmeticCost(precision) * (16 + precision);
+	}
+	
+	/**
+	 * Estimate the cost of evaluating a function on a single number. Functions that are series expansions cost many arithmetic operations.
+	 * @param function The function.
+	 * @param precision The precision the function is evaluated at.
+	 * @return The estimated cost.
+	 */
+	public static long functionCost(Function function, int precision)
+	{
+		return function.isExpensive() ? seriesCost(precision) : arithmeticCost(precision);
+	}
+	
+	/**
+	 * Checks if an operation is worth splitting.
+	 * @param rows The amount of rows.
+	 * @param costPerRow The estimated cost of a single row.
+	 * @return True, if there is more than one row and the total cost exceeds the threshold.
+	 */
+	public static boolean isWorthSplitting(int rows, long costPerRow)
+	{
+		return rows > 1 && ForkJoinPool.getCommonPoolParallelism() > 1 && (double) rows * costPerRow > threshold;
+	}
+	
+	/**
+	 * Process every row of an operation, in parallel if it is worth splitting.
+	 * @param rows The amount of rows.
+	 * @param costPerRow The estimated cost of a single row.
+	 * @param action Processes a single row given its index. Rows must be independent of each other.
+	 * @throws RuntimeException The exception thrown by the first failing row, if any.
+	 */
+	public static void forEachRow(int rows, long costPerRow, IntConsumer action)
+	{
+		if (!isWorthSplitting(rows, costPerRow))
+		{
+			for (int row = 0; row < rows; row++)
+				action.accept(row);
+			return;
+		}
+		final int grain = Math.max(1, rows / (ForkJoinPool.getCommonPoolParallelism() * BLOCKS_PER_THREAD));
+		final Failure failure = new Failure();
+		ForkJoinPool.commonPool().invoke(new RowBlock(0, rows, grain, action, Main.getContext(), Main.getMathContext(), failure));
+		if (failure.exception != null)
+			throw failure.exception;
+	}
+	
+	/**
+	 * Reduce a sequence of elements with an associative operation, in parallel if it is worth splitting.<br>
+	 * The elements are split in halves until at most {@link #REDUCTION_LEAF} remain, which are combined from left to right, then the halves are combined.
+	 * As the shape of this tree only depends on the amount of elements, results are identical regardless of how many threads took part, even if the operation rounds.
+	 * Only the elements of the leaves being combined are held at any time.
+	 * @param <T> The type of elements.
+	 * @param size The amount of elements, at least 1.
+	 * @param costPerElement The estimated cost of creating and combining a single element.
+	 * @param element Creates an element given its index, must be independent of the others.
+	 * @param combine Combines two partial results, in order.
+	 * @return The result of combining every element.
+	 * @throws RuntimeException The exception thrown for the first failing element, if any.
+	 */
+	public static <T> T reduce(int size, long costPerElement, IntFunction<T> element, BinaryOperator<T> combine)
+	{
+		final Failure failure = new Failure();
+		final int grain = isWorthSplitting(size, costPerElement) ? Math.max(REDUCTION_LEAF, size / (ForkJoinPool.getCommonPoolParallelism() * BLOCKS_PER_THREAD)) : Integer.MAX_VALUE;
+		final ReductionBlock<T> root = new ReductionBlock<T>(0, size, grain, element, combine, Main.getContext(), Main.getMathContext(), failure);
+		final T result = grain == Integer.MAX_VALUE ? root.compute() : ForkJoinPool.commonPool().invoke(root);
+		if (failure.exception != null)
+			throw failure.exception;
+		return result;
+	}
+	
+	/**
+	 * The first failure of an operation, by row.
+	 * @author UFFR
+	 *
+	 */
+	private static class Failure
+	{
+		private int row = Integer.MAX_VALUE;
+		private RuntimeException exception;
+		
+		/**
+		 * Record a failure, if it occurred before any other recorded one.
+		 * @param row The failing row.
+		 * @param exception The exception it threw.
+		 */
+		synchronized void record(int row, RuntimeException exception)
+		{
+			if (row < this.row)
+			{
+				this.row = row;
+				this.exception = exception;
+			}
+		}
+		
+		/**
+		 * Checks if a failure was recorded for an earlier row, in which case later rows need not be processed.
+		 * @param row The row to check.
+		 * @return True, if an earlier row already failed.
+		 */
+		synchronized boolean failedBefore(int row)
+		{
+			return this.row < row;
+		}
+	}
+	
+	/**
+	 * A block of rows, split in halves until it is at most as large as the grain.
+	 * @author UFFR
+	 *
+	 */
+	private static class RowBlock extends RecursiveAction
+	{
+		private static final long serialVersionUID = -2712658130846317461L;
+		private final int from, to, grain;
+		private final IntConsumer action;
+		/**The evaluation of the thread that started the operation.**/
+		private final Context context;
+		private final MathContext mathContext;
+		private final Failure failure;
+		public RowBlock(int from, int to, int grain, IntConsumer action, Context context, MathContext mathContext, Failure failure)
+		{
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.action = action;
+			this.context = context;
+			this.mathContext = mathContext;
+			this.failure = failure;
+		}
+		
+		// Leaves run in the evaluation of the caller, only needed for its effect on the thread
+		@SuppressWarnings("try")
+		@Override
+		protected void compute()
+		{
+			if (to - from > grain)
+			{
+				final int middle = (from + to) >>> 1;
+				invokeAll(new RowBlock(from, middle, grain, action, context, mathContext, failure), new RowBlock(middle, to, grain, action, context, mathContext, failure));
+				return;
+			}
+			if (failure.failedBefore(from))
+				return;
+			try (Evaluation evaluation = Evaluation.begin(context, mathContext))
+			{
+				for (int row = from; row < to; row++)
+				{
+					try
+					{
+						action.accept(row);
+					} catch (RuntimeException e)
+					{
+						failure.record(row, e);
+						return;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A block of elements of a reduction, split in halves until it is at most {@link Parallel#REDUCTION_LEAF} large.
+	 * Halves larger than the grain are reduced on separate threads.
+	 * @author UFFR
+	 *
+	 * @param <T> The type of elements.
+	 */
+	private static class ReductionBlock<T> extends RecursiveTask<T>
+	{
+		private static final long serialVersionUID = 6046911474317850283L;
+		private final int from, to, grain;
+		private final IntFunction<T> element;
+		private final BinaryOperator<T> combine;
+		/**The evaluation of the thread that started the reduction.**/
+		private final Context context;
+		private final MathContext mathContext;
+		private final Failure failure;
+		public ReductionBlock(int from, int to, int grain, IntFunction<T> element, BinaryOperator<T> combine, Context context, MathContext mathContext, Failure failure)
+		{
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.element = element;
+			this.combine = combine;
+			this.context = context;
+			this.mathContext = mathContext;
+			this.failure = failure;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * @return The partial result, or {@code null} if any element failed.
+		 */
+		// Leaves run in the evaluation of the caller, only needed for its effect on the thread
+		@SuppressWarnings("try")
+		@Override
+		protected T compute()
+		{
+			if (to - from > REDUCTION_LEAF)
+			{
+				final int middle = (from + to) >>> 1;
+				final ReductionBlock<T> left = new ReductionBlock<T>(from, middle, grain, element, combine, context, mathContext, failure),
+						right = new ReductionBlock<T>(middle, to, grain, element, combine, context, mathContext, failure);
+				final T leftResult, rightResult;
+				if (to - from > grain)
+				{
+					right.fork();
+					leftResult = left.compute();
+					rightResult = right.join();
+				} else
+				{
+					leftResult = left.compute();
+					rightResult = right.compute();
+				}
+				return leftResult == null || rightResult == null ? null : combine(leftResult, rightResult, middle);
+			}
+			if (failure.failedBefore(from))
+				return null;
+			int index = from;
+			try (Evaluation evaluation = Evaluation.begin(context, mathContext))
+			{
+				T result = element.apply(index);
+				for (index++; index < to; index++)
+					result = combine.apply(result, element.apply(index));
+				return result;
+			} catch (RuntimeException e)
+			{
+				failure.record(index, e);
+				return null;
+			}
+		}
+		
+		/**
+		 * Combine two halves.
+		 * @param left The result of the left half.
+		 * @param right The result of the right half.
+		 * @param index The first index of the right half, which failures are recorded for.
+		 * @return The combined result, or {@code null} if combining failed.
+		 */
+		// Resumes the evaluation of the caller, which is never referenced directly
+		@SuppressWarnings("try")
+		private T combine(T left, T right, int index)
+		{
+			try (Evaluation evaluation = Evaluation.begin(context, mathContext))
+			{
+				return combine.apply(left, right);
+			} catch (RuntimeException e)
+			{
+				failure.record(index, e);
+				return null;
+			}
+		}
+	}
+}
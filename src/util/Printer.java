@@ -5,14 +5,21 @@ import java.io.Flushable;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -50,6 +57,8 @@ public abstract class Printer implements Flushable, Closeable, IPrinter
 	};
 	/**Supplier to create a {@link BinaryFilePrinter}.**/
 	public static final Function<Path, Printer> BINARY_PRINTER = BinaryFilePrinter::new;
+	/**Supplier to create a {@link StreamPrinter}.**/
+	public static final Function<OutputStream, Printer> STREAM_PRINTER = StreamPrinter::new;
 	
 	/**The string that seperates entries, autogenerated.**/
 	public static final String SEPERATOR_STRING;
@@ -86,17 +95,64 @@ public abstract class Printer implements Flushable, Closeable, IPrinter
 	public Value<?> printEntry(String entry)
 	{
 		final StringBuilder builder = new StringBuilder();
-		final Parser parser = Main.PARSER.apply(Tokenizer.tokenize(entry));
+		final Parser parser = Main.getContext().parse(entry);
 		final Value<?> value = Evaluator.evaluateParsedExpression(parser);
+		final String result = format(value);
 		parser.getTokens().forEach(builder::append);
+		printResult(builder.toString(), result);
+		return value;
+	}
+	
+	/**
+	 * Print out and evaluate an entire file as a single entry.<br>
+	 * The file is memory-mapped and tokenized as it is parsed, so its text is never held in memory as a whole.
+	 * @param path The file to read.
+	 * @return The final result.
+	 * @throws IOException If the file could not be read.
+	 */
+	public Value<?> printEntry(Path path) throws IOException
+	{
+		final Parser parser;
+		try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+		{
+			final Iterator<Token> tokens = channel.size() <= Integer.MAX_VALUE
+					? Tokenizer.stream(channel.map(MapMode.READ_ONLY, 0, channel.size()), StandardCharsets.UTF_8)
+					: Tokenizer.stream(channel, StandardCharsets.UTF_8);
+			parser = new Parser(tokens);
+		} catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+		final Value<?> value = Evaluator.evaluateParsedExpression(parser);
+		printResult(path, format(value));
+		return value;
+	}
+	
+	/**
+	 * Format the result of an entry to be printed, before anything of the entry is printed.
+	 * Lazy lists only generate their elements once they are formatted, which may still fail, see {@link util.values.LazyListValue}.
+	 * @param value The result.
+	 * @return The result, right-aligned.
+	 */
+	public static String format(Value<?> value)
+	{
+		return String.format("%128s", value);
+	}
+	
+	/**
+	 * Print an evaluated entry, numbering it as the next entry.
+	 * @param entry The entry as it was evaluated, ie its tokens.
+	 * @param result The formatted result, see {@link #format(Value)}.
+	 */
+	public void printResult(Object entry, String result)
+	{
 		incrementEntries();
 		println("Entry: #" + getEntryCount());
 		println(SEPERATOR_STRING);
-		println(builder);
+		println(entry);
 		println();
-		println(String.format("%128s", value));
+		println(result);
 		println(SEPERATOR_STRING);
-		return value;
 	}
 	
 	public void incrementEntries()
@@ -185,6 +241,183 @@ public abstract class Printer implements Flushable, Closeable, IPrinter
 		
 	}
 	
+	/**
+	 * Prints only to the stream supplied in the constructor, such as a socket, encoded as UTF-8. Text is buffered until the printer is flushed.
+	 * @author UFFR
+	 *
+	 */
+	protected static class StreamPrinter extends Printer
+	{
+		private final PrintWriter writer;
+		public StreamPrinter(OutputStream outputStream)
+		{
+			writer = new PrintWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), false);
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			writer.flush();
+			if (writer.checkError())
+				throw new IOException("Could not write to stream.");
+		}
+
+		@Override
+		public void print(String string)
+		{
+			writer.print(string);
+		}
+
+		@Override
+		public void print(Object object)
+		{
+			writer.print(object);
+		}
+
+		@Override
+		public void print(char... chars)
+		{
+			writer.print(chars);
+		}
+
+		@Override
+		public void print(char c)
+		{
+			writer.print(c);
+		}
+
+		@Override
+		public void println()
+		{
+			writer.print('\n');
+		}
+
+		@Override
+		public void println(String string)
+		{
+			writer.print(string);
+			writer.print('\n');
+		}
+
+		@Override
+		public void println(Object object)
+		{
+			println(String.valueOf(object));
+		}
+
+		@Override
+		public void println(char... chars)
+		{
+			writer.print(chars);
+			writer.print('\n');
+		}
+
+		@Override
+		public void println(char c)
+		{
+			writer.print(c);
+			writer.print('\n');
+		}
+		
+		@Override
+		public void close() throws IOException
+		{
+			writer.close();
+		}
+		
+	}
+	
+	/**
+	 * Prints nothing itself, but records what is printed to be printed later by another printer, see {@link #replay(Printer)}.
+	 * Entries are numbered by the printer they are replayed on, so entries evaluated out of order may still be printed as if they were evaluated in order.
+	 * @author UFFR
+	 *
+	 */
+	public static class DeferredPrinter extends Printer
+	{
+		private final List<Consumer<Printer>> actions = new ArrayList<Consumer<Printer>>();
+		
+		/**
+		 * Print everything recorded so far on another printer, in the order it was recorded.
+		 * @param printer The printer to print to.
+		 */
+		public void replay(Printer printer)
+		{
+			actions.forEach(action -> action.accept(printer));
+		}
+		
+		@Override
+		public void printResult(Object entry, String result)
+		{
+			actions.add(printer -> printer.printResult(entry, result));
+		}
+
+		@Override
+		public void flush()
+		{
+		}
+
+		@Override
+		public void print(String string)
+		{
+			actions.add(printer -> printer.print(string));
+		}
+
+		@Override
+		public void print(Object object)
+		{
+			actions.add(printer -> printer.print(object));
+		}
+
+		@Override
+		public void print(char... chars)
+		{
+			actions.add(printer -> printer.print(chars));
+		}
+
+		@Override
+		public void print(char c)
+		{
+			actions.add(printer -> printer.print(c));
+		}
+
+		@Override
+		public void println()
+		{
+			actions.add(Printer::println);
+		}
+
+		@Override
+		public void println(String string)
+		{
+			actions.add(printer -> printer.println(string));
+		}
+
+		@Override
+		public void println(Object object)
+		{
+			actions.add(printer -> printer.println(object));
+		}
+
+		@Override
+		public void println(char... chars)
+		{
+			actions.add(printer -> printer.println(chars));
+		}
+
+		@Override
+		public void println(char c)
+		{
+			actions.add(printer -> printer.println(c));
+		}
+		
+		@Override
+		public void close()
+		{
+		}
+		
+	}
+	
 	/**
 	 * Prints to both {@code System.out} and a text file supplied in the constructor.
 	 * @author UFFR
@@ -19,9 +19,9 @@ public class AbsoluteValueExpression extends NestedExpression
 	 */
 	private static final long serialVersionUID = 4596680561563979889L;
 
-	public AbsoluteValueExpression(List<Token> expression)
+	public AbsoluteValueExpression(List<Token> expression, Value<?> inner)
 	{
-		super(expression);
+		super(expression, inner);
 	}
 	
 	@Override
@@ -39,9 +39,7 @@ public class AbsoluteValueExpression extends NestedExpression
 	@Override
 	public String toString()
 	{
-		final StringBuilder builder = new StringBuilder().append('|');
-		expression.forEach(builder::append);
-		return builder.append('|').toString();
+		return new StringBuilder().append('|').append(inner).append('|').toString();
 	}
 
 	@Override
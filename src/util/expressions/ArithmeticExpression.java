@@ -4,6 +4,7 @@ import java.util.Objects;
 
 import exceptions.SyntaxException;
 import exceptions.TypeException;
+import main.Evaluator;
 import util.OperationType;
 import util.values.NumberValue;
 import util.values.Value;
@@ -22,11 +23,18 @@ public class ArithmeticExpression implements Expression
 	private static final long serialVersionUID = 2927109086644929849L;
 	private final Value<?> left, right;
 	private final OperationType operationType;
+	/**If both operands are known to evaluate to numbers, in which case addition and multiplication commute. Strings and matrices do not.**/
+	private final boolean scalar;
+	/**Cached hash, as expression trees are immutable.**/
+	private transient int hash;
+	/**The last result of evaluating the expression.**/
+	private transient volatile EvaluationMemo memo;
 	public ArithmeticExpression(Value<?> left, Value<?> right, OperationType operationType)
 	{
 		this.left = left;
 		this.right = right;
 		this.operationType = Objects.requireNonNull(operationType, "Null operator detected!");
+		scalar = isScalar(left) && isScalar(right);
 	}
 	
 	@Override
@@ -37,15 +45,57 @@ public class ArithmeticExpression implements Expression
 		if (!(obj instanceof ArithmeticExpression))
 			return false;
 		final ArithmeticExpression other = (ArithmeticExpression) obj;
-		return (Objects.equals(left, other.left) || Objects.equals(right, other.left))
-				&& operationType == other.operationType
-				&& (Objects.equals(right, other.right) || Objects.equals(left, other.right));
+		if (operationType != other.operationType)
+			return false;
+		if (Objects.equals(left, other.left) && Objects.equals(right, other.right))
+			return true;
+		return isCommutative() && other.isCommutative() && Objects.equals(left, other.right) && Objects.equals(right, other.left);
 	}
 	
 	@Override
 	public int hashCode()
 	{
-		return Objects.hash(left, operationType, right);
+		int hash = this.hash;
+		if (hash == 0)
+		{
+			// Must not depend on the order of the operands if they may be swapped
+			hash = isCommutative() ? 31 * operationType.hashCode() + Objects.hashCode(left) + Objects.hashCode(right) : Objects.hash(left, operationType, right);
+			this.hash = hash;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Checks if the operands may be swapped without changing the result.
+	 * @return True, if the operation is addition or multiplication of numbers.
+	 */
+	public boolean isCommutative()
+	{
+		return scalar && (operationType == OperationType.ADDITION || operationType == OperationType.MULTIPLICATION);
+	}
+	
+	/**
+	 * Checks if a node is known to evaluate to a number, without evaluating it.
+	 * @param value The node to check.
+	 * @return True, if the node only has numbers as leaves, false if it has any other type or it is unknown.
+	 */
+	static boolean isScalar(Value<?> value)
+	{
+		if (value instanceof NumberValue)
+			return true;
+		if (value instanceof VariableExpression)
+			return ((VariableExpression) value).getVariableValue() instanceof NumberValue;
+		if (value instanceof ArithmeticExpression)
+			return ((ArithmeticExpression) value).scalar;
+		if (value instanceof NestedExpression)
+			return isScalar(((NestedExpression) value).getInner());
+		if (value instanceof FunctionExpression)
+			return isScalar(((FunctionExpression) value).getInput());
+		if (value instanceof PrefixExpression)
+			return isScalar(((PrefixExpression) value).getOperand());
+		if (value instanceof FactorialExpression)
+			return isScalar(((FactorialExpression) value).getOperand());
+		return false;
 	}
 	
 	@Override
@@ -54,8 +104,30 @@ public class ArithmeticExpression implements Expression
 		return new StringBuilder().append(left).append(' ').append(operationType).append(' ').append(right).toString();
 	}
 	
+	@Override
+	public Value<?> getMemoized()
+	{
+		return EvaluationMemo.get(memo);
+	}
+	
 	@Override
 	public Value<?> evaluate() throws UnsupportedOperationException, TypeException
+	{
+		final Value<?> memoized = EvaluationMemo.get(memo);
+		if (memoized != null)
+			return memoized;
+		final Value<?> value = evaluate(Evaluator.evaluateValue(left), Evaluator.evaluateValue(right));
+		memo = EvaluationMemo.of(value);
+		return value;
+	}
+	
+	/**
+	 * Apply the operation to the evaluated operands.
+	 * @param left The evaluated left operand.
+	 * @param right The evaluated right operand.
+	 * @return The result.
+	 */
+	private Value<?> evaluate(Value<?> left, Value<?> right) throws UnsupportedOperationException, TypeException
 	{
 		switch (operationType)
 		{
@@ -85,4 +157,19 @@ public class ArithmeticExpression implements Expression
 	{
 		return evaluate();
 	}
+	
+	public Value<?> getLeft()
+	{
+		return left;
+	}
+	
+	public Value<?> getRight()
+	{
+		return right;
+	}
+	
+	public OperationType getOperationType()
+	{
+		return operationType;
+	}
 }
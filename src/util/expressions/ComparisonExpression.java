@@ -3,6 +3,7 @@ package util.expressions;
 import java.util.Objects;
 
 import exceptions.TypeException;
+import main.Evaluator;
 import util.CompareType;
 import util.values.BooleanValue;
 import util.values.Value;
@@ -56,7 +57,7 @@ public class ComparisonExpression implements Expression
 	@Override
 	public Value<?> evaluate() throws UnsupportedOperationException, TypeException
 	{
-		return new BooleanValue(left.compare(right, compareType, false));
+		return new BooleanValue(Evaluator.evaluateValue(left).compare(Evaluator.evaluateValue(right), compareType, false));
 	}
 
 }
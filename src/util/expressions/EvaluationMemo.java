@@ -0,0 +1,47 @@
+package util.expressions;
+
+import java.math.MathContext;
+
+import main.Main;
+import util.values.NumberValue;
+import util.values.Value;
+
+/**
+ * The result of evaluating an expression, along with the {@link MathContext} it was evaluated under.<br>
+ * Lets subtrees that are reused across entries, such as by incremental parsing, skip being evaluated again.
+ * Only plain numbers are remembered, as every tree kept by {@link main.ExpressionCache} keeps the memos of all of its subtrees,
+ * and lists or matrices would pin an unbounded amount of memory to a cache bounded by its amount of entries.
+ * @author UFFR
+ *
+ */
+public final class EvaluationMemo
+{
+	private final MathContext mathContext;
+	private final Value<?> value;
+	
+	private EvaluationMemo(Value<?> value)
+	{
+		this.mathContext = Main.getMathContext();
+		this.value = value;
+	}
+	
+	/**
+	 * Remember the result of an expression, if it is worth keeping.
+	 * @param value The result.
+	 * @return The memo, or {@code null} if the result is not a plain number.
+	 */
+	public static EvaluationMemo of(Value<?> value)
+	{
+		return value instanceof NumberValue ? new EvaluationMemo(value) : null;
+	}
+	
+	/**
+	 * Get the remembered result, if there is one that is still valid.
+	 * @param memo The memo to check, may be {@code null}.
+	 * @return The result, or {@code null} if there is none or it was evaluated under a different {@code MathContext}.
+	 */
+	public static Value<?> get(EvaluationMemo memo)
+	{
+		return memo != null && memo.mathContext.equals(Main.getMathContext()) ? memo.value : null;
+	}
+}
@@ -26,6 +26,15 @@ public interface Expression extends Value<Object>
 	
 	public Value<?> evaluate() throws UnsupportedOperationException, TypeException;
 	
+	/**
+	 * Get the result remembered from an earlier evaluation under the current {@code MathContext}, without evaluating the expression.
+	 * @return The result, or {@code null} if none is remembered.
+	 */
+	default Value<?> getMemoized()
+	{
+		return null;
+	}
+	
 	@Override
 	default Value<?> abs() throws UnsupportedOperationException, TypeException
 	{
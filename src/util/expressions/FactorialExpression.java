@@ -1,11 +1,9 @@
 package util.expressions;
 
-import java.math.BigDecimal;
 import java.util.Objects;
 
-import ch.obermuhlner.math.big.DefaultBigDecimalMath;
 import exceptions.TypeException;
-import util.values.NumberValue;
+import main.Evaluator;
 import util.values.Value;
 
 /**
@@ -46,13 +44,17 @@ public class FactorialExpression implements Expression
 	@Override
 	public String toString()
 	{
-		return evaluate().toString();
+		return value.toString() + '!';
 	}
 	
 	@Override
 	public Value<?> evaluate() throws UnsupportedOperationException, TypeException
 	{
-		return new NumberValue(DefaultBigDecimalMath.factorial((BigDecimal) value.getValue()));
+		return Evaluator.evaluateValue(value).factorial();
+	}
+	
+	public Value<?> getOperand()
+	{
+		return value;
 	}
-
 }
@@ -6,6 +6,7 @@ import java.util.Objects;
 import exceptions.TypeException;
 import main.Evaluator;
 import util.Function;
+import util.values.NumberValue;
 import util.values.Value;
 
 /**
@@ -20,15 +21,27 @@ public class FunctionExpression implements Expression
 	 */
 	private static final long serialVersionUID = -4668258256040767317L;
 	private final Value<?> input;
-	private final BigDecimal base;
+	private final Value<?> base;
+	/**The third argument of functions that take one, see {@link Function#getMaxArguments()}, may be {@code null}.**/
+	private final Value<?> extra;
 	private final Function function;
-	public FunctionExpression(Value<?> input, BigDecimal base, Function function)
+	/**Cached hash, as expression trees are immutable.**/
+	private transient int hash;
+	/**The last result of evaluating the function.**/
+	private transient volatile EvaluationMemo memo;
+	public FunctionExpression(Value<?> input, Value<?> base, Value<?> extra, Function function)
 	{
 		this.input = input;
 		this.base = base;
+		this.extra = extra;
 		this.function = function;
 	}
 	
+	public FunctionExpression(Value<?> input, Value<?> base, Function function)
+	{
+		this(input, base, null, function);
+	}
+	
 	public FunctionExpression(Value<?> input, Function function)
 	{
 		this(input, null, function);
@@ -42,13 +55,16 @@ public class FunctionExpression implements Expression
 		if (!(obj instanceof FunctionExpression))
 			return false;
 		final FunctionExpression other = (FunctionExpression) obj;
-		return Objects.equals(base, other.base) && function == other.function && Objects.equals(input, other.input);
+		return Objects.equals(base, other.base) && Objects.equals(extra, other.extra) && function == other.function && Objects.equals(input, other.input);
 	}
 	
 	@Override
 	public int hashCode()
 	{
-		return Objects.hash(base, function, input);
+		int hash = this.hash;
+		if (hash == 0)
+			this.hash = hash = Objects.hash(base, extra, function, input);
+		return hash;
 	}
 	
 	@Override
@@ -58,10 +74,12 @@ public class FunctionExpression implements Expression
 			return '|' + input.toString() + '|';
 		else
 		{
-			final StringBuilder builder = new StringBuilder(function.toString().toLowerCase()).append('(');
+			final StringBuilder builder = new StringBuilder(function.toString().toLowerCase()).append('(').append(input);
 			if (base != null)
-				builder.append(base).append(", ");
-			return builder.append(input).append(')').toString();
+				builder.append(", ").append(base);
+			if (extra != null)
+				builder.append(", ").append(extra);
+			return builder.append(')').toString();
 		}
 	}
 	
@@ -71,10 +89,66 @@ public class FunctionExpression implements Expression
 		return evaluate();
 	}
 
+	@Override
+	public Value<?> getMemoized()
+	{
+		return EvaluationMemo.get(memo);
+	}
+	
 	@Override
 	public Value<?> evaluate() throws UnsupportedOperationException, TypeException
 	{
-		return Evaluator.evaluateFunctionGeneric(function, base, input);
+		final Value<?> memoized = EvaluationMemo.get(memo);
+		if (memoized != null)
+			return memoized;
+		if (!function.elementWise)
+		{
+			final Value<?> value = Evaluator.evaluateFunctionValues(function, this.base == null ? null : Evaluator.evaluateValue(this.base), Evaluator.evaluateValue(input),
+					extra == null ? null : Evaluator.evaluateValue(extra));
+			memo = EvaluationMemo.of(value);
+			return value;
+		}
+		final BigDecimal base;
+		if (this.base == null)
+			base = null;
+		else
+		{
+			final Value<?> baseValue = Evaluator.evaluateValue(this.base);
+			if (!(baseValue instanceof NumberValue))
+				throw new TypeException("Value " + baseValue + " cannot be used as the base of the " + function + " function.");
+			base = ((NumberValue) baseValue).getValue();
+		}
+		final Value<?> value = Evaluator.evaluateFunctionGeneric(function, base, Evaluator.evaluateValue(input));
+		memo = EvaluationMemo.of(value);
+		return value;
+	}
+	
+	public Value<?> getInput()
+	{
+		return input;
+	}
+	
+	/**
+	 * Get the base of the function.
+	 * @return The unevaluated base, may be {@code null} if none was given.
+	 */
+	public Value<?> getBase()
+	{
+		return base;
+	}
+	
+	/**
+	 * Get the third argument of the function.
+	 * @return The unevaluated argument, may be {@code null} if none was given.
+	 */
+	public Value<?> getExtra()
+	{
+		return extra;
+	}
+	
+	public Function getFunction()
+	{
+		return function;
 	}
 
 }
@@ -5,12 +5,12 @@ import java.util.Objects;
 
 import exceptions.TypeException;
 import main.Evaluator;
-import main.Main;
 import util.tokens.Token;
 import util.values.Value;
 
 /**
- * A generic nested expression. Must go back to a {@link Parser} to be evaluated, usually recursively.
+ * A generic nested expression. Keeps the tokens it was parsed from alongside the already parsed inner expression.<br>
+ * The tokens may be empty if they were streamed, so only the inner expression is used for equality.
  * @author UFFR
  *
  */
@@ -21,16 +21,20 @@ public class NestedExpression implements Expression
 	 */
 	private static final long serialVersionUID = 4870016874019111425L;
 	protected final List<Token> expression;
+	protected final Value<?> inner;
+	/**The last result of evaluating the inner expression.**/
+	private transient volatile EvaluationMemo memo;
 	
-	public NestedExpression(List<Token> list)
+	public NestedExpression(List<Token> list, Value<?> inner)
 	{
 		this.expression = list;
+		this.inner = inner;
 	}
 
 	@Override
 	public int hashCode()
 	{
-		return Objects.hash(expression);
+		return Objects.hash(inner);
 	}
 
 	@Override
@@ -41,21 +45,35 @@ public class NestedExpression implements Expression
 		if (!(obj instanceof NestedExpression))
 			return false;
 		final NestedExpression other = (NestedExpression) obj;
-		return Objects.equals(expression, other.expression);
+		return Objects.equals(inner, other.inner);
 	}
 	
 	@Override
 	public String toString()
 	{
-		final StringBuilder builder = new StringBuilder().append('(');
-		expression.forEach(builder::append);
-		return builder.append(')').toString();
+		return new StringBuilder().append('(').append(inner).append(')').toString();
 	}
 
+	@Override
+	public Value<?> getMemoized()
+	{
+		return EvaluationMemo.get(memo);
+	}
+	
 	@Override
 	public Value<?> evaluate() throws UnsupportedOperationException, TypeException
 	{
-		return Evaluator.evaluateParsedExpression(Main.PARSER.apply(expression));
+		final Value<?> memoized = EvaluationMemo.get(memo);
+		if (memoized != null)
+			return memoized;
+		final Value<?> value = Evaluator.evaluateValue(inner);
+		memo = EvaluationMemo.of(value);
+		return value;
+	}
+	
+	public Value<?> getInner()
+	{
+		return inner;
 	}
 
 }
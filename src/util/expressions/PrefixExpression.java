@@ -3,6 +3,7 @@ package util.expressions;
 import java.util.Objects;
 
 import exceptions.TypeException;
+import main.Evaluator;
 import util.OperationType;
 import util.values.Value;
 
@@ -17,10 +18,10 @@ public class PrefixExpression implements Expression
 	 * 
 	 */
 	private static final long serialVersionUID = 6502105797566359447L;
-	private final Expression operand;
+	private final Value<?> operand;
 	private final OperationType type;
 	
-	public PrefixExpression(Expression operand, OperationType type)
+	public PrefixExpression(Value<?> operand, OperationType type)
 	{
 		this.operand = operand;
 		this.type = type;
@@ -46,18 +47,25 @@ public class PrefixExpression implements Expression
 	@Override
 	public String toString()
 	{
-		final StringBuilder builder = new StringBuilder();
-		builder.append("PrefixExpression [operand=").append(operand).append(", type=").append(type).append(']');
-		return builder.toString();
+		return new StringBuilder().append(type).append(operand).toString();
 	}
 
 	@Override
 	public Value<?> evaluate() throws UnsupportedOperationException, TypeException
 	{
 		if (type == OperationType.SUBTRACTION)
-			return operand.negate();
+			return Evaluator.evaluateValue(operand).negate();
 		else
 			throw new UnsupportedOperationException("Operator [" + type + "] cannot be used as a prefix!");
 	}
-
+	
+	public Value<?> getOperand()
+	{
+		return operand;
+	}
+	
+	public OperationType getOperationType()
+	{
+		return type;
+	}
 }
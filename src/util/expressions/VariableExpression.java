@@ -0,0 +1,71 @@
+package util.expressions;
+
+import java.util.Objects;
+
+import exceptions.TypeException;
+import util.values.Value;
+
+/**
+ * A variable, or the last answer, substituted into an entry. Evaluates to the value it held when the entry was parsed.<br>
+ * Keeps variables apart from literals in the expression tree, so they are never folded into constants and compiled expressions may treat them as inputs.
+ * @author UFFR
+ *
+ */
+public class VariableExpression implements Expression
+{
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -2071458617304567290L;
+	private final String name;
+	private final Value<?> value;
+	
+	public VariableExpression(String name, Value<?> value)
+	{
+		this.name = name;
+		this.value = Objects.requireNonNull(value, "Null variable detected!");
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return Objects.hash(name, value);
+	}
+	
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (!(obj instanceof VariableExpression))
+			return false;
+		final VariableExpression other = (VariableExpression) obj;
+		return Objects.equals(name, other.name) && Objects.equals(value, other.value);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return value.toString();
+	}
+	
+	@Override
+	public Value<?> evaluate() throws UnsupportedOperationException, TypeException
+	{
+		return value;
+	}
+	
+	public String getName()
+	{
+		return name;
+	}
+	
+	/**
+	 * Get the value of the variable without evaluating it, the same as {@link #evaluate()}.
+	 * @return The value the variable held when it was substituted.
+	 */
+	public Value<?> getVariableValue()
+	{
+		return value;
+	}
+}
@@ -1,5 +1,7 @@
 package util.tokens;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.Sets;
@@ -13,6 +15,15 @@ public class SymbolToken implements Token
 {
 	/**{@code Set} for non-symbol type tokens, throws exception if one is passed to the constructor.**/
 	private static final Set<TokenType> NON_SYMBOL_SET = Sets.immutableEnumSet(TokenType.EXPRESSION, TokenType.NULL, TokenType.TEXT, TokenType.VALUE);
+	/**Shared instances for every symbol type, as symbol tokens hold no other state.**/
+	private static final Map<TokenType, SymbolToken> INSTANCES = new EnumMap<TokenType, SymbolToken>(TokenType.class);
+	
+	static
+	{
+		for (TokenType type : TokenType.values())
+			if (!NON_SYMBOL_SET.contains(type))
+				INSTANCES.put(type, new SymbolToken(type));
+	}
 	
 	private final TokenType tokenType;
 	/**
@@ -27,6 +38,20 @@ public class SymbolToken implements Token
 		this.tokenType = tokenType;
 	}
 
+	/**
+	 * Get the shared symbol token for the specified type.
+	 * @param tokenType The specific kind of symbol it represents.
+	 * @return The shared token.
+	 * @throws IllegalArgumentException If the {@code TokenType} passed is in {@link #NON_SYMBOL_SET}, thus it does not represent a symbol.
+	 */
+	public static SymbolToken of(TokenType tokenType) throws IllegalArgumentException
+	{
+		final SymbolToken token = INSTANCES.get(tokenType);
+		if (token == null)
+			throw new IllegalArgumentException(tokenType + " is not a symbol type!");
+		return token;
+	}
+	
 	@Override
 	public TokenType getType()
 	{
@@ -1,5 +1,7 @@
 package util.tokens;
 
+import util.Operation;
+
 /**
  * A token representing a non-string piece of text.<br>
  * May in turn represent a variable, function, etc.
@@ -9,9 +11,44 @@ package util.tokens;
 public class TextToken implements Token
 {
 	private final String text;
+	/**If the text is a reserved keyword, and thus cannot be a variable.**/
+	private final boolean reserved;
+	/**The function the text names, if any.**/
+	private final Operation function;
 	public TextToken(String text)
+	{
+		this(text, false, null);
+	}
+	
+	/**
+	 * Constructs a text token for a keyword recognized by the {@link Tokenizer}.
+	 * @param text The text of the keyword.
+	 * @param reserved If the text is reserved, and thus cannot be a variable.
+	 * @param function The function the text names, may be {@code null}.
+	 */
+	public TextToken(String text, boolean reserved, Operation function)
 	{
 		this.text = text;
+		this.reserved = reserved;
+		this.function = function;
+	}
+	
+	/**
+	 * If the text is a reserved keyword, and thus cannot be a variable.
+	 * @return True, if reserved, false if it may be a variable.
+	 */
+	public boolean isReserved()
+	{
+		return reserved;
+	}
+	
+	/**
+	 * Get the function this text names.
+	 * @return The function, or {@code null} if the text does not name one.
+	 */
+	public Operation getFunction()
+	{
+		return function;
 	}
 
 	@Override
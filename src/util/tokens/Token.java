@@ -39,17 +39,18 @@ public interface Token
 		
 		static
 		{
-			CHAR_MAP = ImmutableBiMap.of(
-					CLOSING_BRACE, ']',
-					CLOSING_BRACKET, '}',
-					CLOSING_PARENTHESIS, ')',
-					ECPHONEME, '!',
-					QUOTE, '"',
-					COMMA, ',',
-					OPEN_BRACE, '[',
-					OPEN_BRACKET, '{',
-					OPEN_PARENTHESIS, '(',
-					NEW_LINE, '\n');
+			CHAR_MAP = new ImmutableBiMap.Builder<TokenType, Character>()
+					.put(CLOSING_BRACE, ']')
+					.put(CLOSING_BRACKET, '}')
+					.put(CLOSING_PARENTHESIS, ')')
+					.put(ECPHONEME, '!')
+					.put(QUOTE, '"')
+					.put(PIPE, '|')
+					.put(COMMA, ',')
+					.put(OPEN_BRACE, '[')
+					.put(OPEN_BRACKET, '{')
+					.put(OPEN_PARENTHESIS, '(')
+					.put(NEW_LINE, '\n').buildOrThrow();
 		}
 		
 		public char getCharacter()
@@ -0,0 +1,260 @@
+package util.values;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import main.DoubleEvaluator;
+import main.Main;
+
+/**
+ * Element-wise operations on arrays of {@code double}s, shared by {@link DoubleListValue} and {@link DoubleMatrixValue}.<br>
+ * Every operation is a plain counted loop, a shape the JIT compiler turns into SIMD instructions where the hardware supports them.
+ * Operations that may lose precision return {@code null} whenever any element of the result cannot be represented faithfully by a {@code double},
+ * so the caller can fall back to {@code BigDecimal}s, which also fail the same way they usually would (ie for a division by zero).
+ * @author UFFR
+ *
+ */
+final class DoubleArrays
+{
+	private DoubleArrays()
+	{
+	}
+	
+	/**
+	 * Convert a number to a {@code double}, if it can be represented by one.
+	 * @param value The number to convert.
+	 * @return The {@code double}, or {@code NaN} if the number is too large or too small.
+	 */
+	static double toDouble(NumberValue value)
+	{
+		final double number = value.doubleValue();
+		return isValid(number) && (number != 0 || value.getValue().signum() == 0) ? number : Double.NaN;
+	}
+	
+	/**
+	 * Checks if a value is a number that can be represented by a {@code double}, see {@link #toDouble(NumberValue)}.
+	 * @param value The value to check.
+	 * @return True, if the value is such a number.
+	 */
+	static boolean isDouble(Value<?> value)
+	{
+		return value instanceof NumberValue && !Double.isNaN(toDouble((NumberValue) value));
+	}
+	
+	/**
+	 * Compare two arrays the same way their numbers compare as {@code BigDecimal}s, so {@code 0.0} and {@code -0.0} are equal, unlike {@link java.util.Arrays#equals(double[], double[])}.
+	 * {@code NaN} is only equal to itself, to keep equality reflexive.
+	 * @param left The left array.
+	 * @param right The right array.
+	 * @return True, if both arrays hold equal numbers.
+	 */
+	static boolean equals(double[] left, double[] right)
+	{
+		if (left.length != right.length)
+			return false;
+		for (int i = 0; i < left.length; i++)
+			if (left[i] != right[i] && Double.compare(left[i], right[i]) != 0)
+				return false;
+		return true;
+	}
+	
+	/**
+	 * Attempt to convert an array of values to {@code double}s.
+	 * @param values The values to convert.
+	 * @param result The array to write to, at least as long as the values.
+	 * @param offset The index of the result to start writing at.
+	 * @return True, if all values were numbers that a {@code double} can represent, otherwise the result is incomplete.
+	 */
+	static boolean toDoubles(Iterable<? extends Value<?>> values, double[] result, int offset)
+	{
+		for (Value<?> value : values)
+		{
+			if (!isDouble(value))
+				return false;
+			result[offset++] = toDouble((NumberValue) value);
+		}
+		return true;
+	}
+	
+	/**
+	 * Box a single number.
+	 * @param number The number to box.
+	 * @return The boxed number, rounded to the precision in use but never to more than {@link DoubleEvaluator#DOUBLE_PRECISION} digits.
+	 */
+	static NumberValue box(double number)
+	{
+		final MathContext mathContext = Main.getMathContext();
+		return new NumberValue(BigDecimal.valueOf(number).round(mathContext.getPrecision() > DoubleEvaluator.DOUBLE_PRECISION ? new MathContext(DoubleEvaluator.DOUBLE_PRECISION, mathContext.getRoundingMode()) : mathContext));
+	}
+	
+	/**
+	 * Checks if a {@code double} holds its result faithfully, meaning it is finite and did not lose digits to underflow.
+	 * @param number The number to check.
+	 * @return True, if the number is valid.
+	 */
+	static boolean isValid(double number)
+	{
+		return Double.isFinite(number) && (number == 0 || Math.abs(number) >= Double.MIN_NORMAL);
+	}
+	
+	/**
+	 * Checks if every number of a result is valid, see {@link #isValid(double)}.
+	 * @param result The result to check.
+	 * @return The result, or {@code null} if any number was not valid.
+	 */
+	static double[] check(double[] result)
+	{
+		for (double number : result)
+			if (!isValid(number))
+				return null;
+		return result;
+	}
+	
+	/**
+	 * Checks if a product or quotient underflowed to zero, which {@link #isValid(double)} cannot detect, as well as {@link #check(double[])}.
+	 * @param result The result to check.
+	 * @param left The left operands.
+	 * @param right The right operand, only checked if non-zero operands must never give zero.
+	 * @return The result, or {@code null} if any number was not valid.
+	 */
+	private static double[] checkProduct(double[] result, double[] left, double right)
+	{
+		if (right != 0)
+			for (int i = 0; i < result.length; i++)
+				if (result[i] == 0 && left[i] != 0)
+					return null;
+		return check(result);
+	}
+	
+	/**
+	 * Checks if a product or quotient underflowed to zero, see {@link #checkProduct(double[], double[], double)}.
+	 * @param result The result to check.
+	 * @param left The left operands.
+	 * @param right The right operands.
+	 * @return The result, or {@code null} if any number was not valid.
+	 */
+	private static double[] checkProduct(double[] result, double[] left, double[] right)
+	{
+		for (int i = 0; i < result.length; i++)
+			if (result[i] == 0 && left[i] != 0 && right[i] != 0)
+				return null;
+		return check(result);
+	}
+	
+	static double[] add(double[] left, double[] right)
+	{
+		final double[] result = new double[left.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = left[i] + right[i];
+		return check(result);
+	}
+	
+	static double[] add(double[] left, double right)
+	{
+		final double[] result = new double[left.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = left[i] + right;
+		return check(result);
+	}
+	
+	static double[] subtract(double[] left, double[] right)
+	{
+		final double[] result = new double[left.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = left[i] - right[i];
+		return check(result);
+	}
+	
+	static double[] subtract(double[] left, double right)
+	{
+		final double[] result = new double[left.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = left[i] - right;
+		return check(result);
+	}
+	
+	static double[] multiply(double[] left, double[] right)
+	{
+		final double[] result = new double[left.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = left[i] * right[i];
+		return checkProduct(result, left, right);
+	}
+	
+	static double[] multiply(double[] left, double right)
+	{
+		final double[] result = new double[left.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = left[i] * right;
+		return checkProduct(result, left, right);
+	}
+	
+	static double[] divide(double[] left, double[] right)
+	{
+		final double[] result = new double[left.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = left[i] / right[i];
+		return checkProduct(result, left, right);
+	}
+	
+	static double[] divide(double[] left, double right)
+	{
+		final double[] result = new double[left.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = left[i] / right;
+		return checkProduct(result, left, right);
+	}
+	
+	/**
+	 * The remainder of every number, which has the same sign as the dividend, as with {@code BigDecimal}.
+	 * @param left The dividends.
+	 * @param right The divisor.
+	 * @return The remainders, or {@code null} if any is not valid.
+	 */
+	static double[] remainder(double[] left, double right)
+	{
+		final double[] result = new double[left.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = left[i] % right;
+		return check(result);
+	}
+	
+	static double[] pow(double[] left, int exponent)
+	{
+		final double[] result = new double[left.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = Math.pow(left[i], exponent);
+		return checkProduct(result, left, 1);
+	}
+	
+	static double[] abs(double[] values)
+	{
+		final double[] result = new double[values.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = Math.abs(values[i]);
+		return result;
+	}
+	
+	static double[] negate(double[] values)
+	{
+		final double[] result = new double[values.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = -values[i];
+		return result;
+	}
+	
+	/**
+	 * Round every number to the precision in use, if it is lower than a {@code double} holds anyway.
+	 * @param values The numbers to round.
+	 * @return The rounded numbers, which are the same array if no rounding is necessary.
+	 */
+	static double[] round(double[] values)
+	{
+		if (Main.getPrecision() >= DoubleEvaluator.DOUBLE_PRECISION)
+			return values;
+		final double[] result = new double[values.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = box(values[i]).doubleValue();
+		return result;
+	}
+}
@@ -0,0 +1,201 @@
+package util.values;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+import exceptions.DimensionException;
+import exceptions.TypeException;
+import main.DoubleEvaluator;
+
+/**
+ * A {@link ListValue} of plain numbers, stored as a {@code double[]} instead of a {@link NumberValue} per element.<br>
+ * Element-wise operations with numbers and other lists of this type run directly on the arrays, see {@link DoubleArrays}.
+ * Whenever a result cannot be represented faithfully by {@code double}s, such as an overflow, an underflow, or a division by zero, the operation falls back to the boxed {@code BigDecimal} elements of {@code ListValue}.<br>
+ * Only created when the current {@link main.Context} evaluates on {@code double}s, see {@link DoubleEvaluator}.
+ * Elements are only boxed when accessed through the {@code List} interface, rounded to the precision in use but never to more than {@link DoubleEvaluator#DOUBLE_PRECISION} digits.
+ * @author UFFR
+ *
+ */
+public class DoubleListValue extends ListValue
+{
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -3361402911437306823L;
+	private final double[] values;
+	/**Cached hash, as computing it requires boxing every element.**/
+	private transient int hash;
+	
+	/**
+	 * Create a list around an array, which is not copied.
+	 * @param values The numbers of the list, must not be modified afterwards.
+	 */
+	public DoubleListValue(double[] values)
+	{
+		super(new Elements(values), false);
+		this.values = values;
+	}
+	
+	/**
+	 * Attempt to store a collection of values as {@code double}s.
+	 * @param values The values to store.
+	 * @return The new list, or {@code null} if any of the values is not a number a {@code double} can represent.
+	 */
+	public static DoubleListValue fromValues(Collection<Value<?>> values)
+	{
+		final double[] doubles = new double[values.size()];
+		return DoubleArrays.toDoubles(values, doubles, 0) ? new DoubleListValue(doubles) : null;
+	}
+	
+	/**
+	 * Get the right operands of an element-wise operation.
+	 * @param value The other value of the operation.
+	 * @return The array of another list of this type, of which the length must match.
+	 * @throws DimensionException If the length does not match.
+	 */
+	private double[] operands(DoubleListValue value) throws DimensionException
+	{
+		if (value.values.length != values.length)
+			throw new DimensionException("Dimension mismatch.");
+		return value.values;
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		if (hash == 0)
+			hash = super.hashCode();
+		return hash;
+	}
+	
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (obj instanceof DoubleListValue)
+			return DoubleArrays.equals(values, ((DoubleListValue) obj).values);
+		return super.equals(obj);
+	}
+	
+	@Override
+	public Value<?> addition(Value<?> augend) throws UnsupportedOperationException, TypeException
+	{
+		final double[] result;
+		if (augend instanceof DoubleListValue)
+			result = DoubleArrays.add(values, operands((DoubleListValue) augend));
+		else if (DoubleArrays.isDouble(augend))
+			result = DoubleArrays.add(values, DoubleArrays.toDouble((NumberValue) augend));
+		else
+			result = null;
+		return result == null ? super.addition(augend) : new DoubleListValue(result);
+	}
+	
+	@Override
+	public Value<?> subtraction(Value<?> subtrahend) throws UnsupportedOperationException, TypeException
+	{
+		final double[] result;
+		if (subtrahend instanceof DoubleListValue)
+			result = DoubleArrays.subtract(values, operands((DoubleListValue) subtrahend));
+		else if (DoubleArrays.isDouble(subtrahend))
+			result = DoubleArrays.subtract(values, DoubleArrays.toDouble((NumberValue) subtrahend));
+		else
+			result = null;
+		return result == null ? super.subtraction(subtrahend) : new DoubleListValue(result);
+	}
+	
+	@Override
+	public Value<?> multiplication(Value<?> multiplicand) throws UnsupportedOperationException, TypeException
+	{
+		final double[] result;
+		if (multiplicand instanceof DoubleListValue)
+			result = DoubleArrays.multiply(values, operands((DoubleListValue) multiplicand));
+		else if (DoubleArrays.isDouble(multiplicand))
+			result = DoubleArrays.multiply(values, DoubleArrays.toDouble((NumberValue) multiplicand));
+		else
+			result = null;
+		return result == null ? super.multiplication(multiplicand) : new DoubleListValue(result);
+	}
+	
+	@Override
+	public Value<?> division(Value<?> divisor) throws UnsupportedOperationException, TypeException
+	{
+		final double[] result;
+		if (divisor instanceof DoubleListValue)
+			result = DoubleArrays.divide(values, operands((DoubleListValue) divisor));
+		else if (DoubleArrays.isDouble(divisor))
+			result = DoubleArrays.divide(values, DoubleArrays.toDouble((NumberValue) divisor));
+		else
+			result = null;
+		return result == null ? super.division(divisor) : new DoubleListValue(result);
+	}
+	
+	@Override
+	public Value<?> exponentiate(int exponent) throws UnsupportedOperationException, TypeException
+	{
+		final double[] result = DoubleArrays.pow(values, exponent);
+		return result == null ? super.exponentiate(exponent) : new DoubleListValue(result);
+	}
+	
+	@Override
+	public Value<?> modulo(Value<?> divisor) throws UnsupportedOperationException, TypeException
+	{
+		final double[] result = DoubleArrays.isDouble(divisor) ? DoubleArrays.remainder(values, DoubleArrays.toDouble((NumberValue) divisor)) : null;
+		return result == null ? super.modulo(divisor) : new DoubleListValue(result);
+	}
+	
+	@Override
+	public Value<?> abs() throws UnsupportedOperationException, TypeException
+	{
+		return new DoubleListValue(DoubleArrays.abs(values));
+	}
+	
+	@Override
+	public Value<?> negate() throws UnsupportedOperationException, TypeException
+	{
+		return new DoubleListValue(DoubleArrays.negate(values));
+	}
+	
+	@Override
+	public Value<?> round() throws UnsupportedOperationException, TypeException
+	{
+		final double[] result = DoubleArrays.round(values);
+		return result == values ? this : new DoubleListValue(result);
+	}
+	
+	/**
+	 * Retrieve the underlying array, which must not be modified.
+	 * @return The numbers of the list.
+	 */
+	public double[] getDoubles()
+	{
+		return values;
+	}
+	
+	/**
+	 * Read-only view of the array as boxed numbers, which is what the {@code List} interface of {@link ListValue} works on.
+	 * @author UFFR
+	 *
+	 */
+	private static class Elements extends AbstractList<Value<?>> implements RandomAccess, Serializable
+	{
+		private static final long serialVersionUID = 5264411508911740625L;
+		private final double[] values;
+		public Elements(double[] values)
+		{
+			this.values = values;
+		}
+		
+		@Override
+		public Value<?> get(int index)
+		{
+			return DoubleArrays.box(values[index]);
+		}
+		
+		@Override
+		public int size()
+		{
+			return values.length;
+		}
+	}
+}
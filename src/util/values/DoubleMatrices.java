@@ -0,0 +1,210 @@
+package util.values;
+
+import util.Parallel;
+
+/**
+ * Linear algebra on dense, row-major matrices of {@code double}s, used by {@link DoubleMatrixValue}.<br>
+ * The matrix product is a cache-blocked GEMM: panels of the right matrix sized for the last level cache and blocks of the left matrix sized for the second level cache
+ * are packed into contiguous arrays, which a micro-kernel then multiplies in tiles of {@link #MR}x{@link #NR}, holding the whole tile in registers.<br>
+ * Large products are split into the blocks of the left matrix, which are multiplied on multiple threads.
+ * Every cell of a product is always summed in the same order regardless, so results are reproducible.
+ * @author UFFR
+ *
+ */
+final class DoubleMatrices
+{
+	/**Rows and columns of a tile of the micro-kernel, all 16 sums of a tile fit in the registers of common hardware.**/
+	private static final int MR = 4, NR = 4;
+	/**Depth of a block, the packed panels of both matrices share it.**/
+	private static final int KC = 256;
+	/**Rows of a packed block of the left matrix, which should stay in the second level cache.**/
+	private static final int MC = 128;
+	/**Columns of a packed panel of the right matrix, which should stay in the last level cache.**/
+	private static final int NC = 2048;
+	/**Multiplications and additions of the micro-kernel that cost about as much as a single {@code BigDecimal} operation, see {@link Parallel}.**/
+	private static final int FLOPS_PER_COST = 128;
+	/**Side of the square tiles a matrix is transposed in.**/
+	private static final int TRANSPOSE_TILE = 32;
+	
+	private DoubleMatrices()
+	{
+	}
+	
+	/**
+	 * Multiply two matrices.
+	 * @param left The left matrix, with {@code m} rows and {@code k} columns.
+	 * @param right The right matrix, with {@code k} rows and {@code n} columns.
+	 * @param m Rows of the left matrix and the product.
+	 * @param n Columns of the right matrix and the product.
+	 * @param k Columns of the left matrix and rows of the right one.
+	 * @return The product, with {@code m} rows and {@code n} columns.
+	 */
+	static double[] multiply(double[] left, double[] right, int m, int n, int k)
+	{
+		final double[] product = new double[m * n];
+		final double[] packedRight = new double[roundUp(Math.min(NC, n), NR) * Math.min(KC, k)];
+		final int blocks = (m + MC - 1) / MC;
+		for (int jc = 0; jc < n; jc += NC)
+		{
+			final int jcFinal = jc, nc = Math.min(NC, n - jc);
+			for (int pc = 0; pc < k; pc += KC)
+			{
+				final int pcFinal = pc, kc = Math.min(KC, k - pc);
+				packRight(right, n, pc, jc, kc, nc, packedRight);
+				// Blocks of the left matrix write to separate rows of the product, so they are independent of each other
+				Parallel.forEachRow(blocks, (long) MC * nc * kc / FLOPS_PER_COST, block ->
+				{
+					final int ic = block * MC, mc = Math.min(MC, m - ic);
+					final double[] packedLeft = new double[roundUp(mc, MR) * kc];
+					packLeft(left, k, ic, pcFinal, mc, kc, packedLeft);
+					for (int jr = 0; jr < nc; jr += NR)
+						for (int ir = 0; ir < mc; ir += MR)
+							kernel(kc, packedLeft, ir * kc, packedRight, jr * kc, product, (ic + ir) * n + jcFinal + jr, n, Math.min(MR, mc - ir), Math.min(NR, nc - jr));
+				});
+			}
+		}
+		return product;
+	}
+	
+	/**
+	 * Pack a block of the left matrix into strips of {@link #MR} rows, stored column by column. Rows past the end of the matrix are padded with zeros.
+	 * @param left The left matrix.
+	 * @param k Columns of the left matrix.
+	 * @param ic First row of the block.
+	 * @param pc First column of the block.
+	 * @param mc Rows of the block.
+	 * @param kc Columns of the block.
+	 * @param packed The array to pack into.
+	 */
+	private static void packLeft(double[] left, int k, int ic, int pc, int mc, int kc, double[] packed)
+	{
+		int index = 0;
+		for (int ir = 0; ir < mc; ir += MR)
+			for (int p = 0; p < kc; p++)
+				for (int i = 0; i < MR; i++)
+					packed[index++] = ir + i < mc ? left[(ic + ir + i) * k + pc + p] : 0;
+	}
+	
+	/**
+	 * Pack a panel of the right matrix into strips of {@link #NR} columns, stored row by row. Columns past the end of the matrix are padded with zeros.
+	 * @param right The right matrix.
+	 * @param n Columns of the right matrix.
+	 * @param pc First row of the panel.
+	 * @param jc First column of the panel.
+	 * @param kc Rows of the panel.
+	 * @param nc Columns of the panel.
+	 * @param packed The array to pack into.
+	 */
+	private static void packRight(double[] right, int n, int pc, int jc, int kc, int nc, double[] packed)
+	{
+		int index = 0;
+		for (int jr = 0; jr < nc; jr += NR)
+			for (int p = 0; p < kc; p++)
+			{
+				final int offset = (pc + p) * n + jc + jr;
+				for (int j = 0; j < NR; j++)
+					packed[index++] = jr + j < nc ? right[offset + j] : 0;
+			}
+	}
+	
+	/**
+	 * Multiply a strip of the packed left block with a strip of the packed right panel and add the tile to the product.
+	 * @param kc Depth of the strips.
+	 * @param left The packed left block.
+	 * @param leftOffset Start of the left strip.
+	 * @param right The packed right panel.
+	 * @param rightOffset Start of the right strip.
+	 * @param product The product.
+	 * @param productOffset Index of the top left cell of the tile in the product.
+	 * @param n Columns of the product.
+	 * @param rows Rows of the tile that lie within the product.
+	 * @param columns Columns of the tile that lie within the product.
+	 */
+	private static void kernel(int kc, double[] left, int leftOffset, double[] right, int rightOffset, double[] product, int productOffset, int n, int rows, int columns)
+	{
+		double c00 = 0, c01 = 0, c02 = 0, c03 = 0,
+				c10 = 0, c11 = 0, c12 = 0, c13 = 0,
+				c20 = 0, c21 = 0, c22 = 0, c23 = 0,
+				c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+		for (int p = 0, a = leftOffset, b = rightOffset; p < kc; p++, a += MR, b += NR)
+		{
+			final double a0 = left[a], a1 = left[a + 1], a2 = left[a + 2], a3 = left[a + 3];
+			final double b0 = right[b], b1 = right[b + 1], b2 = right[b + 2], b3 = right[b + 3];
+			c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+			c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+			c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+			c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+		}
+		if (rows == MR && columns == NR)
+		{
+			int c = productOffset;
+			product[c] += c00; product[c + 1] += c01; product[c + 2] += c02; product[c + 3] += c03;
+			c += n;
+			product[c] += c10; product[c + 1] += c11; product[c + 2] += c12; product[c + 3] += c13;
+			c += n;
+			product[c] += c20; product[c + 1] += c21; product[c + 2] += c22; product[c + 3] += c23;
+			c += n;
+			product[c] += c30; product[c + 1] += c31; product[c + 2] += c32; product[c + 3] += c33;
+			return;
+		}
+		// Tiles on the edges of the product only write the cells that exist
+		final double[] tile = {c00, c01, c02, c03, c10, c11, c12, c13, c20, c21, c22, c23, c30, c31, c32, c33};
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < columns; j++)
+				product[productOffset + i * n + j] += tile[i * NR + j];
+	}
+	
+	/**
+	 * Multiply a matrix with a column vector.
+	 * @param matrix The matrix.
+	 * @param vector The vector, as long as the matrix has columns.
+	 * @param rows Rows of the matrix.
+	 * @param columns Columns of the matrix.
+	 * @return The product, as long as the matrix has rows.
+	 */
+	static double[] multiplyVector(double[] matrix, double[] vector, int rows, int columns)
+	{
+		final double[] product = new double[rows];
+		for (int row = 0; row < rows; row++)
+		{
+			final int offset = row * columns;
+			double sum = 0;
+			for (int column = 0; column < columns; column++)
+				sum += matrix[offset + column] * vector[column];
+			product[row] = sum;
+		}
+		return product;
+	}
+	
+	/**
+	 * Transpose a matrix, in square tiles so both the reads and the writes stay within few cache lines.
+	 * @param matrix The matrix.
+	 * @param rows Rows of the matrix.
+	 * @param columns Columns of the matrix.
+	 * @return The transposed matrix, with {@code columns} rows and {@code rows} columns.
+	 */
+	static double[] transpose(double[] matrix, int rows, int columns)
+	{
+		final double[] transposed = new double[matrix.length];
+		for (int rowTile = 0; rowTile < rows; rowTile += TRANSPOSE_TILE)
+			for (int columnTile = 0; columnTile < columns; columnTile += TRANSPOSE_TILE)
+			{
+				final int rowEnd = Math.min(rowTile + TRANSPOSE_TILE, rows), columnEnd = Math.min(columnTile + TRANSPOSE_TILE, columns);
+				for (int row = rowTile; row < rowEnd; row++)
+					for (int column = columnTile; column < columnEnd; column++)
+						transposed[column * rows + row] = matrix[row * columns + column];
+			}
+		return transposed;
+	}
+	
+	/**
+	 * Round a number up to a multiple of another.
+	 * @param number The number to round.
+	 * @param multiple The multiple.
+	 * @return The smallest multiple of {@code multiple} that is at least {@code number}.
+	 */
+	private static int roundUp(int number, int multiple)
+	{
+		return (number + multiple - 1) / multiple * multiple;
+	}
+}
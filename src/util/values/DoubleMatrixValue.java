@@ -0,0 +1,254 @@
+package util.values;
+
+import java.util.Arrays;
+
+import exceptions.DimensionException;
+import exceptions.TypeException;
+import main.DoubleEvaluator;
+
+/**
+ * A {@link MatrixValue} of plain numbers, stored densely as a single row-major {@code double[]} instead of a {@link NumberValue} per cell.<br>
+ * Cell-wise operations with numbers and other matrices of this type run directly on the arrays, see {@link DoubleArrays},
+ * and the matrix product, matrix-vector product, and transposition use {@link DoubleMatrices}.
+ * Whenever a result cannot be represented faithfully by {@code double}s, the operation falls back to the boxed {@code BigDecimal} cells of {@code MatrixValue}.<br>
+ * Only created when the current {@link main.Context} evaluates on {@code double}s, see {@link DoubleEvaluator}.
+ * Cells are only boxed once needed, rounded to the precision in use but never to more than {@link DoubleEvaluator#DOUBLE_PRECISION} digits.
+ * @author UFFR
+ *
+ */
+public class DoubleMatrixValue extends MatrixValue
+{
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 8817730623870454916L;
+	private final double[] values;
+	/**Cached hash, as computing it requires boxing every cell.**/
+	private transient int hash;
+	
+	/**
+	 * Create a matrix around an array, which is not copied.
+	 * @param rows The amount of rows.
+	 * @param columns The amount of columns.
+	 * @param values The cells of the matrix, row by row, must not be modified afterwards.
+	 */
+	public DoubleMatrixValue(int rows, int columns, double[] values)
+	{
+		super(rows, columns, false);
+		if (values.length != rows * columns)
+			throw new DimensionException("Dimension mismatch on matrix construction.");
+		this.values = values;
+	}
+	
+	/**
+	 * Attempt to store the cells of a matrix as {@code double}s.
+	 * @param matrix The cells to store, every row must have the same length.
+	 * @return The new matrix, or {@code null} if any of the cells is not a number a {@code double} can represent.
+	 */
+	public static DoubleMatrixValue fromValues(Value<?>[][] matrix)
+	{
+		final int rows = matrix.length, columns = matrix[0].length;
+		final double[] values = new double[rows * columns];
+		for (int row = 0; row < rows; row++)
+			if (!DoubleArrays.toDoubles(Arrays.asList(matrix[row]), values, row * columns))
+				return null;
+		return new DoubleMatrixValue(rows, columns, values);
+	}
+	
+	@Override
+	protected Value<?>[][] box()
+	{
+		final Value<?>[][] matrix = new Value[getRows()][getColumns()];
+		for (int row = 0; row < getRows(); row++)
+			for (int column = 0; column < getColumns(); column++)
+				matrix[row][column] = DoubleArrays.box(values[row * getColumns() + column]);
+		return matrix;
+	}
+	
+	/**
+	 * Get the right operands of a cell-wise operation.
+	 * @param value The other value of the operation.
+	 * @return The array of another matrix of this type, of which the dimensions must match.
+	 * @throws DimensionException If the dimensions do not match.
+	 */
+	private double[] operands(DoubleMatrixValue value) throws DimensionException
+	{
+		if (value.getRows() != getRows() || value.getColumns() != getColumns())
+			throw new DimensionException("Dimension mismatch.");
+		return value.values;
+	}
+	
+	/**
+	 * Wrap the result of an operation.
+	 * @param result The cells of the result.
+	 * @return A matrix of the same dimensions as this one.
+	 */
+	private DoubleMatrixValue wrap(double[] result)
+	{
+		return new DoubleMatrixValue(getRows(), getColumns(), result);
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		if (hash == 0)
+			hash = Arrays.deepHashCode(box());
+		return hash;
+	}
+	
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (obj instanceof DoubleMatrixValue)
+		{
+			final DoubleMatrixValue other = (DoubleMatrixValue) obj;
+			return getRows() == other.getRows() && getColumns() == other.getColumns() && DoubleArrays.equals(values, other.values);
+		}
+		return super.equals(obj);
+	}
+	
+	@Override
+	public String toString()
+	{
+		// Built directly, so printing does not keep every cell boxed
+		final StringBuilder builder = new StringBuilder(values.length * 4).append('[');
+		for (int row = 0; row < getRows(); row++)
+		{
+			if (row > 0)
+				builder.append(", ");
+			builder.append('[');
+			for (int column = 0; column < getColumns(); column++)
+			{
+				if (column > 0)
+					builder.append(", ");
+				builder.append(DoubleArrays.box(values[row * getColumns() + column]));
+			}
+			builder.append(']');
+		}
+		return builder.append(']').toString();
+	}
+	
+	@Override
+	public Value<?> addition(Value<?> augend) throws UnsupportedOperationException, TypeException
+	{
+		final double[] result;
+		if (augend instanceof DoubleMatrixValue)
+			result = DoubleArrays.add(values, operands((DoubleMatrixValue) augend));
+		else if (DoubleArrays.isDouble(augend))
+			result = DoubleArrays.add(values, DoubleArrays.toDouble((NumberValue) augend));
+		else
+			result = null;
+		return result == null ? super.addition(augend) : wrap(result);
+	}
+	
+	@Override
+	public Value<?> subtraction(Value<?> subtrahend) throws UnsupportedOperationException, TypeException
+	{
+		final double[] result;
+		if (subtrahend instanceof DoubleMatrixValue)
+			result = DoubleArrays.subtract(values, operands((DoubleMatrixValue) subtrahend));
+		else if (DoubleArrays.isDouble(subtrahend))
+			result = DoubleArrays.subtract(values, DoubleArrays.toDouble((NumberValue) subtrahend));
+		else
+			result = null;
+		return result == null ? super.subtraction(subtrahend) : wrap(result);
+	}
+	
+	@Override
+	public Value<?> multiplication(Value<?> multiplicand) throws UnsupportedOperationException, TypeException
+	{
+		final double[] result;
+		if (multiplicand instanceof DoubleMatrixValue)
+			result = DoubleArrays.multiply(values, operands((DoubleMatrixValue) multiplicand));
+		else if (DoubleArrays.isDouble(multiplicand))
+			result = DoubleArrays.multiply(values, DoubleArrays.toDouble((NumberValue) multiplicand));
+		else
+			result = null;
+		return result == null ? super.multiplication(multiplicand) : wrap(result);
+	}
+	
+	@Override
+	public Value<?> division(Value<?> divisor) throws UnsupportedOperationException, TypeException
+	{
+		final double[] result;
+		if (divisor instanceof DoubleMatrixValue)
+			result = DoubleArrays.divide(values, operands((DoubleMatrixValue) divisor));
+		else if (DoubleArrays.isDouble(divisor))
+			result = DoubleArrays.divide(values, DoubleArrays.toDouble((NumberValue) divisor));
+		else
+			result = null;
+		return result == null ? super.division(divisor) : wrap(result);
+	}
+	
+	@Override
+	public Value<?> exponentiate(int exponent) throws UnsupportedOperationException, TypeException
+	{
+		final double[] result = DoubleArrays.pow(values, exponent);
+		return result == null ? super.exponentiate(exponent) : wrap(result);
+	}
+	
+	@Override
+	public Value<?> modulo(Value<?> divisor) throws UnsupportedOperationException, TypeException
+	{
+		final double[] result = DoubleArrays.isDouble(divisor) ? DoubleArrays.remainder(values, DoubleArrays.toDouble((NumberValue) divisor)) : null;
+		return result == null ? super.modulo(divisor) : wrap(result);
+	}
+	
+	@Override
+	public Value<?> abs() throws UnsupportedOperationException, TypeException
+	{
+		return wrap(DoubleArrays.abs(values));
+	}
+	
+	@Override
+	public Value<?> negate() throws UnsupportedOperationException, TypeException
+	{
+		return wrap(DoubleArrays.negate(values));
+	}
+	
+	@Override
+	public Value<?> round() throws UnsupportedOperationException, TypeException
+	{
+		final double[] result = DoubleArrays.round(values);
+		return result == values ? this : wrap(result);
+	}
+	
+	@Override
+	public MatrixValue matrixProduct(MatrixValue other) throws DimensionException, TypeException
+	{
+		if (!(other instanceof DoubleMatrixValue) || getColumns() != other.getRows())
+			return super.matrixProduct(other);
+		final double[] result = DoubleArrays.check(DoubleMatrices.multiply(values, ((DoubleMatrixValue) other).values, getRows(), other.getColumns(), getColumns()));
+		return result == null ? super.matrixProduct(other) : new DoubleMatrixValue(getRows(), other.getColumns(), result);
+	}
+	
+	@Override
+	public ListValue vectorProduct(ListValue vector) throws DimensionException, TypeException
+	{
+		if (!(vector instanceof DoubleListValue) || getColumns() != vector.size())
+			return super.vectorProduct(vector);
+		final double[] result = DoubleArrays.check(DoubleMatrices.multiplyVector(values, ((DoubleListValue) vector).getDoubles(), getRows(), getColumns()));
+		return result == null ? super.vectorProduct(vector) : new DoubleListValue(result);
+	}
+	
+	@Override
+	public MatrixValue transpose()
+	{
+		return new DoubleMatrixValue(getColumns(), getRows(), DoubleMatrices.transpose(values, getRows(), getColumns()));
+	}
+	
+	@Override
+	public Value<?> getValue(int row, int column)
+	{
+		return DoubleArrays.box(values[row * getColumns() + column]);
+	}
+	
+	/**
+	 * Retrieve the underlying array, which must not be modified.
+	 * @return The cells of the matrix, row by row.
+	 */
+	public double[] getDoubles()
+	{
+		return values;
+	}
+}
@@ -0,0 +1,460 @@
+package util.values;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+
+import exceptions.DimensionException;
+import exceptions.TypeException;
+import main.Main;
+import util.Parallel;
+
+/**
+ * The LU decomposition of a square matrix with partial pivoting, such that the rows of the matrix permuted by the pivots equal a lower triangular matrix with ones on its diagonal
+ * times an upper triangular matrix. Both triangles are stored in a single matrix.<br>
+ * Once decomposed, the determinant, the inverse, and the solutions of linear systems are cheap to calculate. Decompositions are kept by their matrix, see {@link MatrixValue#getDecomposition()}.<br>
+ * Matrices of {@code BigDecimal}s are decomposed at the precision in use. Matrices of {@code double}s ({@link DoubleMatrixValue}) are decomposed on {@code double}s,
+ * falling back to {@code BigDecimal}s if a result cannot be represented faithfully.<br>
+ * Each step of the elimination updates the remaining rows independently of each other, so large matrices update them on multiple threads, see {@link Parallel}.
+ * @author UFFR
+ *
+ */
+public abstract class LUDecomposition
+{
+	/**Rows and columns of the matrix.**/
+	protected final int size;
+	/**The {@code MathContext} the matrix was decomposed under.**/
+	protected final MathContext mathContext;
+	/**The row of the matrix each row of the decomposition came from.**/
+	protected final int[] pivots;
+	/**The sign of the permutation, negated with each row swap.**/
+	protected int sign = 1;
+	/**If any pivot was zero, within the rounding error of the precision, in which case the matrix has no inverse.**/
+	protected boolean singular;
+	
+	protected LUDecomposition(int size, MathContext mathContext)
+	{
+		this.size = size;
+		this.mathContext = mathContext;
+		pivots = new int[size];
+		for (int i = 0; i < size; i++)
+			pivots[i] = i;
+	}
+	
+	/**
+	 * Decompose a matrix under the current {@code MathContext}.
+	 * @param matrix The matrix to decompose.
+	 * @return The decomposition.
+	 * @throws DimensionException If the matrix is not square.
+	 * @throws TypeException If any of the cells is not a number.
+	 */
+	public static LUDecomposition decompose(MatrixValue matrix) throws DimensionException, TypeException
+	{
+		if (matrix.getRows() != matrix.getColumns())
+			throw new DimensionException("Matrix must be square, but is " + matrix.getRows() + "x" + matrix.getColumns() + '.');
+		return matrix instanceof DoubleMatrixValue ? new DoubleLU((DoubleMatrixValue) matrix, Main.getMathContext()) : new DecimalLU(matrix, Main.getMathContext());
+	}
+	
+	/**
+	 * Calculate the determinant of the matrix.
+	 * @return The determinant, zero if the matrix is singular.
+	 */
+	public abstract Value<?> determinant();
+	
+	/**
+	 * Solve the linear system of the matrix times a vector.
+	 * @param vector The right hand side, as long as the matrix is.
+	 * @return The vector that the matrix multiplies to the right hand side.
+	 * @throws DimensionException If the length of the vector does not match.
+	 * @throws TypeException If any of the values is not a number.
+	 * @throws ArithmeticException If the matrix is singular.
+	 */
+	public abstract ListValue solve(ListValue vector) throws DimensionException, TypeException, ArithmeticException;
+	
+	/**
+	 * Solve the linear systems of the matrix times each column of another matrix.
+	 * @param other The right hand sides, with as many rows as the matrix.
+	 * @return The matrix that the matrix multiplies to the right hand sides.
+	 * @throws DimensionException If the amount of rows does not match.
+	 * @throws TypeException If any of the values is not a number.
+	 * @throws ArithmeticException If the matrix is singular.
+	 */
+	public abstract MatrixValue solve(MatrixValue other) throws DimensionException, TypeException, ArithmeticException;
+	
+	/**
+	 * Calculate the inverse of the matrix.
+	 * @return The inverse.
+	 * @throws ArithmeticException If the matrix is singular.
+	 */
+	public abstract MatrixValue inverse() throws ArithmeticException;
+	
+	public MathContext getMathContext()
+	{
+		return mathContext;
+	}
+	
+	public boolean isSingular()
+	{
+		return singular;
+	}
+	
+	/**
+	 * Checks that systems can be solved.
+	 * @param rows The length of the right hand sides.
+	 * @throws DimensionException If the length does not match the matrix.
+	 * @throws ArithmeticException If the matrix is singular.
+	 */
+	protected void checkSolvable(int rows) throws DimensionException, ArithmeticException
+	{
+		if (rows != size)
+			throw new DimensionException("Dimension mismatch, a " + size + "x" + size + " system cannot be solved for " + rows + " rows.");
+		if (singular)
+			throw new ArithmeticException("Matrix is singular.");
+	}
+	
+	/**
+	 * Decomposition on {@code BigDecimal}s, carrying a few guard digits beyond the {@code MathContext} through every operation.
+	 * @author UFFR
+	 *
+	 */
+	private static class DecimalLU extends LUDecomposition
+	{
+		/**Digits carried beyond the precision in use while decomposing and solving, so rounding errors do not show in the results.**/
+		private static final int GUARD_DIGITS = 8;
+		private final BigDecimal[][] lu;
+		/**The {@code MathContext} with {@link #GUARD_DIGITS}, results are only rounded to the one in use at the end.**/
+		private final MathContext working;
+		public DecimalLU(MatrixValue matrix, MathContext mathContext)
+		{
+			super(matrix.getRows(), mathContext);
+			working = new MathContext(mathContext.getPrecision() + GUARD_DIGITS, mathContext.getRoundingMode());
+			lu = new BigDecimal[size][size];
+			BigDecimal scale = BigDecimal.ZERO;
+			for (int row = 0; row < size; row++)
+				for (int column = 0; column < size; column++)
+				{
+					lu[row][column] = toDecimal(matrix.getValue(row, column));
+					scale = scale.max(lu[row][column].abs());
+				}
+			factor(scale.multiply(BigDecimal.valueOf(size)).scaleByPowerOfTen(-mathContext.getPrecision()));
+		}
+		
+		private static BigDecimal toDecimal(Value<?> value) throws TypeException
+		{
+			if (!(value instanceof NumberValue))
+				throw new TypeException("Value " + value + " cannot be used in this context.");
+			return ((NumberValue) value).getValue();
+		}
+		
+		/**
+		 * Decompose the matrix in place.
+		 * @param tolerance The largest pivot that is considered zero, as it may be left over from rounding errors only.
+		 */
+		private void factor(BigDecimal tolerance)
+		{
+			for (int k = 0; k < size; k++)
+			{
+				int pivot = k;
+				BigDecimal max = lu[k][k].abs();
+				for (int row = k + 1; row < size; row++)
+					if (lu[row][k].abs().compareTo(max) > 0)
+					{
+						pivot = row;
+						max = lu[row][k].abs();
+					}
+				if (max.compareTo(tolerance) <= 0)
+				{
+					singular = true;
+					continue;
+				}
+				if (pivot != k)
+				{
+					final BigDecimal[] swap = lu[k];
+					lu[k] = lu[pivot];
+					lu[pivot] = swap;
+					final int swapIndex = pivots[k];
+					pivots[k] = pivots[pivot];
+					pivots[pivot] = swapIndex;
+					sign = -sign;
+				}
+				final int step = k;
+				final BigDecimal[] pivotRow = lu[k];
+				Parallel.forEachRow(size - k - 1, Parallel.arithmeticCost(working.getPrecision()) * 2 * (size - k), index ->
+				{
+					final BigDecimal[] row = lu[step + 1 + index];
+					if (row[step].signum() == 0)
+						return;
+					final BigDecimal factor = row[step].divide(pivotRow[step], working);
+					row[step] = factor;
+					for (int column = step + 1; column < size; column++)
+						row[column] = row[column].subtract(factor.multiply(pivotRow[column], working), working);
+				});
+			}
+		}
+		
+		/**
+		 * Solve a single system by forward and back substitution.
+		 * @param vector The right hand side, in the original order of rows.
+		 * @return The solution.
+		 */
+		private BigDecimal[] solve(BigDecimal[] vector)
+		{
+			final BigDecimal[] solution = new BigDecimal[size];
+			for (int row = 0; row < size; row++)
+			{
+				BigDecimal sum = vector[pivots[row]];
+				for (int column = 0; column < row; column++)
+					sum = sum.subtract(lu[row][column].multiply(solution[column], working), working);
+				solution[row] = sum;
+			}
+			for (int row = size - 1; row >= 0; row--)
+			{
+				BigDecimal sum = solution[row];
+				for (int column = row + 1; column < size; column++)
+					sum = sum.subtract(lu[row][column].multiply(solution[column], working), working);
+				solution[row] = sum.divide(lu[row][row], working);
+			}
+			return solution;
+		}
+		
+		@Override
+		public Value<?> determinant()
+		{
+			if (singular)
+				return new NumberValue(BigDecimal.ZERO);
+			BigDecimal determinant = BigDecimal.valueOf(sign);
+			for (int i = 0; i < size; i++)
+				determinant = determinant.multiply(lu[i][i], working);
+			return new NumberValue(determinant.round(mathContext));
+		}
+		
+		@Override
+		public ListValue solve(ListValue vector) throws DimensionException, TypeException, ArithmeticException
+		{
+			checkSolvable(vector.size());
+			final BigDecimal[] values = new BigDecimal[size];
+			for (int i = 0; i < size; i++)
+				values[i] = toDecimal(vector.get(i));
+			final List<Value<?>> solution = new ArrayList<Value<?>>(size);
+			for (BigDecimal value : solve(values))
+				solution.add(new NumberValue(value.round(mathContext)));
+			return new ListValue(solution);
+		}
+		
+		@Override
+		public MatrixValue solve(MatrixValue other) throws DimensionException, TypeException, ArithmeticException
+		{
+			checkSolvable(other.getRows());
+			final BigDecimal[][] columns = new BigDecimal[other.getColumns()][size];
+			for (int row = 0; row < size; row++)
+				for (int column = 0; column < other.getColumns(); column++)
+					columns[column][row] = toDecimal(other.getValue(row, column));
+			return solveColumns(columns);
+		}
+		
+		@Override
+		public MatrixValue inverse() throws ArithmeticException
+		{
+			checkSolvable(size);
+			final BigDecimal[][] columns = new BigDecimal[size][size];
+			for (int column = 0; column < size; column++)
+				for (int row = 0; row < size; row++)
+					columns[column][row] = row == column ? BigDecimal.ONE : BigDecimal.ZERO;
+			return solveColumns(columns);
+		}
+		
+		/**
+		 * Solve a system for each column, on multiple threads if there are many.
+		 * @param columns The right hand sides, by column.
+		 * @return The solutions, as the columns of a matrix.
+		 */
+		private MatrixValue solveColumns(BigDecimal[][] columns)
+		{
+			final Value<?>[][] matrix = new Value[size][columns.length];
+			Parallel.forEachRow(columns.length, Parallel.arithmeticCost(working.getPrecision()) * size * size * 2, column ->
+			{
+				final BigDecimal[] solution = solve(columns[column]);
+				for (int row = 0; row < size; row++)
+					matrix[row][column] = new NumberValue(solution[row].round(mathContext));
+			});
+			return new MatrixValue(matrix);
+		}
+	}
+	
+	/**
+	 * Decomposition on {@code double}s, which falls back to a {@link DecimalLU} of the same matrix for any result that cannot be represented faithfully.
+	 * Matrices that appear singular on {@code double}s are left to the {@code DecimalLU} entirely, which may still be able to tell them apart at a higher precision.
+	 * @author UFFR
+	 *
+	 */
+	private static class DoubleLU extends LUDecomposition
+	{
+		/**Multiplications and subtractions that cost about as much as a single {@code BigDecimal} operation, see {@link Parallel}.**/
+		private static final int FLOPS_PER_COST = 64;
+		private final DoubleMatrixValue matrix;
+		/**Both triangles, row by row.**/
+		private final double[] lu;
+		/**The decomposition on {@code BigDecimal}s, only created once needed.**/
+		private volatile DecimalLU fallback;
+		public DoubleLU(DoubleMatrixValue matrix, MathContext mathContext)
+		{
+			super(matrix.getRows(), mathContext);
+			this.matrix = matrix;
+			lu = matrix.getDoubles().clone();
+			double scale = 0;
+			for (double value : lu)
+				scale = Math.max(scale, Math.abs(value));
+			factor(scale * size * Math.ulp(1d));
+		}
+		
+		/**
+		 * Decompose the matrix in place.
+		 * @param tolerance The largest pivot that is considered zero, as it may be left over from rounding errors only.
+		 */
+		private void factor(double tolerance)
+		{
+			final double[] swap = new double[size];
+			for (int k = 0; k < size; k++)
+			{
+				int pivot = k;
+				double max = Math.abs(lu[k * size + k]);
+				for (int row = k + 1; row < size; row++)
+					if (Math.abs(lu[row * size + k]) > max)
+					{
+						pivot = row;
+						max = Math.abs(lu[row * size + k]);
+					}
+				if (max <= tolerance)
+				{
+					singular = true;
+					continue;
+				}
+				if (pivot != k)
+				{
+					System.arraycopy(lu, k * size, swap, 0, size);
+					System.arraycopy(lu, pivot * size, lu, k * size, size);
+					System.arraycopy(swap, 0, lu, pivot * size, size);
+					final int swapIndex = pivots[k];
+					pivots[k] = pivots[pivot];
+					pivots[pivot] = swapIndex;
+					sign = -sign;
+				}
+				final int step = k, pivotOffset = k * size;
+				final double pivotValue = lu[pivotOffset + k];
+				Parallel.forEachRow(size - k - 1, 1 + 2 * (size - k) / FLOPS_PER_COST, index ->
+				{
+					final int offset = (step + 1 + index) * size;
+					if (lu[offset + step] == 0)
+						return;
+					final double factor = lu[offset + step] / pivotValue;
+					lu[offset + step] = factor;
+					for (int column = step + 1; column < size; column++)
+						lu[offset + column] -= factor * lu[pivotOffset + column];
+				});
+			}
+		}
+		
+		/**
+		 * Solve a single system by forward and back substitution.
+		 * @param vector The right hand side, in the original order of rows.
+		 * @return The solution.
+		 */
+		private double[] solve(double[] vector)
+		{
+			final double[] solution = new double[size];
+			for (int row = 0; row < size; row++)
+			{
+				double sum = vector[pivots[row]];
+				for (int column = 0; column < row; column++)
+					sum -= lu[row * size + column] * solution[column];
+				solution[row] = sum;
+			}
+			for (int row = size - 1; row >= 0; row--)
+			{
+				double sum = solution[row];
+				for (int column = row + 1; column < size; column++)
+					sum -= lu[row * size + column] * solution[column];
+				solution[row] = sum / lu[row * size + row];
+			}
+			return solution;
+		}
+		
+		private DecimalLU fallback()
+		{
+			DecimalLU fallback = this.fallback;
+			if (fallback == null)
+				this.fallback = fallback = new DecimalLU(matrix, mathContext);
+			return fallback;
+		}
+		
+		@Override
+		public boolean isSingular()
+		{
+			return singular && fallback().isSingular();
+		}
+		
+		@Override
+		public Value<?> determinant()
+		{
+			if (singular)
+				return fallback().determinant();
+			double determinant = sign;
+			for (int i = 0; i < size; i++)
+				determinant *= lu[i * size + i];
+			return DoubleArrays.isValid(determinant) && determinant != 0 ? DoubleArrays.box(determinant) : fallback().determinant();
+		}
+		
+		@Override
+		public ListValue solve(ListValue vector) throws DimensionException, TypeException, ArithmeticException
+		{
+			if (singular || !(vector instanceof DoubleListValue))
+				return fallback().solve(vector);
+			checkSolvable(vector.size());
+			final double[] solution = DoubleArrays.check(solve(((DoubleListValue) vector).getDoubles()));
+			return solution == null ? fallback().solve(vector) : new DoubleListValue(solution);
+		}
+		
+		@Override
+		public MatrixValue solve(MatrixValue other) throws DimensionException, TypeException, ArithmeticException
+		{
+			if (singular || !(other instanceof DoubleMatrixValue))
+				return fallback().solve(other);
+			checkSolvable(other.getRows());
+			final double[] result = solveColumns(DoubleMatrices.transpose(((DoubleMatrixValue) other).getDoubles(), size, other.getColumns()), other.getColumns());
+			return result == null ? fallback().solve(other) : new DoubleMatrixValue(size, other.getColumns(), result);
+		}
+		
+		@Override
+		public MatrixValue inverse() throws ArithmeticException
+		{
+			if (singular)
+				return fallback().inverse();
+			final double[] identity = new double[size * size];
+			for (int i = 0; i < size; i++)
+				identity[i * size + i] = 1;
+			final double[] result = solveColumns(identity, size);
+			return result == null ? fallback().inverse() : new DoubleMatrixValue(size, size, result);
+		}
+		
+		/**
+		 * Solve a system for each column, on multiple threads if there are many.
+		 * @param columns The right hand sides, by column, as the rows of a transposed matrix.
+		 * @param count The amount of right hand sides.
+		 * @return The solutions, as the columns of a matrix, or {@code null} if any cannot be represented faithfully.
+		 */
+		private double[] solveColumns(double[] columns, int count)
+		{
+			final double[] result = new double[size * count];
+			Parallel.forEachRow(count, 1 + 2L * size * size / FLOPS_PER_COST, column ->
+			{
+				final double[] vector = new double[size];
+				System.arraycopy(columns, column * size, vector, 0, size);
+				final double[] solution = solve(vector);
+				for (int row = 0; row < size; row++)
+					result[row * count + column] = solution[row];
+			});
+			return DoubleArrays.check(result);
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package util.values;
+
+import java.io.Serializable;
+import java.math.MathContext;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import exceptions.DimensionException;
+import exceptions.TypeException;
+import main.Context;
+import main.Evaluation;
+import main.Main;
+import util.Function;
+import util.OperationType;
+
+/**
+ * A {@link ListValue} whose elements are not stored, but generated from their index each time they are accessed, such as a {@link RangeValue}.<br>
+ * Element-wise operations and functions on such lists are lazy as well, they return a list that applies the operation to each element of this one as it is generated.
+ * A chain of operations therefore only ever holds the elements currently being used, so reductions such as {@link #reduce(Reduction)} run in constant memory.<br>
+ * Operations run in the {@link Evaluation} that created the list, whenever its elements are generated, so a list keeps the precision it was created at, like any other value.<br>
+ * Equality does not generate any element, two lazy lists are equal if they were created from equal sources by equal operations, at the same precision.
+ * @author UFFR
+ *
+ */
+public class LazyListValue extends ListValue
+{
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -2416104402855612079L;
+	/**Most elements printed in full, longer lists only print their first and last elements.**/
+	private static final int PRINT_LIMIT = 1024;
+	/**Elements printed at the start and end of lists longer than {@link #PRINT_LIMIT}.**/
+	private static final int PRINT_HEAD = 8, PRINT_TAIL = 2;
+	/**Identifies how the elements are generated, the source lists and operations.**/
+	private final List<?> key;
+	/**Cached hash.**/
+	private transient int hash;
+	
+	/**
+	 * Generates a single element of a list.
+	 * @author UFFR
+	 *
+	 */
+	@FunctionalInterface
+	public interface Generator extends Serializable
+	{
+		public Value<?> get(int index);
+	}
+	
+	/**
+	 * Calculates an element of a new list from the element of another at the same index.
+	 * @author UFFR
+	 *
+	 */
+	@FunctionalInterface
+	public interface ElementFunction extends Serializable
+	{
+		public Value<?> apply(Value<?> value);
+	}
+	
+	/**
+	 * Calculates an element of a new list from the elements of two others at the same index.
+	 * @author UFFR
+	 *
+	 */
+	@FunctionalInterface
+	private interface ElementCombiner extends Serializable
+	{
+		public Value<?> apply(Value<?> left, Value<?> right);
+	}
+	
+	/**
+	 * Create a list that generates its elements.
+	 * @param size The amount of elements.
+	 * @param generator Generates each element, must always return equal values for the same index.
+	 * @param key Identifies how the elements are generated, lists of equal size and key are equal.
+	 */
+	public LazyListValue(int size, Generator generator, Object... key)
+	{
+		super(new Elements(size, generator), false);
+		this.key = Arrays.asList(key);
+	}
+	
+	/**
+	 * Lazily apply a function to every element.
+	 * @param function The function.
+	 * @param key Identifies the function and its other operands.
+	 * @return The new list.
+	 */
+	public LazyListValue map(ElementFunction function, Object... key)
+	{
+		final Object[] newKey = Arrays.copyOf(key, key.length + 2);
+		newKey[key.length] = this;
+		newKey[key.length + 1] = Main.getMathContext();
+		return new LazyListValue(size(), new ScopedGenerator(index -> function.apply(get(index))), newKey);
+	}
+	
+	/**
+	 * Lazily combine every element with the element of another list at the same index.
+	 * @param other The other list, which must be as long.
+	 * @param combiner Combines both elements.
+	 * @param operation Identifies the operation.
+	 * @return The new list.
+	 * @throws DimensionException If the lengths do not match.
+	 */
+	private LazyListValue zip(ListValue other, ElementCombiner combiner, OperationType operation) throws DimensionException
+	{
+		if (other.size() != size())
+			throw new DimensionException("Dimension mismatch.");
+		return new LazyListValue(size(), new ScopedGenerator(index -> combiner.apply(get(index), other.get(index))), this, operation, other, Main.getMathContext());
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		if (hash == 0)
+			hash = 31 * key.hashCode() + size();
+		return hash;
+	}
+	
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (!(obj instanceof LazyListValue))
+			return false;
+		final LazyListValue other = (LazyListValue) obj;
+		return size() == other.size() && key.equals(other.key);
+	}
+	
+	@Override
+	public String toString()
+	{
+		if (size() <= PRINT_LIMIT)
+			return super.toString();
+		final StringBuilder builder = new StringBuilder().append('{');
+		for (int i = 0; i < PRINT_HEAD; i++)
+			builder.append(get(i)).append(", ");
+		builder.append("...");
+		for (int i = size() - PRINT_TAIL; i < size(); i++)
+			builder.append(", ").append(get(i));
+		return builder.append('}').toString();
+	}
+	
+	@Override
+	public Value<?> addition(Value<?> augend) throws UnsupportedOperationException, TypeException
+	{
+		if (augend instanceof NumberValue)
+			return map(value -> value.addition(augend), OperationType.ADDITION, augend);
+		if (augend instanceof ListValue)
+			return zip((ListValue) augend, Value::addition, OperationType.ADDITION);
+		throw new TypeException("Value " + augend + " cannot be used in this context.");
+	}
+	
+	@Override
+	public Value<?> subtraction(Value<?> subtrahend) throws UnsupportedOperationException, TypeException
+	{
+		if (subtrahend instanceof NumberValue)
+			return map(value -> value.subtraction(subtrahend), OperationType.SUBTRACTION, subtrahend);
+		if (subtrahend instanceof ListValue)
+			return zip((ListValue) subtrahend, Value::subtraction, OperationType.SUBTRACTION);
+		throw new TypeException("Value " + subtrahend + " cannot be used in this context.");
+	}
+	
+	@Override
+	public Value<?> multiplication(Value<?> multiplicand) throws UnsupportedOperationException, TypeException
+	{
+		if (multiplicand instanceof NumberValue)
+			return map(value -> value.multiplication(multiplicand), OperationType.MULTIPLICATION, multiplicand);
+		if (multiplicand instanceof ListValue)
+			return zip((ListValue) multiplicand, Value::multiplication, OperationType.MULTIPLICATION);
+		throw new TypeException("Value " + multiplicand + " cannot be used in this context.");
+	}
+	
+	@Override
+	public Value<?> division(Value<?> divisor) throws UnsupportedOperationException, TypeException
+	{
+		if (divisor instanceof NumberValue)
+			return map(value -> value.division(divisor), OperationType.DIVISION, divisor);
+		if (divisor instanceof ListValue)
+			return zip((ListValue) divisor, Value::division, OperationType.DIVISION);
+		throw new TypeException("Value " + divisor + " cannot be used in this context.");
+	}
+	
+	@Override
+	public Value<?> exponentiate(int exponent) throws UnsupportedOperationException, TypeException
+	{
+		return map(value -> value.exponentiate(exponent), OperationType.EXPONENTIATION, exponent);
+	}
+	
+	@Override
+	public Value<?> modulo(Value<?> divisor) throws UnsupportedOperationException, TypeException
+	{
+		return map(value -> value.modulo(divisor), OperationType.MODULUS, divisor);
+	}
+	
+	@Override
+	public Value<?> abs() throws UnsupportedOperationException, TypeException
+	{
+		return map(Value::abs, Function.ABS);
+	}
+	
+	@Override
+	public Value<?> negate() throws UnsupportedOperationException, TypeException
+	{
+		return map(Value::negate, OperationType.SUBTRACTION);
+	}
+	
+	@Override
+	public Value<?> round() throws UnsupportedOperationException, TypeException
+	{
+		return map(Value::round, Function.ROUND);
+	}
+	
+	@Override
+	public Value<?> factorial() throws UnsupportedOperationException, TypeException
+	{
+		return map(Value::factorial, OperationType.FACTORIAL);
+	}
+	
+	/**
+	 * Generates elements in the {@link Evaluation} running when it was created, rather than whichever one is running once they are accessed.
+	 * @author UFFR
+	 *
+	 */
+	private static class ScopedGenerator implements Generator
+	{
+		private static final long serialVersionUID = 4135298021489618374L;
+		private final Generator generator;
+		/**The context, not serializable, so deserialized lists use the one current when they are accessed.**/
+		private final transient Context context;
+		private final MathContext mathContext;
+		public ScopedGenerator(Generator generator)
+		{
+			this.generator = generator;
+			context = Main.getContext();
+			mathContext = Main.getMathContext();
+		}
+		
+		// The evaluation is only begun for its effect on the thread
+		@SuppressWarnings("try")
+		@Override
+		public Value<?> get(int index)
+		{
+			try (Evaluation evaluation = Evaluation.begin(context != null ? context : Main.getContext(), mathContext))
+			{
+				return generator.get(index);
+			}
+		}
+	}
+	
+	/**
+	 * The elements of a lazy list, generated each time they are accessed.
+	 * @author UFFR
+	 *
+	 */
+	private static class Elements extends AbstractList<Value<?>> implements RandomAccess, Serializable
+	{
+		private static final long serialVersionUID = -1000766418817400826L;
+		private final int size;
+		private final Generator generator;
+		public Elements(int size, Generator generator)
+		{
+			this.size = size;
+			this.generator = generator;
+		}
+		
+		@Override
+		public Value<?> get(int index)
+		{
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for a list of " + size + '.');
+			return generator.get(index);
+		}
+		
+		@Override
+		public int size()
+		{
+			return size;
+		}
+	}
+}
@@ -6,6 +6,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.function.IntFunction;
 
 import com.google.common.collect.ImmutableList;
 
@@ -13,6 +14,7 @@ import exceptions.DimensionException;
 import exceptions.TypeException;
 import main.Main;
 import util.CompareType;
+import util.Parallel;
 
 /**
  * A wrapper for a {@code List} that contains {@code Value} objects.<br>
@@ -30,7 +32,31 @@ public class ListValue implements Value<List<Value<?>>>, List<Value<?>>
 	
 	public ListValue(Collection<Value<?>> values)
 	{
-		this.values = ImmutableList.copyOf(values);
+		this(values, true);
+	}
+	
+	/**
+	 * Create a list, optionally keeping the given values as they are. Used by subclasses that store their values in another form, see {@link DoubleListValue}.
+	 * @param values The values of the list.
+	 * @param copy If the values should be copied, otherwise they must be a {@code List} that never changes.
+	 */
+	protected ListValue(Collection<Value<?>> values, boolean copy)
+	{
+		this.values = copy ? ImmutableList.copyOf(values) : (List<Value<?>>) values;
+	}
+	
+	/**
+	 * Create a list by calculating each of its elements. Long lists or expensive elements are calculated in blocks on multiple threads, see {@link Parallel}.
+	 * @param size The amount of elements.
+	 * @param costPerElement The estimated cost of calculating a single element.
+	 * @param elements Calculates a single element given its index, must not depend on any other element of the new list.
+	 * @return The new list.
+	 */
+	public static ListValue build(int size, long costPerElement, IntFunction<Value<?>> elements)
+	{
+		final Value<?>[] newValues = new Value[size];
+		Parallel.forEachRow(size, costPerElement, index -> newValues[index] = elements.apply(index));
+		return new ListValue(Arrays.asList(newValues));
 	}
 	
 	@Override
@@ -48,6 +74,9 @@ public class ListValue implements Value<List<Value<?>>>, List<Value<?>>
 	@Override
 	public boolean equals(Object obj)
 	{
+		// Lazy lists are only equal to each other, see LazyListValue
+		if (obj instanceof LazyListValue)
+			return false;
 		final List<Value<?>> toTest;
 		if (obj instanceof ListValue)
 			toTest = ((ListValue) obj).values;
@@ -120,7 +149,7 @@ public class ListValue implements Value<List<Value<?>>>, List<Value<?>>
 				throw new DimensionException("Dimension mismatch.");
 			final ArrayList<Value<?>> newValues = new ArrayList<>(values.size());
 			for (int i = 0; i < values.size(); i++)
-				newValues.add(values.get(i).subtraction(otherValues.get(i)));
+				newValues.add(values.get(i).multiplication(otherValues.get(i)));
 			return new ListValue(newValues);
 		}
 		if (multiplicand instanceof NumberValue)
@@ -143,7 +172,7 @@ public class ListValue implements Value<List<Value<?>>>, List<Value<?>>
 				throw new DimensionException("Dimension mismatch.");
 			final ArrayList<Value<?>> newValues = new ArrayList<>(values.size());
 			for (int i = 0; i < values.size(); i++)
-				newValues.add(values.get(i).subtraction(otherValues.get(i)));
+				newValues.add(values.get(i).division(otherValues.get(i)));
 			return new ListValue(newValues);
 		}
 		if (divisor instanceof NumberValue)
@@ -171,7 +200,7 @@ public class ListValue implements Value<List<Value<?>>>, List<Value<?>>
 		final ArrayList<Value<?>> newValues = new ArrayList<>(values.size());
 		for (Value<?> value : values)
 			newValues.add(value.modulo(divisor));
-		throw new TypeException("Value " + divisor + " cannot be used in this context.");
+		return new ListValue(newValues);
 	}
 
 	@Override
@@ -204,10 +233,8 @@ public class ListValue implements Value<List<Value<?>>>, List<Value<?>>
 	@Override
 	public Value<?> factorial() throws UnsupportedOperationException, TypeException
 	{
-		final ArrayList<Value<?>> newValues = new ArrayList<>(values.size());
-		for (Value<?> value : values)
-			newValues.add(value.factorial());
-		return new ListValue(newValues);
+		// Factorials of fractions are series expansions, see the gamma function
+		return build(values.size(), Parallel.seriesCost(Main.getPrecision()), index -> values.get(index).factorial());
 	}
 
 	@Override
@@ -230,6 +257,33 @@ public class ListValue implements Value<List<Value<?>>>, List<Value<?>>
 		return true;
 	}
 	
+	/**
+	 * Reduce every element, on multiple threads if there are many, see {@link Reduction}.
+	 * Elements are only accessed while being combined, so lazy lists are never stored as a whole.
+	 * @param reduction The reduction, such as the sum.
+	 * @return The result.
+	 * @throws DimensionException If the list is empty and the reduction has no result for it.
+	 * @throws TypeException If any of the elements cannot be used for the reduction.
+	 */
+	public Value<?> reduce(Reduction reduction) throws DimensionException, TypeException
+	{
+		return reduction.apply(size(), this::get);
+	}
+	
+	/**
+	 * Calculate the dot product with another list, see {@link Reduction#dot(int, java.util.function.IntFunction, java.util.function.IntFunction)}.
+	 * @param other The other list, which must be as long.
+	 * @return The sum of the products of the elements at each index.
+	 * @throws DimensionException If the lengths do not match.
+	 * @throws TypeException If any of the elements cannot be multiplied or added.
+	 */
+	public Value<?> dot(ListValue other) throws DimensionException, TypeException
+	{
+		if (other.size() != size())
+			throw new DimensionException("Dimension mismatch.");
+		return Reduction.dot(size(), this::get, other::get);
+	}
+	
 	@Override
 	public List<Value<?>> getValue()
 	{
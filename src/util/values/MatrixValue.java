@@ -1,11 +1,14 @@
 package util.values;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import exceptions.DimensionException;
 import exceptions.TypeException;
 import main.Main;
 import util.CompareType;
+import util.Parallel;
 
 /**
  * A wrapper around a 2D array of {@code Value} objects.<br>
@@ -21,7 +24,10 @@ public class MatrixValue implements Value<Value<?>[][]>
 	 */
 	private static final long serialVersionUID = -2808829310746285493L;
 	private final int rows, columns;
-	private final Value<?>[][] matrix;
+	/**The cells of the matrix, only created once needed if a subclass keeps them in another form, see {@link #box()}.**/
+	private volatile Value<?>[][] matrix;
+	/**The last LU decomposition of the matrix, which is reused as long as the {@code MathContext} does not change.**/
+	private transient volatile LUDecomposition decomposition;
 	
 	public MatrixValue(int rows, int columns)
 	{
@@ -37,6 +43,61 @@ public class MatrixValue implements Value<Value<?>[][]>
 		columns = matrix[0].length;
 	}
 	
+	/**
+	 * Create a matrix that keeps its values in another form, its cells are created by {@link #box()} once needed.
+	 * @param rows The amount of rows.
+	 * @param columns The amount of columns.
+	 * @param boxed Marks this constructor, must be {@code false}.
+	 */
+	protected MatrixValue(int rows, int columns, boolean boxed)
+	{
+		if (boxed)
+			throw new IllegalArgumentException("Use MatrixValue(Value[][]) for boxed matrices.");
+		this.rows = rows;
+		this.columns = columns;
+	}
+	
+	/**
+	 * Calculates the cell of a new matrix.
+	 * @author UFFR
+	 *
+	 */
+	@FunctionalInterface
+	public interface CellFunction
+	{
+		public Value<?> apply(int row, int column);
+	}
+	
+	/**
+	 * Create a matrix by calculating each of its cells. Large matrices are calculated in blocks of rows on multiple threads, see {@link Parallel}.
+	 * @param rows The amount of rows.
+	 * @param columns The amount of columns.
+	 * @param costPerCell The estimated cost of calculating a single cell.
+	 * @param cells Calculates a single cell, must not depend on any other cell of the new matrix.
+	 * @return The new matrix.
+	 */
+	public static MatrixValue build(int rows, int columns, long costPerCell, CellFunction cells)
+	{
+		final Value<?>[][] newMatrix = new Value[rows][columns];
+		Parallel.forEachRow(rows, costPerCell * columns, row ->
+		{
+			final Value<?>[] newRow = newMatrix[row];
+			for (int column = 0; column < columns; column++)
+				newRow[column] = cells.apply(row, column);
+		});
+		return new MatrixValue(newMatrix);
+	}
+	
+	/**
+	 * Create a matrix of the same dimensions as this one by an arithmetic operation on each cell, see {@link #build(int, int, long, CellFunction)}.
+	 * @param cells Calculates a single cell.
+	 * @return The new matrix.
+	 */
+	private MatrixValue cellWise(CellFunction cells)
+	{
+		return build(rows, columns, Parallel.arithmeticCost(Main.getPrecision()), cells);
+	}
+	
 	@Override
 	public TokenType getType()
 	{
@@ -46,15 +107,17 @@ public class MatrixValue implements Value<Value<?>[][]>
 	@Override
 	public int hashCode()
 	{
+		final Value<?>[][] matrix = getValue();
 		return Arrays.deepHashCode(matrix);
 	}
 
 	@Override
 	public boolean equals(Object obj)
 	{
+		final Value<?>[][] matrix = getValue();
 		final Value<?>[][] toTest;
 		if (obj instanceof MatrixValue)
-			toTest = ((MatrixValue) obj).matrix;
+			toTest = ((MatrixValue) obj).getValue();
 		else if (obj instanceof Value<?>[][])
 			toTest = (Value<?>[][]) obj;
 		else
@@ -65,33 +128,27 @@ public class MatrixValue implements Value<Value<?>[][]>
 	@Override
 	public String toString()
 	{
+		final Value<?>[][] matrix = getValue();
 		return Arrays.deepToString(matrix);
 	}
 
 	@Override
 	public Value<?> addition(Value<?> augend) throws UnsupportedOperationException, TypeException
 	{
+		final Value<?>[][] matrix = getValue();
 		if (augend instanceof MatrixValue)
 		{
 			final MatrixValue other = (MatrixValue) augend;
 			if (rows == other.rows && columns == other.columns)
 			{
 				final Value<?>[][] otherMatrix = other.getValue();
-				final Value<?>[][] newMatrix = new Value[rows][columns];
-				for (int row = 0; row < rows; row++)
-					for (int column = 0; column < columns; column++)
-						newMatrix[row][column] = matrix[row][column].addition(otherMatrix[row][column]);
-				return new MatrixValue(newMatrix);
+				return cellWise((row, column) -> matrix[row][column].addition(otherMatrix[row][column]));
 			} else
 				throw new DimensionException("Dimension mismatch.");
 		}
 		if (augend instanceof NumberValue)
 		{
-			final Value<?>[][] newMatrix = new Value[rows][columns];
-			for (int row = 0; row < rows; row++)
-				for (int column = 0; column < columns; column++)
-					newMatrix[row][column] = matrix[row][column].addition(augend);
-			return new MatrixValue(newMatrix);
+			return cellWise((row, column) -> matrix[row][column].addition(augend));
 		}
 		throw new TypeException("Value " + augend + " cannot be used in this context.");
 	}
@@ -99,27 +156,20 @@ public class MatrixValue implements Value<Value<?>[][]>
 	@Override
 	public Value<?> subtraction(Value<?> subtrahend) throws UnsupportedOperationException, TypeException
 	{
+		final Value<?>[][] matrix = getValue();
 		if (subtrahend instanceof MatrixValue)
 		{
 			final MatrixValue other = (MatrixValue) subtrahend;
 			if (rows == other.rows && columns == other.columns)
 			{
 				final Value<?>[][] otherMatrix = other.getValue();
-				final Value<?>[][] newMatrix = new Value[rows][columns];
-				for (int row = 0; row < rows; row++)
-					for (int column = 0; column < columns; column++)
-						newMatrix[row][column] = matrix[row][column].subtraction(otherMatrix[row][column]);
-				return new MatrixValue(newMatrix);
+				return cellWise((row, column) -> matrix[row][column].subtraction(otherMatrix[row][column]));
 			} else
 				throw new DimensionException("Dimension mismatch.");
 		}
 		if (subtrahend instanceof NumberValue)
 		{
-			final Value<?>[][] newMatrix = new Value[rows][columns];
-			for (int row = 0; row < rows; row++)
-				for (int column = 0; column < columns; column++)
-					newMatrix[row][column] = matrix[row][column].subtraction(subtrahend);
-			return new MatrixValue(newMatrix);
+			return cellWise((row, column) -> matrix[row][column].subtraction(subtrahend));
 		}
 		throw new TypeException("Value " + subtrahend + " cannot be used in this context.");
 	}
@@ -127,27 +177,20 @@ public class MatrixValue implements Value<Value<?>[][]>
 	@Override
 	public Value<?> multiplication(Value<?> multiplicand) throws UnsupportedOperationException, TypeException
 	{
+		final Value<?>[][] matrix = getValue();
 		if (multiplicand instanceof MatrixValue)
 		{
 			final MatrixValue other = (MatrixValue) multiplicand;
 			if (rows == other.rows && columns == other.columns)
 			{
 				final Value<?>[][] otherMatrix = other.getValue();
-				final Value<?>[][] newMatrix = new Value[rows][columns];
-				for (int row = 0; row < rows; row++)
-					for (int column = 0; column < columns; column++)
-						newMatrix[row][column] = matrix[row][column].multiplication(otherMatrix[row][column]);
-				return new MatrixValue(newMatrix);
+				return cellWise((row, column) -> matrix[row][column].multiplication(otherMatrix[row][column]));
 			} else
 				throw new DimensionException("Dimension mismatch.");
 		}
 		if (multiplicand instanceof NumberValue)
 		{
-			final Value<?>[][] newMatrix = new Value[rows][columns];
-			for (int row = 0; row < rows; row++)
-				for (int column = 0; column < columns; column++)
-					newMatrix[row][column] = matrix[row][column].multiplication(multiplicand);
-			return new MatrixValue(newMatrix);
+			return cellWise((row, column) -> matrix[row][column].multiplication(multiplicand));
 		}
 		throw new TypeException("Value " + multiplicand + " cannot be used in this context.");
 	}
@@ -155,27 +198,20 @@ public class MatrixValue implements Value<Value<?>[][]>
 	@Override
 	public Value<?> division(Value<?> divisor) throws UnsupportedOperationException, TypeException
 	{
+		final Value<?>[][] matrix = getValue();
 		if (divisor instanceof MatrixValue)
 		{
 			final MatrixValue other = (MatrixValue) divisor;
 			if (rows == other.rows && columns == other.columns)
 			{
 				final Value<?>[][] otherMatrix = other.getValue();
-				final Value<?>[][] newMatrix = new Value[rows][columns];
-				for (int row = 0; row < rows; row++)
-					for (int column = 0; column < columns; column++)
-						newMatrix[row][column] = matrix[row][column].division(otherMatrix[row][column]);
-				return new MatrixValue(newMatrix);
+				return cellWise((row, column) -> matrix[row][column].division(otherMatrix[row][column]));
 			} else
 				throw new DimensionException("Dimension mismatch.");
 		}
 		if (divisor instanceof NumberValue)
 		{
-			final Value<?>[][] newMatrix = new Value[rows][columns];
-			for (int row = 0; row < rows; row++)
-				for (int column = 0; column < columns; column++)
-					newMatrix[row][column] = matrix[row][column].division(divisor);
-			return new MatrixValue(newMatrix);
+			return cellWise((row, column) -> matrix[row][column].division(divisor));
 		}
 		throw new TypeException("Value " + divisor + " cannot be used in this context.");
 	}
@@ -183,37 +219,27 @@ public class MatrixValue implements Value<Value<?>[][]>
 	@Override
 	public Value<?> exponentiate(int exponent) throws UnsupportedOperationException, TypeException
 	{
-		final Value<?>[][] newMatrix = new Value[rows][columns];
-		for (int row = 0; row < rows; row++)
-			for (int column = 0; column < columns; column++)
-				newMatrix[row][column] = matrix[row][column].exponentiate(exponent);
-		return new MatrixValue(newMatrix);
+		final Value<?>[][] matrix = getValue();
+		return cellWise((row, column) -> matrix[row][column].exponentiate(exponent));
 	}
 
 	@Override
 	public Value<?> modulo(Value<?> divisor) throws UnsupportedOperationException, TypeException
 	{
+		final Value<?>[][] matrix = getValue();
 		if (divisor instanceof MatrixValue)
 		{
 			final MatrixValue other = (MatrixValue) divisor;
 			if (rows == other.rows && columns == other.columns)
 			{
 				final Value<?>[][] otherMatrix = other.getValue();
-				final Value<?>[][] newMatrix = new Value[rows][columns];
-				for (int row = 0; row < rows; row++)
-					for (int column = 0; column < columns; column++)
-						newMatrix[row][column] = matrix[row][column].division(otherMatrix[row][column]);
-				return new MatrixValue(newMatrix);
+				return cellWise((row, column) -> matrix[row][column].modulo(otherMatrix[row][column]));
 			} else
 				throw new DimensionException("Dimension mismatch.");
 		}
 		if (divisor instanceof NumberValue)
 		{
-			final Value<?>[][] newMatrix = new Value[rows][columns];
-			for (int row = 0; row < rows; row++)
-				for (int column = 0; column < columns; column++)
-					newMatrix[row][column] = matrix[row][column].division(divisor);
-			return new MatrixValue(newMatrix);
+			return cellWise((row, column) -> matrix[row][column].modulo(divisor));
 		}
 		throw new TypeException("Value " + divisor + " cannot be used in this context.");
 	}
@@ -221,52 +247,41 @@ public class MatrixValue implements Value<Value<?>[][]>
 	@Override
 	public Value<?> abs() throws UnsupportedOperationException, TypeException
 	{
-		final Value<?>[][] newMatrix = new Value[rows][columns];
-		for (int row = 0; row < rows; row++)
-			for (int column = 0; column < columns; column++)
-				newMatrix[row][column] = matrix[row][column].abs();
-		return new MatrixValue(newMatrix);
+		final Value<?>[][] matrix = getValue();
+		return cellWise((row, column) -> matrix[row][column].abs());
 	}
 
 	@Override
 	public Value<?> negate() throws UnsupportedOperationException, TypeException
 	{
-		final Value<?>[][] newMatrix = new Value[rows][columns];
-		for (int row = 0; row < rows; row++)
-			for (int column = 0; column < columns; column++)
-				newMatrix[row][column] = matrix[row][column].negate();
-		return new MatrixValue(newMatrix);
+		final Value<?>[][] matrix = getValue();
+		return cellWise((row, column) -> matrix[row][column].negate());
 	}
 
 	@Override
 	public Value<?> round() throws UnsupportedOperationException, TypeException
 	{
-		final Value<?>[][] newMatrix = new Value[rows][columns];
-		for (int row = 0; row < rows; row++)
-			for (int column = 0; column < columns; column++)
-				newMatrix[row][column] = matrix[row][column].round();
-		return new MatrixValue(newMatrix);
+		final Value<?>[][] matrix = getValue();
+		return cellWise((row, column) -> matrix[row][column].round());
 	}
 	
 	@Override
 	public Value<?> factorial() throws UnsupportedOperationException, TypeException
 	{
-		final Value<?>[][] newMatrix = new Value[rows][columns];
-		for (int row = 0; row < rows; row++)
-			for (int column = 0; column < columns; column++)
-				newMatrix[row][column] = matrix[row][column].factorial();
-		return null;
+		final Value<?>[][] matrix = getValue();
+		return build(rows, columns, Parallel.seriesCost(Main.getPrecision()), (row, column) -> matrix[row][column].factorial());
 	}
 
 	@Override
 	public boolean compare(Value<?> value, CompareType type, boolean printOut)
 			throws UnsupportedOperationException, TypeException
 	{
+		final Value<?>[][] matrix = getValue();
 		if (!(value instanceof MatrixValue))
 			throw new IllegalArgumentException("Value " + value + " cannot be used for this operation within this context.");
 		final MatrixValue other = (MatrixValue) value;
-		final Value<?>[][] toCompare = other.matrix;
-		if (rows != other.rows && columns != other.columns)
+		final Value<?>[][] toCompare = other.getValue();
+		if (rows != other.rows || columns != other.columns)
 			return false;
 		final boolean[][] comparisons = new boolean[rows][columns];
 		for (int row = 0; row < rows; row++)
@@ -281,14 +296,160 @@ public class MatrixValue implements Value<Value<?>[][]>
 		return true;
 	}
 	
+	/**
+	 * Multiply this matrix with another, as per mathematics. Unlike {@link #multiplication(Value)}, which multiplies cell by cell.
+	 * @param other The right matrix, must have as many rows as this matrix has columns.
+	 * @return The product, with the rows of this matrix and the columns of the other.
+	 * @throws DimensionException If the dimensions do not match.
+	 * @throws TypeException If any of the cells cannot be multiplied or added.
+	 */
+	public MatrixValue matrixProduct(MatrixValue other) throws DimensionException, TypeException
+	{
+		if (columns != other.rows)
+			throw new DimensionException("Dimension mismatch, " + rows + "x" + columns + " cannot be multiplied with " + other.rows + "x" + other.columns + '.');
+		if (other instanceof SparseMatrixValue)
+			return ((SparseMatrixValue) other).leftProduct(this);
+		final Value<?>[][] matrix = getValue(), otherMatrix = other.getValue();
+		return build(rows, other.columns, Parallel.arithmeticCost(Main.getPrecision()) * columns * 2, (row, column) ->
+		{
+			Value<?> sum = matrix[row][0].multiplication(otherMatrix[0][column]);
+			for (int i = 1; i < columns; i++)
+				sum = sum.addition(matrix[row][i].multiplication(otherMatrix[i][column]));
+			return sum;
+		});
+	}
+	
+	/**
+	 * Multiply this matrix with a column vector.
+	 * @param vector The vector, must be as long as this matrix has columns.
+	 * @return The product, as long as this matrix has rows.
+	 * @throws DimensionException If the dimensions do not match.
+	 * @throws TypeException If any of the cells cannot be multiplied or added.
+	 */
+	public ListValue vectorProduct(ListValue vector) throws DimensionException, TypeException
+	{
+		if (columns != vector.size())
+			throw new DimensionException("Dimension mismatch, " + rows + "x" + columns + " cannot be multiplied with a vector of " + vector.size() + '.');
+		final Value<?>[][] matrix = getValue();
+		final List<Value<?>> elements = vector.getValue();
+		final List<Value<?>> newValues = new ArrayList<Value<?>>(rows);
+		for (int row = 0; row < rows; row++)
+		{
+			Value<?> sum = matrix[row][0].multiplication(elements.get(0));
+			for (int i = 1; i < columns; i++)
+				sum = sum.addition(matrix[row][i].multiplication(elements.get(i)));
+			newValues.add(sum);
+		}
+		return new ListValue(newValues);
+	}
+	
+	/**
+	 * Reduce every cell, row by row, see {@link Reduction}.
+	 * @param reduction The reduction, such as the sum.
+	 * @return The result.
+	 * @throws DimensionException If the matrix has more cells than can be reduced at once.
+	 * @throws TypeException If any of the cells cannot be used for the reduction.
+	 */
+	public Value<?> reduce(Reduction reduction) throws DimensionException, TypeException
+	{
+		return reduction.apply(cells(), index -> getValue(index / columns, index % columns));
+	}
+	
+	/**
+	 * Reduce every column or every row separately, see {@link Reduction}. Large matrices reduce several lines at once, see {@link Parallel}.
+	 * @param reduction The reduction, such as the sum.
+	 * @param axis 0 to reduce each column, resulting in one value per column, 1 to reduce each row, resulting in one value per row.
+	 * @return The result of each line.
+	 * @throws DimensionException If the axis is neither 0 nor 1.
+	 * @throws TypeException If any of the cells cannot be used for the reduction.
+	 */
+	public ListValue reduce(Reduction reduction, int axis) throws DimensionException, TypeException
+	{
+		if (axis != 0 && axis != 1)
+			throw new DimensionException("Axis " + axis + " is not applicable for a matrix, only 0 (columns) or 1 (rows).");
+		final int lines = axis == 0 ? columns : rows, length = axis == 0 ? rows : columns;
+		final Value<?>[] results = new Value[lines];
+		Parallel.forEachRow(lines, Parallel.arithmeticCost(Main.getPrecision()) * length, line ->
+			results[line] = reduction.apply(length, index -> axis == 0 ? getValue(index, line) : getValue(line, index)));
+		return new ListValue(Arrays.asList(results));
+	}
+	
+	/**
+	 * Calculate the dot product with another matrix of the same dimensions, the sum of the products of the cells at each position, see {@link Reduction#dot(int, java.util.function.IntFunction, java.util.function.IntFunction)}.
+	 * @param other The other matrix.
+	 * @return The dot product.
+	 * @throws DimensionException If the dimensions do not match.
+	 * @throws TypeException If any of the cells cannot be multiplied or added.
+	 */
+	public Value<?> dot(MatrixValue other) throws DimensionException, TypeException
+	{
+		if (rows != other.rows || columns != other.columns)
+			throw new DimensionException("Dimension mismatch, " + rows + "x" + columns + " and " + other.rows + "x" + other.columns + '.');
+		return Reduction.dot(cells(), index -> getValue(index / columns, index % columns), index -> other.getValue(index / columns, index % columns));
+	}
+	
+	/**
+	 * The amount of cells, for reductions over all of them.
+	 * @return The amount of cells.
+	 * @throws DimensionException If there are more cells than can be indexed.
+	 */
+	private int cells() throws DimensionException
+	{
+		final long cells = (long) rows * columns;
+		if (cells > Integer.MAX_VALUE)
+			throw new DimensionException("Matrix of " + rows + "x" + columns + " has too many cells, at most " + Integer.MAX_VALUE + " are supported.");
+		return (int) cells;
+	}
+	
+	/**
+	 * Retrieve the LU decomposition of this matrix, decomposing it only the first time under the current {@code MathContext}. As matrices are immutable, repeated solves are cheap.
+	 * @return The decomposition.
+	 * @throws DimensionException If the matrix is not square.
+	 * @throws TypeException If any of the cells is not a number.
+	 */
+	public LUDecomposition getDecomposition() throws DimensionException, TypeException
+	{
+		LUDecomposition decomposition = this.decomposition;
+		if (decomposition == null || !decomposition.getMathContext().equals(Main.getMathContext()))
+			this.decomposition = decomposition = LUDecomposition.decompose(this);
+		return decomposition;
+	}
+	
+	/**
+	 * Swap the rows and columns of this matrix.
+	 * @return The transposed matrix.
+	 */
+	public MatrixValue transpose()
+	{
+		final Value<?>[][] matrix = getValue();
+		final Value<?>[][] newMatrix = new Value[columns][rows];
+		for (int row = 0; row < rows; row++)
+			for (int column = 0; column < columns; column++)
+				newMatrix[column][row] = matrix[row][column];
+		return new MatrixValue(newMatrix);
+	}
+	
 	@Override
 	public Value<?>[][] getValue()
 	{
+		Value<?>[][] matrix = this.matrix;
+		if (matrix == null)
+			this.matrix = matrix = box();
 		return matrix;
 	}
 	
+	/**
+	 * Create the cells of a matrix that keeps its values in another form. Called the first time the cells are needed, possibly more than once if several threads need them at the same time.
+	 * @return The cells of the matrix.
+	 */
+	protected Value<?>[][] box()
+	{
+		throw new IllegalStateException("Matrix has no cells.");
+	}
+	
 	public Value<?> getValue(int row, int column)
 	{
+		final Value<?>[][] matrix = getValue();
 		return matrix[row][column];
 	}
 	
@@ -11,6 +11,8 @@ import ch.obermuhlner.math.big.BigDecimalMath;
 import ch.obermuhlner.math.big.DefaultBigDecimalMath;
 import exceptions.TypeException;
 import util.CompareType;
+import util.OperationType;
+import util.Parallel;
 
 /**
  * The base {@code Value} type, supports all operations. Wraps a {@link BigDecimal} object.
@@ -73,6 +75,8 @@ public class NumberValue extends Number implements Value<BigDecimal>
 	{
 		if (augend instanceof NumberValue)
 			return new NumberValue(number.add(((NumberValue) augend).number, getMathContext()).stripTrailingZeros());
+		if (augend instanceof DoubleListValue || augend instanceof LazyListValue)
+			return augend.addition(this);
 		if (augend instanceof ListValue)
 		{
 			final List<Value<?>> otherValues = ((ListValue) augend).getValue();
@@ -89,12 +93,16 @@ public class NumberValue extends Number implements Value<BigDecimal>
 	{
 		if (subtrahend instanceof NumberValue)
 			return new NumberValue(number.subtract(((NumberValue) subtrahend).number, getMathContext()).stripTrailingZeros());
+		if (subtrahend instanceof DoubleListValue)
+			return subtrahend.negate().addition(this);
+		if (subtrahend instanceof LazyListValue)
+			return ((LazyListValue) subtrahend).map(this::subtraction, this, OperationType.SUBTRACTION);
 		if (subtrahend instanceof ListValue)
 		{
 			final List<Value<?>> otherValues = ((ListValue) subtrahend).getValue();
 			final ArrayList<Value<?>> newValues = new ArrayList<>(otherValues.size());
 			for (Value<?> v : otherValues)
-				newValues.add(v.subtraction(this));
+				newValues.add(subtraction(v));
 			return new ListValue(newValues);
 		}
 		throw new TypeException("Value [" + subtrahend.getClass().getSimpleName() + "] cannot be used in this context.");
@@ -105,6 +113,8 @@ public class NumberValue extends Number implements Value<BigDecimal>
 	{
 		if (multiplicand instanceof NumberValue)
 			return new NumberValue(number.multiply(((NumberValue) multiplicand).number, getMathContext()).stripTrailingZeros());
+		if (multiplicand instanceof DoubleListValue || multiplicand instanceof LazyListValue)
+			return multiplicand.multiplication(this);
 		if (multiplicand instanceof ListValue)
 		{
 			final List<Value<?>> otherValues = ((ListValue) multiplicand).getValue();
@@ -113,15 +123,13 @@ public class NumberValue extends Number implements Value<BigDecimal>
 				newValues.add(v.multiplication(this));
 			return new ListValue(newValues);
 		}
+		if (multiplicand instanceof DoubleMatrixValue || multiplicand instanceof SparseMatrixValue)
+			return multiplicand.multiplication(this);
 		if (multiplicand instanceof MatrixValue)
 		{
 			final MatrixValue other = (MatrixValue) multiplicand;
 			final Value<?>[][] otherMatrix = other.getValue();
-			final Value<?>[][] newMatrix = new Value[other.getRows()][other.getColumns()];
-			for (int row = 0; row < other.getRows(); row++)
-				for (int column = 0; column < other.getColumns(); column++)
-					newMatrix[row][column] = otherMatrix[row][column].multiplication(this);
-			return new MatrixValue(newMatrix);
+			return MatrixValue.build(other.getRows(), other.getColumns(), Parallel.arithmeticCost(getPrecision()), (row, column) -> otherMatrix[row][column].multiplication(this));
 		}
 		throw new TypeException("Value [" + multiplicand.getClass().getSimpleName() + "] cannot be used in this context.");
 	}
@@ -131,23 +139,21 @@ public class NumberValue extends Number implements Value<BigDecimal>
 	{
 		if (divisor instanceof NumberValue)
 			return new NumberValue(number.divide(((NumberValue) divisor).number, getMathContext()).stripTrailingZeros());
+		if (divisor instanceof LazyListValue)
+			return ((LazyListValue) divisor).map(this::division, this, OperationType.DIVISION);
 		if (divisor instanceof ListValue)
 		{
 			final List<Value<?>> otherValues = ((ListValue) divisor).getValue();
 			final ArrayList<Value<?>> newValues = new ArrayList<>(otherValues.size());
 			for (Value<?> v : otherValues)
-				newValues.add(v.division(this));
+				newValues.add(division(v));
 			return new ListValue(newValues);
 		}
 		if (divisor instanceof MatrixValue)
 		{
 			final MatrixValue other = (MatrixValue) divisor;
 			final Value<?>[][] otherMatrix = other.getValue();
-			final Value<?>[][] newMatrix = new Value[other.getRows()][other.getColumns()];
-			for (int row = 0; row < other.getRows(); row++)
-				for (int column = 0; column < other.getColumns(); column++)
-					newMatrix[row][column] = otherMatrix[row][column].division(this);
-			return new MatrixValue(newMatrix);
+			return MatrixValue.build(other.getRows(), other.getColumns(), Parallel.arithmeticCost(getPrecision()), (row, column) -> division(otherMatrix[row][column]));
 		}
 		throw new TypeException("Value type [" + divisor.getClass().getSimpleName() + "] cannot be used in this context.");
 	}
@@ -0,0 +1,79 @@
+package util.values;
+
+import java.math.BigDecimal;
+
+import exceptions.DimensionException;
+import exceptions.TypeException;
+import main.Main;
+import util.Function;
+
+/**
+ * An arithmetic sequence of numbers from a start to an end, both inclusive, by a fixed step. Each number is calculated exactly from its index when accessed, so ranges take constant memory regardless of their length.<br>
+ * As a {@link LazyListValue}, operations on ranges are lazy as well. The sum, mean, minimum, and maximum of a range itself follow directly from its first and last numbers.
+ * @author UFFR
+ *
+ */
+public class RangeValue extends LazyListValue
+{
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 5829614736650349051L;
+	private final BigDecimal start, step;
+	
+	private RangeValue(BigDecimal start, BigDecimal step, int size)
+	{
+		super(size, index -> new NumberValue(start.add(step.multiply(BigDecimal.valueOf(index))).stripTrailingZeros()), Function.RANGE, start, step);
+		this.start = start;
+		this.step = step;
+	}
+	
+	/**
+	 * Create a range of numbers.
+	 * @param start The first number.
+	 * @param end The bound of the numbers, the last number if the step reaches it exactly.
+	 * @param step The difference between each number, must not be zero. Ranges whose step points away from the end are empty.
+	 * @return The new range.
+	 * @throws ArithmeticException If the step is zero.
+	 * @throws DimensionException If the range has more elements than a list can hold.
+	 */
+	public static RangeValue of(BigDecimal start, BigDecimal end, BigDecimal step) throws ArithmeticException, DimensionException
+	{
+		if (step.signum() == 0)
+			throw new ArithmeticException("Step of a range must not be zero.");
+		final BigDecimal distance = end.subtract(start);
+		if (distance.signum() * step.signum() < 0)
+			return new RangeValue(start, step, 0);
+		final BigDecimal size = distance.divideToIntegralValue(step).add(BigDecimal.ONE);
+		if (size.compareTo(BigDecimal.valueOf(Integer.MAX_VALUE)) > 0)
+			throw new DimensionException("Range of " + size.toPlainString() + " numbers is too long, at most " + Integer.MAX_VALUE + " are supported.");
+		return new RangeValue(start, step, size.intValueExact());
+	}
+	
+	@Override
+	public Value<?> reduce(Reduction reduction) throws DimensionException, TypeException
+	{
+		if (isEmpty())
+			return super.reduce(reduction);
+		final BigDecimal last = start.add(step.multiply(BigDecimal.valueOf(size() - 1)));
+		switch (reduction)
+		{
+			// The average of the first and last number, times the amount of numbers
+			case SUM: return new NumberValue(start.add(last).multiply(BigDecimal.valueOf(size())).divide(BigDecimal.valueOf(2)).round(Main.getMathContext()).stripTrailingZeros());
+			case MEAN: return new NumberValue(start.add(last).divide(BigDecimal.valueOf(2)).round(Main.getMathContext()).stripTrailingZeros());
+			case MIN: return new NumberValue((step.signum() > 0 ? start : last).stripTrailingZeros());
+			case MAX: return new NumberValue((step.signum() > 0 ? last : start).stripTrailingZeros());
+			default: return super.reduce(reduction);
+		}
+	}
+	
+	public BigDecimal getStart()
+	{
+		return start;
+	}
+	
+	public BigDecimal getStep()
+	{
+		return step;
+	}
+}
@@ -0,0 +1,165 @@
+package util.values;
+
+import java.math.BigDecimal;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
+
+import ch.obermuhlner.math.big.DefaultBigDecimalMath;
+import exceptions.DimensionException;
+import exceptions.TypeException;
+import main.Main;
+import util.Parallel;
+
+/**
+ * Enumeration for reductions, which combine a sequence of values into one, such as their sum.<br>
+ * Every reduction runs on a fork/join tree of a fixed shape, see {@link Parallel#reduce(int, long, IntFunction, BinaryOperator)}.
+ * Sums of numbers, including those of the mean, the norm, and the dot product, are accumulated exactly and only rounded once at the end,
+ * so they are the correctly rounded result no matter how the sequence was split. Products round after each multiplication, as exact products would grow without bound.
+ * @author UFFR
+ *
+ */
+public enum Reduction
+{
+	SUM,
+	PRODUCT,
+	MIN,
+	MAX,
+	MEAN,
+	NORM;
+
+	/**
+	 * Reduce a sequence of values.
+	 * @param size The amount of values.
+	 * @param element Gets a value given its index.
+	 * @return The result.
+	 * @throws DimensionException If the sequence is empty and the reduction has no result for it (ie the minimum).
+	 * @throws TypeException If any of the values cannot be used for the reduction.
+	 */
+	public Value<?> apply(int size, IntFunction<Value<?>> element) throws DimensionException, TypeException
+	{
+		switch (this)
+		{
+			case SUM: return size == 0 ? new NumberValue(BigDecimal.ZERO) : toValue(sum(size, index -> exact(element.apply(index))));
+			case PRODUCT: return size == 0 ? new NumberValue(BigDecimal.ONE) : reduce(size, element, Value::multiplication);
+			case MIN:
+				if (size == 0)
+					throw new DimensionException("An empty sequence has no minimum.");
+				return reduce(size, element, (left, right) -> compare(right, left) < 0 ? right : left);
+			case MAX:
+				if (size == 0)
+					throw new DimensionException("An empty sequence has no maximum.");
+				return reduce(size, element, (left, right) -> compare(right, left) > 0 ? right : left);
+			case MEAN:
+			{
+				if (size == 0)
+					throw new DimensionException("An empty sequence has no mean.");
+				final Object sum = sum(size, index -> exact(element.apply(index)));
+				if (sum instanceof BigDecimal)
+					return new NumberValue(((BigDecimal) sum).divide(BigDecimal.valueOf(size), Main.getMathContext()).stripTrailingZeros());
+				return toValue(sum).division(new NumberValue(BigDecimal.valueOf(size)));
+			}
+			case NORM:
+			{
+				if (size == 0)
+					return new NumberValue(BigDecimal.ZERO);
+				final Object sum = sum(size, index ->
+				{
+					final BigDecimal number = number(element.apply(index));
+					return number.multiply(number);
+				});
+				return new NumberValue(DefaultBigDecimalMath.sqrt((BigDecimal) sum).stripTrailingZeros());
+			}
+			default: throw new IllegalStateException("Could not interpret reduction type: " + this + '!');
+		}
+	}
+
+	/**
+	 * Sum the products of two sequences of values, pair by pair.
+	 * @param size The amount of values of each sequence.
+	 * @param left Gets a value of the left sequence given its index.
+	 * @param right Gets a value of the right sequence given its index.
+	 * @return The dot product.
+	 * @throws TypeException If any of the values cannot be multiplied or added.
+	 */
+	public static Value<?> dot(int size, IntFunction<Value<?>> left, IntFunction<Value<?>> right) throws TypeException
+	{
+		if (size == 0)
+			return new NumberValue(BigDecimal.ZERO);
+		return toValue(sum(size, index ->
+		{
+			final Value<?> leftValue = left.apply(index), rightValue = right.apply(index);
+			if (leftValue instanceof NumberValue && rightValue instanceof NumberValue)
+				return ((NumberValue) leftValue).getValue().multiply(((NumberValue) rightValue).getValue());
+			return leftValue.multiplication(rightValue);
+		}));
+	}
+
+	/**
+	 * Reduce a sequence of values that are combined as they are, see {@link Parallel#reduce(int, long, IntFunction, BinaryOperator)}.
+	 * @param size The amount of values, at least 1.
+	 * @param element Gets a value given its index.
+	 * @param combine Combines two partial results.
+	 * @return The result.
+	 */
+	private static Value<?> reduce(int size, IntFunction<Value<?>> element, BinaryOperator<Value<?>> combine)
+	{
+		return Parallel.reduce(size, Parallel.arithmeticCost(Main.getPrecision()), element, combine);
+	}
+
+	/**
+	 * Sum a sequence of terms, exactly as long as they are plain numbers.
+	 * @param size The amount of terms, at least 1.
+	 * @param term Gets a term given its index, either an exact {@code BigDecimal} or any other {@code Value}.
+	 * @return The sum, an exact {@code BigDecimal} if every term was one.
+	 */
+	private static Object sum(int size, IntFunction<Object> term)
+	{
+		return Parallel.reduce(size, Parallel.arithmeticCost(Main.getPrecision()), term, (left, right) ->
+		{
+			if (left instanceof BigDecimal && right instanceof BigDecimal)
+				return ((BigDecimal) left).add((BigDecimal) right);
+			return toValue(left).addition(toValue(right));
+		});
+	}
+
+	/**
+	 * Unwrap a value to be summed exactly, if it is a plain number.
+	 * @param value The value.
+	 * @return The {@code BigDecimal} of a number, otherwise the value itself.
+	 */
+	private static Object exact(Value<?> value)
+	{
+		return value instanceof NumberValue ? ((NumberValue) value).getValue() : value;
+	}
+
+	/**
+	 * Wrap a partial sum, rounding it if it is exact.
+	 * @param sum The sum, see {@link #sum(int, IntFunction)}.
+	 * @return The sum as a {@code Value}.
+	 */
+	private static Value<?> toValue(Object sum)
+	{
+		return sum instanceof BigDecimal ? new NumberValue(((BigDecimal) sum).round(Main.getMathContext()).stripTrailingZeros()) : (Value<?>) sum;
+	}
+
+	private static BigDecimal number(Value<?> value) throws TypeException
+	{
+		if (!(value instanceof NumberValue))
+			throw new TypeException("Value " + value + " cannot be used in this context.");
+		return ((NumberValue) value).getValue();
+	}
+
+	/**
+	 * Compare two values of a reduction.
+	 * @param left The left value.
+	 * @param right The right value.
+	 * @return The comparison of the numbers, as per {@link Comparable#compareTo(Object)}.
+	 * @throws TypeException If either value is not a number.
+	 */
+	private static int compare(Value<?> left, Value<?> right) throws TypeException
+	{
+		if (!(left instanceof NumberValue) || !(right instanceof NumberValue))
+			throw new TypeException("Values " + left + " and " + right + " cannot be compared in this context.");
+		return ((NumberValue) left).getValue().compareTo(((NumberValue) right).getValue());
+	}
+}
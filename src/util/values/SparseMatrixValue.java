@@ -0,0 +1,615 @@
+package util.values;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.function.IntUnaryOperator;
+
+import exceptions.DimensionException;
+import exceptions.TypeException;
+import main.Main;
+import util.Parallel;
+
+/**
+ * A {@link MatrixValue} of numbers that are mostly zero, stored in compressed sparse row (CSR) form: only the non-zero numbers are kept, row by row, along with their columns.<br>
+ * Operations that keep zeros as zeros, such as the sum of two such matrices or the product with a number, only visit the non-zero numbers.
+ * Others fall back to the cells of {@code MatrixValue}, which are only created once needed. Matrix products and matrix-vector products skip every zero as well.<br>
+ * Matrices are stored in this form when parsed if at most a fraction of their cells is non-zero, see {@link #setDensityThreshold(double)},
+ * and results of operations on them are converted back to dense matrices once they exceed it.
+ * @author UFFR
+ *
+ */
+public class SparseMatrixValue extends MatrixValue
+{
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 2960153732410473128L;
+	/**Default fraction of non-zero cells up to which matrices are stored sparsely.**/
+	public static final double DEFAULT_DENSITY_THRESHOLD = 0.25;
+	/**Least amount of cells of a sparse matrix, smaller ones are not worth the indirection.**/
+	private static final int MIN_CELLS = 64;
+	private static final NumberValue ZERO = new NumberValue(BigDecimal.ZERO);
+	
+	/**Fraction of non-zero cells up to which matrices are stored sparsely.**/
+	private static volatile double densityThreshold = DEFAULT_DENSITY_THRESHOLD;
+	
+	/**Index of the first entry of each row, followed by the amount of entries.**/
+	private final int[] rowStarts;
+	/**Column of each entry, ascending within each row.**/
+	private final int[] columnIndices;
+	/**The non-zero numbers.**/
+	private final NumberValue[] values;
+	/**Cached hash, as it would otherwise require boxing every cell.**/
+	private transient int hash;
+	
+	/**
+	 * Create a matrix around its compressed rows, which are not copied.
+	 * @param rows The amount of rows.
+	 * @param columns The amount of columns.
+	 * @param rowStarts Index of the first entry of each row, followed by the amount of entries.
+	 * @param columnIndices Column of each entry, ascending within each row.
+	 * @param values The numbers of each entry, none of which may be zero.
+	 */
+	public SparseMatrixValue(int rows, int columns, int[] rowStarts, int[] columnIndices, NumberValue[] values)
+	{
+		super(rows, columns, false);
+		if (rowStarts.length != rows + 1 || columnIndices.length != values.length || rowStarts[rows] != values.length)
+			throw new DimensionException("Dimension mismatch on matrix construction.");
+		this.rowStarts = rowStarts;
+		this.columnIndices = columnIndices;
+		this.values = values;
+	}
+	
+	/**
+	 * Set the fraction of non-zero cells up to which matrices are stored sparsely.
+	 * @param threshold The fraction, 0 only stores matrices of zeros sparsely, 1 stores every matrix of numbers sparsely.
+	 */
+	public static void setDensityThreshold(double threshold)
+	{
+		if (!(threshold >= 0 && threshold <= 1))
+			throw new IllegalArgumentException("Density threshold " + threshold + " is not supported.");
+		densityThreshold = threshold;
+	}
+	
+	public static double getDensityThreshold()
+	{
+		return densityThreshold;
+	}
+	
+	/**
+	 * Checks if a matrix should be stored sparsely.
+	 * @param rows The amount of rows.
+	 * @param columns The amount of columns.
+	 * @param nonZeros The amount of non-zero cells.
+	 * @return True, if the matrix is large enough and its density does not exceed the threshold.
+	 */
+	public static boolean isSparse(int rows, int columns, int nonZeros)
+	{
+		final long cells = (long) rows * columns;
+		return cells >= MIN_CELLS && nonZeros <= densityThreshold * cells;
+	}
+	
+	/**
+	 * Attempt to store the cells of a matrix sparsely.
+	 * @param matrix The cells to store, every row must have the same length.
+	 * @return The new matrix, or {@code null} if any of the cells is not a number or the matrix is not sparse, see {@link #isSparse(int, int, int)}.
+	 */
+	public static SparseMatrixValue fromValues(Value<?>[][] matrix)
+	{
+		final int rows = matrix.length, columns = matrix[0].length;
+		int nonZeros = 0;
+		for (Value<?>[] row : matrix)
+			for (Value<?> value : row)
+			{
+				if (!(value instanceof NumberValue))
+					return null;
+				if (!isZero(value))
+					nonZeros++;
+			}
+		if (!isSparse(rows, columns, nonZeros))
+			return null;
+		final int[] rowStarts = new int[rows + 1], columnIndices = new int[nonZeros];
+		final NumberValue[] values = new NumberValue[nonZeros];
+		int count = 0;
+		for (int row = 0; row < rows; row++)
+		{
+			for (int column = 0; column < columns; column++)
+				count = put(columnIndices, values, count, column, matrix[row][column]);
+			rowStarts[row + 1] = count;
+		}
+		return new SparseMatrixValue(rows, columns, rowStarts, columnIndices, values);
+	}
+	
+	private static boolean isZero(Value<?> value)
+	{
+		return ((NumberValue) value).getValue().signum() == 0;
+	}
+	
+	/**
+	 * Append an entry to a compressed row, unless it is zero.
+	 * @param columns The columns of the row.
+	 * @param values The numbers of the row.
+	 * @param count The amount of entries so far.
+	 * @param column The column of the entry.
+	 * @param value The number of the entry.
+	 * @return The new amount of entries.
+	 * @throws TypeException If the value is not a number.
+	 */
+	private static int put(int[] columns, NumberValue[] values, int count, int column, Value<?> value) throws TypeException
+	{
+		if (!(value instanceof NumberValue))
+			throw new TypeException("Value " + value + " cannot be used in this context.");
+		if (isZero(value))
+			return count;
+		columns[count] = column;
+		values[count] = (NumberValue) value;
+		return count + 1;
+	}
+	
+	/**
+	 * Calculates the entries of a single row of a new sparse matrix.
+	 * @author UFFR
+	 *
+	 */
+	@FunctionalInterface
+	private interface RowFunction
+	{
+		/**
+		 * Calculate the entries of a row, see {@link SparseMatrixValue#put(int[], NumberValue[], int, int, Value)}.
+		 * @param row The index of the row.
+		 * @param columns The columns to write to, large enough for every entry.
+		 * @param values The numbers to write to, large enough for every entry.
+		 * @return The amount of entries written.
+		 */
+		public int apply(int row, int[] columns, NumberValue[] values);
+	}
+	
+	/**
+	 * Calculates a single non-zero number of a new matrix from the one at the same cell.
+	 * @author UFFR
+	 *
+	 */
+	@FunctionalInterface
+	public interface EntryFunction
+	{
+		public Value<?> apply(NumberValue value);
+	}
+	
+	/**
+	 * Create a matrix row by row, on multiple threads if there are many, see {@link Parallel}.
+	 * @param rows The amount of rows.
+	 * @param columns The amount of columns.
+	 * @param costPerRow The estimated cost of calculating a single row.
+	 * @param capacity The most entries a row may have, given its index.
+	 * @param rowFunction Calculates the entries of a single row.
+	 * @return The new matrix, which is only sparse if few of its cells are non-zero.
+	 */
+	private static MatrixValue sparseRows(int rows, int columns, long costPerRow, IntUnaryOperator capacity, RowFunction rowFunction)
+	{
+		final int[][] rowColumns = new int[rows][];
+		final NumberValue[][] rowValues = new NumberValue[rows][];
+		final int[] counts = new int[rows];
+		Parallel.forEachRow(rows, costPerRow, row ->
+		{
+			final int length = capacity.applyAsInt(row);
+			rowColumns[row] = new int[length];
+			rowValues[row] = new NumberValue[length];
+			counts[row] = rowFunction.apply(row, rowColumns[row], rowValues[row]);
+		});
+		final int[] rowStarts = new int[rows + 1];
+		for (int row = 0; row < rows; row++)
+			rowStarts[row + 1] = rowStarts[row] + counts[row];
+		final int[] columnIndices = new int[rowStarts[rows]];
+		final NumberValue[] values = new NumberValue[rowStarts[rows]];
+		for (int row = 0; row < rows; row++)
+		{
+			System.arraycopy(rowColumns[row], 0, columnIndices, rowStarts[row], counts[row]);
+			System.arraycopy(rowValues[row], 0, values, rowStarts[row], counts[row]);
+		}
+		final SparseMatrixValue result = new SparseMatrixValue(rows, columns, rowStarts, columnIndices, values);
+		return isSparse(rows, columns, values.length) ? result : new MatrixValue(result.box());
+	}
+	
+	/**
+	 * Create a matrix of the same dimensions as this one row by row, with about as many entries, see {@link #sparseRows(int, int, long, IntUnaryOperator, RowFunction)}.
+	 * @param costPerEntry The estimated cost of calculating a single entry.
+	 * @param capacity The most entries a row may have, given its index.
+	 * @param rowFunction Calculates the entries of a single row.
+	 * @return The new matrix.
+	 */
+	private MatrixValue sparseRows(long costPerEntry, IntUnaryOperator capacity, RowFunction rowFunction)
+	{
+		return sparseRows(getRows(), getColumns(), rowCost(costPerEntry), capacity, rowFunction);
+	}
+	
+	/**
+	 * Estimate the cost of processing a row by the average amount of entries per row.
+	 * @param costPerEntry The estimated cost of processing a single entry.
+	 * @return The estimated cost of a row.
+	 */
+	private long rowCost(long costPerEntry)
+	{
+		return costPerEntry * (values.length / getRows() + 1);
+	}
+	
+	/**
+	 * Apply a function to every non-zero number, for functions that map zero to zero.
+	 * @param costPerEntry The estimated cost of the function.
+	 * @param function The function.
+	 * @return The new matrix, which is only sparse if few of its cells are non-zero.
+	 */
+	public MatrixValue mapNonZeros(long costPerEntry, EntryFunction function)
+	{
+		return sparseRows(costPerEntry, this::rowLength, (row, newColumns, newValues) ->
+		{
+			int count = 0;
+			for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++)
+				count = put(newColumns, newValues, count, columnIndices[i], function.apply(values[i]));
+			return count;
+		});
+	}
+	
+	/**
+	 * Apply an arithmetic operation to every non-zero number, see {@link #mapNonZeros(long, EntryFunction)}.
+	 * @param function The operation.
+	 * @return The new matrix.
+	 */
+	private MatrixValue mapNonZeros(EntryFunction function)
+	{
+		return mapNonZeros(Parallel.arithmeticCost(Main.getPrecision()), function);
+	}
+	
+	/**
+	 * Add or subtract another sparse matrix, merging the entries of each row.
+	 * @param other The other matrix.
+	 * @param subtract If the other matrix is subtracted.
+	 * @return The new matrix.
+	 */
+	private MatrixValue merge(SparseMatrixValue other, boolean subtract)
+	{
+		checkDimensions(other);
+		return sparseRows(Parallel.arithmeticCost(Main.getPrecision()), row -> rowLength(row) + other.rowLength(row), (row, newColumns, newValues) ->
+		{
+			int i = rowStarts[row], j = other.rowStarts[row], count = 0;
+			final int end = rowStarts[row + 1], otherEnd = other.rowStarts[row + 1];
+			while (i < end || j < otherEnd)
+			{
+				if (j == otherEnd || i < end && columnIndices[i] < other.columnIndices[j])
+				{
+					count = put(newColumns, newValues, count, columnIndices[i], values[i]);
+					i++;
+				} else if (i == end || other.columnIndices[j] < columnIndices[i])
+				{
+					count = put(newColumns, newValues, count, other.columnIndices[j], subtract ? other.values[j].negate() : other.values[j]);
+					j++;
+				} else
+				{
+					count = put(newColumns, newValues, count, columnIndices[i], subtract ? values[i].subtraction(other.values[j]) : values[i].addition(other.values[j]));
+					i++;
+					j++;
+				}
+			}
+			return count;
+		});
+	}
+	
+	/**
+	 * Multiply cell by cell with another sparse matrix, only keeping the cells where both are non-zero.
+	 * @param other The other matrix.
+	 * @return The new matrix.
+	 */
+	private MatrixValue intersect(SparseMatrixValue other)
+	{
+		checkDimensions(other);
+		return sparseRows(Parallel.arithmeticCost(Main.getPrecision()), row -> Math.min(rowLength(row), other.rowLength(row)), (row, newColumns, newValues) ->
+		{
+			int i = rowStarts[row], j = other.rowStarts[row], count = 0;
+			final int end = rowStarts[row + 1], otherEnd = other.rowStarts[row + 1];
+			while (i < end && j < otherEnd)
+			{
+				if (columnIndices[i] < other.columnIndices[j])
+					i++;
+				else if (other.columnIndices[j] < columnIndices[i])
+					j++;
+				else
+				{
+					count = put(newColumns, newValues, count, columnIndices[i], values[i].multiplication(other.values[j]));
+					i++;
+					j++;
+				}
+			}
+			return count;
+		});
+	}
+	
+	private void checkDimensions(MatrixValue other) throws DimensionException
+	{
+		if (getRows() != other.getRows() || getColumns() != other.getColumns())
+			throw new DimensionException("Dimension mismatch.");
+	}
+	
+	private int rowLength(int row)
+	{
+		return rowStarts[row + 1] - rowStarts[row];
+	}
+	
+	@Override
+	protected Value<?>[][] box()
+	{
+		final Value<?>[][] matrix = new Value[getRows()][getColumns()];
+		for (int row = 0; row < getRows(); row++)
+		{
+			Arrays.fill(matrix[row], ZERO);
+			for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++)
+				matrix[row][columnIndices[i]] = values[i];
+		}
+		return matrix;
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		// Same as the hash of the boxed cells, without boxing them
+		if (hash == 0)
+		{
+			final int zeroHash = ZERO.hashCode();
+			int result = 1;
+			for (int row = 0; row < getRows(); row++)
+			{
+				int rowHash = 1, i = rowStarts[row];
+				for (int column = 0; column < getColumns(); column++)
+					rowHash = 31 * rowHash + (i < rowStarts[row + 1] && columnIndices[i] == column ? values[i++].hashCode() : zeroHash);
+				result = 31 * result + rowHash;
+			}
+			hash = result;
+		}
+		return hash;
+	}
+	
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (obj instanceof SparseMatrixValue)
+		{
+			final SparseMatrixValue other = (SparseMatrixValue) obj;
+			return getRows() == other.getRows() && getColumns() == other.getColumns() && Arrays.equals(rowStarts, other.rowStarts)
+					&& Arrays.equals(columnIndices, other.columnIndices) && Arrays.equals(values, other.values);
+		}
+		return super.equals(obj);
+	}
+	
+	@Override
+	public String toString()
+	{
+		// Built directly, so printing does not keep every cell boxed
+		final StringBuilder builder = new StringBuilder(getRows() * getColumns() * 3).append('[');
+		for (int row = 0; row < getRows(); row++)
+		{
+			if (row > 0)
+				builder.append(", ");
+			builder.append('[');
+			for (int column = 0, i = rowStarts[row]; column < getColumns(); column++)
+			{
+				if (column > 0)
+					builder.append(", ");
+				builder.append(i < rowStarts[row + 1] && columnIndices[i] == column ? values[i++] : ZERO);
+			}
+			builder.append(']');
+		}
+		return builder.append(']').toString();
+	}
+	
+	@Override
+	public Value<?> addition(Value<?> augend) throws UnsupportedOperationException, TypeException
+	{
+		if (augend instanceof SparseMatrixValue)
+			return merge((SparseMatrixValue) augend, false);
+		if (augend instanceof NumberValue && isZero(augend))
+			return this;
+		return super.addition(augend);
+	}
+	
+	@Override
+	public Value<?> subtraction(Value<?> subtrahend) throws UnsupportedOperationException, TypeException
+	{
+		if (subtrahend instanceof SparseMatrixValue)
+			return merge((SparseMatrixValue) subtrahend, true);
+		if (subtrahend instanceof NumberValue && isZero(subtrahend))
+			return this;
+		return super.subtraction(subtrahend);
+	}
+	
+	@Override
+	public Value<?> multiplication(Value<?> multiplicand) throws UnsupportedOperationException, TypeException
+	{
+		if (multiplicand instanceof NumberValue)
+			return mapNonZeros(value -> value.multiplication(multiplicand));
+		if (multiplicand instanceof SparseMatrixValue)
+			return intersect((SparseMatrixValue) multiplicand);
+		if (multiplicand instanceof MatrixValue)
+		{
+			final MatrixValue other = (MatrixValue) multiplicand;
+			checkDimensions(other);
+			return sparseRows(Parallel.arithmeticCost(Main.getPrecision()), this::rowLength, (row, newColumns, newValues) ->
+			{
+				int count = 0;
+				for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++)
+					count = put(newColumns, newValues, count, columnIndices[i], values[i].multiplication(other.getValue(row, columnIndices[i])));
+				return count;
+			});
+		}
+		return super.multiplication(multiplicand);
+	}
+	
+	@Override
+	public Value<?> division(Value<?> divisor) throws UnsupportedOperationException, TypeException
+	{
+		if (divisor instanceof NumberValue && !isZero(divisor))
+			return mapNonZeros(value -> value.division(divisor));
+		return super.division(divisor);
+	}
+	
+	@Override
+	public Value<?> exponentiate(int exponent) throws UnsupportedOperationException, TypeException
+	{
+		return exponent > 0 ? mapNonZeros(value -> value.exponentiate(exponent)) : super.exponentiate(exponent);
+	}
+	
+	@Override
+	public Value<?> modulo(Value<?> divisor) throws UnsupportedOperationException, TypeException
+	{
+		if (divisor instanceof NumberValue && !isZero(divisor))
+			return mapNonZeros(value -> value.modulo(divisor));
+		return super.modulo(divisor);
+	}
+	
+	@Override
+	public Value<?> abs() throws UnsupportedOperationException, TypeException
+	{
+		return mapNonZeros(NumberValue::abs);
+	}
+	
+	@Override
+	public Value<?> negate() throws UnsupportedOperationException, TypeException
+	{
+		return mapNonZeros(NumberValue::negate);
+	}
+	
+	@Override
+	public Value<?> round() throws UnsupportedOperationException, TypeException
+	{
+		return mapNonZeros(NumberValue::round);
+	}
+	
+	@Override
+	public MatrixValue matrixProduct(MatrixValue other) throws DimensionException, TypeException
+	{
+		if (getColumns() != other.getRows())
+			return super.matrixProduct(other);
+		final long cost = Parallel.arithmeticCost(Main.getPrecision()) * 2;
+		if (other instanceof SparseMatrixValue)
+		{
+			final SparseMatrixValue right = (SparseMatrixValue) other;
+			// Each entry of a row scales the matching row of the right matrix, which are summed by column
+			return sparseRows(getRows(), right.getColumns(), rowCost(right.rowCost(cost)), row ->
+			{
+				int length = 0;
+				for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++)
+					length += right.rowLength(columnIndices[i]);
+				return Math.min(length, right.getColumns());
+			}, (row, newColumns, newValues) ->
+			{
+				final TreeMap<Integer, Value<?>> sums = new TreeMap<Integer, Value<?>>();
+				for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++)
+					for (int j = right.rowStarts[columnIndices[i]]; j < right.rowStarts[columnIndices[i] + 1]; j++)
+					{
+						final Value<?> term = values[i].multiplication(right.values[j]);
+						sums.merge(right.columnIndices[j], term, Value::addition);
+					}
+				int count = 0;
+				for (Entry<Integer, Value<?>> sum : sums.entrySet())
+					count = put(newColumns, newValues, count, sum.getKey(), sum.getValue());
+				return count;
+			});
+		}
+		final Value<?>[][] otherMatrix = other.getValue();
+		return build(getRows(), other.getColumns(), rowCost(cost), (row, column) ->
+		{
+			Value<?> sum = ZERO;
+			for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++)
+			{
+				final Value<?> term = values[i].multiplication(otherMatrix[columnIndices[i]][column]);
+				sum = i == rowStarts[row] ? term : sum.addition(term);
+			}
+			return sum;
+		});
+	}
+	
+	/**
+	 * Multiply another matrix with this one, each row of the product is the sum of the rows of this matrix scaled by the cells of the same row of the other matrix.
+	 * @param left The left matrix, must have as many columns as this matrix has rows.
+	 * @return The product, with the rows of the other matrix and the columns of this one.
+	 * @throws DimensionException If the dimensions do not match.
+	 * @throws TypeException If any of the cells cannot be multiplied or added.
+	 */
+	MatrixValue leftProduct(MatrixValue left) throws DimensionException, TypeException
+	{
+		if (left.getColumns() != getRows())
+			throw new DimensionException("Dimension mismatch, " + left.getRows() + "x" + left.getColumns() + " cannot be multiplied with " + getRows() + "x" + getColumns() + '.');
+		final Value<?>[][] leftMatrix = left.getValue();
+		final Value<?>[][] product = new Value[left.getRows()][getColumns()];
+		Parallel.forEachRow(left.getRows(), Parallel.arithmeticCost(Main.getPrecision()) * 2 * (values.length + 1), row ->
+		{
+			final Value<?>[] sums = product[row];
+			for (int k = 0; k < getRows(); k++)
+				for (int i = rowStarts[k]; i < rowStarts[k + 1]; i++)
+				{
+					final Value<?> term = leftMatrix[row][k].multiplication(values[i]);
+					sums[columnIndices[i]] = sums[columnIndices[i]] == null ? term : sums[columnIndices[i]].addition(term);
+				}
+			for (int column = 0; column < sums.length; column++)
+				if (sums[column] == null)
+					sums[column] = ZERO;
+		});
+		return new MatrixValue(product);
+	}
+	
+	@Override
+	public ListValue vectorProduct(ListValue vector) throws DimensionException, TypeException
+	{
+		if (getColumns() != vector.size())
+			return super.vectorProduct(vector);
+		final Value<?>[] product = new Value[getRows()];
+		Parallel.forEachRow(getRows(), rowCost(Parallel.arithmeticCost(Main.getPrecision()) * 2), row ->
+		{
+			Value<?> sum = ZERO;
+			for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++)
+			{
+				final Value<?> term = values[i].multiplication(vector.get(columnIndices[i]));
+				sum = i == rowStarts[row] ? term : sum.addition(term);
+			}
+			product[row] = sum;
+		});
+		return new ListValue(Arrays.asList(product));
+	}
+	
+	@Override
+	public MatrixValue transpose()
+	{
+		// Entries are counted by column, then placed in order of their rows, so columns of the transposed rows stay ascending
+		final int[] newRowStarts = new int[getColumns() + 1];
+		for (int column : columnIndices)
+			newRowStarts[column + 1]++;
+		for (int column = 0; column < getColumns(); column++)
+			newRowStarts[column + 1] += newRowStarts[column];
+		final int[] next = Arrays.copyOf(newRowStarts, getColumns());
+		final int[] newColumnIndices = new int[values.length];
+		final NumberValue[] newValues = new NumberValue[values.length];
+		for (int row = 0; row < getRows(); row++)
+			for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++)
+			{
+				final int index = next[columnIndices[i]]++;
+				newColumnIndices[index] = row;
+				newValues[index] = values[i];
+			}
+		return new SparseMatrixValue(getColumns(), getRows(), newRowStarts, newColumnIndices, newValues);
+	}
+	
+	@Override
+	public Value<?> getValue(int row, int column)
+	{
+		final int index = Arrays.binarySearch(columnIndices, rowStarts[row], rowStarts[row + 1], column);
+		return index < 0 ? ZERO : values[index];
+	}
+	
+	/**
+	 * Get the amount of non-zero cells.
+	 * @return The amount of entries.
+	 */
+	public int getNonZeros()
+	{
+		return values.length;
+	}
+}